@@ -0,0 +1,80 @@
+package chat.bench;
+
+import chat.model.AudioPacket;
+import chat.model.AudioPacketView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Codificar y decodificar un AudioPacket de 20 ms: objeto + byte[] nuevos
+// (fromBytes/toBytes) frente a la vista sobre un buffer reutilizado. Con
+// -prof gc (runAudioPacketBenchmark lo activa) la columna gc.alloc.rate.norm
+// debe quedar en 0 B/op para las variantes *View y *Into.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioPacketBenchmark {
+    private static final int PAYLOAD_BYTES = 160;
+
+    private final AudioPacketView view = new AudioPacketView();
+    private byte[] audio;
+    private byte[] datagram;
+    private ByteBuffer received;
+    private ByteBuffer outgoing;
+    private int sequence;
+
+    @Setup
+    public void setup() {
+        audio = new byte[PAYLOAD_BYTES];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) i;
+        }
+        datagram = new AudioPacket(1, 2, 7, audio).toBytes();
+        received = ByteBuffer.allocateDirect(datagram.length);
+        received.put(datagram).flip();
+        outgoing = ByteBuffer.allocateDirect(AudioPacket.HEADER_BYTES + PAYLOAD_BYTES);
+    }
+
+    @Benchmark
+    public void decodeFromBytes(Blackhole blackhole) {
+        AudioPacket packet = AudioPacket.fromBytes(datagram);
+        blackhole.consume(packet.getSenderId());
+        blackhole.consume(packet.getReceiverId());
+        blackhole.consume(packet.getAudioData());
+    }
+
+    @Benchmark
+    public void decodeView(Blackhole blackhole) {
+        view.wrap(received);
+        blackhole.consume(view.isValid());
+        blackhole.consume(view.getSenderId());
+        blackhole.consume(view.getReceiverId());
+        blackhole.consume(view.getDataOffset());
+    }
+
+    @Benchmark
+    public byte[] encodeToBytes() {
+        return new AudioPacket(1, 2, ++sequence, audio).toBytes();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeInto() {
+        outgoing.clear();
+        AudioPacketView.encode(outgoing, 1, 2, ++sequence, System.currentTimeMillis(), audio, 0, audio.length);
+        return outgoing.flip();
+    }
+}
@@ -0,0 +1,88 @@
+package chat.bench;
+
+import chat.model.Message;
+import chat.protocol.BinaryFrameCodec;
+import chat.protocol.FrameCodec;
+import chat.protocol.JsonLineCodec;
+import chat.protocol.Protocol.Command;
+import chat.protocol.Protocol.Packet;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Compara bytes por trama y CPU por mensaje de cada FrameCodec. Cada iteracion
+// va del objeto tipado al objeto tipado (crear paquete, codificar, decodificar y
+// convertir los datos), para que el formato anterior con JSON dentro de un
+// String pague su doble codificacion.
+public class CodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        Message message = sampleMessage(0);
+        List<Message> history = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            history.add(sampleMessage(i));
+        }
+
+        System.out.println("Trama               Codec       bytes   ns CPU/msg");
+        run("RECEIVE_MESSAGE", Command.RECEIVE_MESSAGE, message, Message.class, iterations);
+        run("historial (50)", Command.SUCCESS, history, new TypeToken<List<Message>>(){}.getType(), iterations / 20);
+    }
+
+    private static void run(String label, Command command, Object payload, Type type, int iterations)
+            throws IOException {
+        report(label, "JSON-texto", () -> new JsonLineCodec(true), command, payload, type, iterations);
+        report(label, "JSON", JsonLineCodec::new, command, payload, type, iterations);
+        report(label, "BINARY", BinaryFrameCodec::new, command, payload, type, iterations);
+    }
+
+    private static void report(String label, String name, Supplier<FrameCodec> factory, Command command,
+                               Object payload, Type type, int iterations) throws IOException {
+        FrameCodec encoder = factory.get();
+        FrameCodec decoder = factory.get();
+        int frameBytes = encoder.encode(new Packet(command, payload)).length;
+
+        loop(encoder, decoder, command, payload, type, WARMUP_ITERATIONS);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        long consumed = loop(encoder, decoder, command, payload, type, iterations);
+        long cpu = threads.getCurrentThreadCpuTime() - start;
+
+        System.out.printf("%-18s  %-10s %6d   %8.0f%n", label, name, frameBytes, (double) cpu / iterations);
+        if (consumed != iterations) {
+            throw new IllegalStateException("Se decodificaron " + consumed + " de " + iterations);
+        }
+    }
+
+    private static long loop(FrameCodec encoder, FrameCodec decoder, Command command, Object payload,
+                             Type type, int iterations) throws IOException {
+        long[] decoded = {0};
+        for (int i = 0; i < iterations; i++) {
+            byte[] frame = encoder.encode(new Packet(command, payload));
+            decoder.decode(ByteBuffer.wrap(frame), p -> {
+                if (p.getData(type) != null) {
+                    decoded[0]++;
+                }
+            });
+        }
+        return decoded[0];
+    }
+
+    private static Message sampleMessage(int index) {
+        Message message = new Message(7, "usuario_" + index, "Hola, este es el mensaje numero " + index);
+        message.setId(1000 + index);
+        message.setReceiverId(12);
+        return message;
+    }
+}
@@ -0,0 +1,134 @@
+package chat.bench;
+
+import chat.model.Message;
+import chat.model.VoiceNoteData;
+import chat.protocol.BinaryFrameCodec;
+import chat.protocol.BlockCompressor;
+import chat.protocol.BlockDecompressor;
+import chat.protocol.CompressionStats;
+import chat.protocol.FrameCodec;
+import chat.protocol.Protocol.Command;
+import chat.protocol.Protocol.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Mide la compresion negociada sobre tramas binarias tipicas: cuanto se reduce
+// cada tipo de trama y cuanta CPU cuesta comprimir y descomprimir. Cada
+// escenario usa una sola conexion, asi que el diccionario se comparte entre
+// tramas como en el servidor.
+public class CompressionBenchmark {
+    private static final int MIN_COMPRESS_BYTES = 512;
+
+    public static void main(String[] args) throws IOException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        FrameCodec codec = new BinaryFrameCodec();
+
+        List<byte[]> history = historyFrames(codec, frames / 20);
+        List<byte[]> notifications = notificationFrames(codec, frames);
+        List<byte[]> successes = successFrames(codec, frames);
+        List<byte[]> voiceNotes = voiceNoteFrames(codec, frames / 200);
+
+        // Calentamiento del JIT, sin imprimir
+        run(null, 1, codec, history);
+        run(null, 1, codec, voiceNotes);
+
+        System.out.println("Escenario                 nivel   bytes/trama   en el cable   us CPU deflate   us CPU inflate");
+        for (int level : new int[]{1, 6}) {
+            run("Historial de 50 msgs", level, codec, history);
+            run("Notificacion de mensaje", level, codec, notifications);
+            run("Confirmacion pequena", level, codec, successes);
+            run("Nota de voz de 2 s", level, codec, voiceNotes);
+        }
+    }
+
+    private static void run(String name, int level, FrameCodec codec, List<byte[]> frames) throws IOException {
+        BlockCompressor compressor = new BlockCompressor(level, MIN_COMPRESS_BYTES);
+        BlockDecompressor decompressor = new BlockDecompressor();
+        int[] decoded = {0};
+        for (byte[] frame : frames) {
+            decompressor.decode(ByteBuffer.wrap(compressor.compress(frame)), codec, packet -> decoded[0]++);
+        }
+        if (decoded[0] != frames.size()) {
+            throw new IllegalStateException(name + ": " + decoded[0] + " de " + frames.size() + " tramas");
+        }
+
+        CompressionStats sent = compressor.getStats();
+        CompressionStats received = decompressor.getStats();
+        compressor.close();
+        decompressor.close();
+        if (name == null) {
+            return;
+        }
+        System.out.printf("%-24s %6d   %11d   %11d   %14.1f   %14.1f%n", name, level,
+                sent.getRawBytes() / frames.size(), sent.getWireBytes() / frames.size(),
+                sent.getCpuNanos() / 1000.0 / frames.size(), received.getCpuNanos() / 1000.0 / frames.size());
+    }
+
+    private static List<byte[]> historyFrames(FrameCodec codec, int count) {
+        List<byte[]> frames = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < count; i++) {
+            List<Message> history = new ArrayList<>();
+            for (int j = 0; j < 50; j++) {
+                history.add(message(random, i * 50 + j));
+            }
+            frames.add(codec.encode(new Packet(Command.SUCCESS, history)));
+        }
+        return frames;
+    }
+
+    private static List<byte[]> notificationFrames(FrameCodec codec, int count) {
+        List<byte[]> frames = new ArrayList<>();
+        Random random = new Random(2);
+        for (int i = 0; i < count; i++) {
+            frames.add(codec.encode(new Packet(Command.RECEIVE_MESSAGE, message(random, i))));
+        }
+        return frames;
+    }
+
+    private static List<byte[]> successFrames(FrameCodec codec, int count) {
+        List<byte[]> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Packet packet = new Packet(Command.SUCCESS, "Mensaje enviado");
+            packet.setRequestId(i + 1);
+            frames.add(codec.encode(packet));
+        }
+        return frames;
+    }
+
+    // Audio PCM de 16 bits a 44,1 kHz: un tono con ruido, en Base64 como hoy
+    private static List<byte[]> voiceNoteFrames(FrameCodec codec, int count) {
+        List<byte[]> frames = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < Math.max(count, 1); i++) {
+            byte[] audio = new byte[2 * 44_100 * 2];
+            for (int sample = 0; sample < audio.length / 2; sample++) {
+                double tone = Math.sin(2 * Math.PI * 220 * sample / 44_100.0) * 8_000;
+                short value = (short) (tone + random.nextGaussian() * 500);
+                audio[2 * sample] = (byte) (value >> 8);
+                audio[2 * sample + 1] = (byte) value;
+            }
+            frames.add(codec.encode(new Packet(Command.VOICE_NOTE_DATA, new VoiceNoteData(1, 2, audio, 2))));
+        }
+        return frames;
+    }
+
+    private static Message message(Random random, int id) {
+        String[] words = {"hola", "que", "tal", "nos", "vemos", "manana", "en", "la", "reunion", "del", "proyecto", "ok"};
+        StringBuilder content = new StringBuilder();
+        int length = 3 + random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            content.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        Message message = new Message(1 + random.nextInt(5), "usuario_" + (1 + random.nextInt(5)), content.toString().trim());
+        message.setId(id);
+        message.setReceiverId(1 + random.nextInt(5));
+        message.setTimestamp(LocalDateTime.of(2024, 5, 1, 10, 0).plusSeconds(id * 37L));
+        return message;
+    }
+}
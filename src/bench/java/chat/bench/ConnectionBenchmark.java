@@ -0,0 +1,181 @@
+package chat.bench;
+
+import chat.config.ServerConfig;
+import chat.model.Message;
+import chat.model.User;
+import chat.protocol.Protocol;
+import chat.protocol.Protocol.Command;
+import chat.protocol.Protocol.Packet;
+import chat.repository.impl.*;
+import chat.server.TcpChatServer;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Abre N conexiones contra un servidor en memoria y mide cuantas son atendidas
+// y la latencia de entrega de mensajes privados, para cada ExecutionMode.
+public class ConnectionBenchmark {
+    private static final String HOST = "localhost";
+    private static final int BASE_PORT = 6100;
+    private static final long CONNECT_WINDOW_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int messages = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        List<String> results = new ArrayList<>();
+        int port = BASE_PORT;
+        for (ServerConfig.ExecutionMode mode : ServerConfig.ExecutionMode.values()) {
+            results.add(run(mode, port++, connections, messages));
+        }
+
+        System.out.println("\n=========== RESULTADOS ===========");
+        System.out.println("Java " + Runtime.version().feature() + ", transporte " +
+                ServerConfig.getInstance().getTransport() + ", " + connections + " conexiones");
+        results.forEach(System.out::println);
+    }
+
+    private static String run(ServerConfig.ExecutionMode mode, int port,
+                              int connections, int messages) throws Exception {
+        TcpChatServer server = new TcpChatServer(null,
+                new InMemoryUserRepository(),
+                new InMemoryMessageRepository(),
+                new InMemoryGroupRepository(),
+                new InMemoryCallRepository(),
+                mode);
+
+        Thread serverThread = new Thread(() -> server.start(port), "bench-server-" + mode);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort(port);
+
+        List<BenchClient> clients = new ArrayList<>();
+        List<BenchClient> served = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                BenchClient client = new BenchClient(port);
+                client.send(new Packet(Command.REGISTER, mode + "-" + port + "-" + i));
+                clients.add(client);
+            }
+
+            // Solo cuentan las conexiones que reciben respuesta dentro de la ventana
+            long deadline = System.currentTimeMillis() + CONNECT_WINDOW_MS;
+            for (BenchClient client : clients) {
+                Packet response = client.read(deadline);
+                if (response != null && response.getCommand() == Command.SUCCESS) {
+                    client.userId = response.getData(User.class).getId();
+                    served.add(client);
+                }
+            }
+
+            long[] latencies = measureLatency(served, messages);
+            return String.format("%-16s atendidas %5d/%-5d  p50 %7.3f ms  p99 %7.3f ms",
+                    mode, served.size(), connections, percentile(latencies, 50), percentile(latencies, 99));
+        } finally {
+            for (BenchClient client : clients) {
+                client.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static long[] measureLatency(List<BenchClient> served, int messages) throws IOException {
+        if (served.size() < 2) {
+            return new long[0];
+        }
+
+        long[] latencies = new long[messages];
+        int count = 0;
+        for (int i = 0; i < messages; i++) {
+            BenchClient sender = served.get(i % served.size());
+            BenchClient receiver = served.get((i + 1) % served.size());
+
+            Message message = new Message(sender.userId, "bench", "ping " + i);
+            message.setReceiverId(receiver.userId);
+
+            long start = System.nanoTime();
+            sender.send(new Packet(Command.SEND_MESSAGE, message));
+            Packet received = receiver.awaitCommand(Command.RECEIVE_MESSAGE);
+            long elapsed = System.nanoTime() - start;
+            sender.awaitCommand(Command.SUCCESS);
+
+            if (received != null) {
+                latencies[count++] = elapsed;
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static double percentile(long[] values, int percentile) {
+        if (values.length == 0) {
+            return Double.NaN;
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket probe = new Socket(HOST, port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("El servidor no abrio el puerto " + port);
+    }
+
+    private static class BenchClient {
+        private static final int RESPONSE_TIMEOUT_MS = 5000;
+
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private int userId;
+
+        BenchClient(int port) throws IOException {
+            this.socket = new Socket(HOST, port);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        void send(Packet packet) {
+            out.println(Protocol.serializeLegacy(packet));
+        }
+
+        Packet read(long deadline) throws IOException {
+            try {
+                socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+                String line = in.readLine();
+                return line != null ? Protocol.deserialize(line) : null;
+            } catch (SocketTimeoutException e) {
+                return null;
+            }
+        }
+
+        Packet awaitCommand(Command command) throws IOException {
+            long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT_MS;
+            Packet packet;
+            while ((packet = read(deadline)) != null) {
+                if (packet.getCommand() == command) {
+                    return packet;
+                }
+            }
+            return null;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignorado al cerrar
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package chat.bench;
+
+import chat.handler.ClientHandler;
+import chat.handler.ClientRegistry;
+import chat.model.Group;
+import chat.model.Message;
+import chat.protocol.BinaryFrameCodec;
+import chat.protocol.FrameCodec;
+import chat.protocol.JsonLineCodec;
+import chat.protocol.Protocol.Packet;
+import chat.repository.impl.InMemoryGroupRepository;
+import chat.transport.ClientConnection;
+
+import java.lang.management.ManagementFactory;
+
+// Mide CPU y memoria asignada por cada mensaje de grupo segun el tamano del
+// grupo. Los miembros se reparten entre los tres formatos de trama y sus
+// conexiones solo codifican el paquete, sin escribir en ningun socket.
+public class FanoutBenchmark {
+    private static final int WARMUP_SENDS = 2_000;
+
+    public static void main(String[] args) {
+        int sends = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int[] groupSizes = {10, 100, 500};
+
+        System.out.println("Miembros   ns CPU/envio   bytes asignados/envio");
+        for (int size : groupSizes) {
+            run(size, sends);
+        }
+    }
+
+    private static void run(int groupSize, int sends) {
+        InMemoryGroupRepository groups = new InMemoryGroupRepository();
+        ClientRegistry registry = new ClientRegistry(groups);
+
+        Group group = new Group("bench", 1);
+        for (int userId = 1; userId <= groupSize; userId++) {
+            if (!group.getMemberIds().contains(userId)) {
+                group.getMemberIds().add(userId);
+            }
+            registry.register(userId, new ClientHandler(new EncodingConnection(codecFor(userId)), null, registry));
+        }
+        groups.save(group);
+
+        Message message = new Message(1, "usuario_1", "Hola grupo, este es un mensaje de prueba");
+        message.setGroupId(group.getId());
+
+        for (int i = 0; i < WARMUP_SENDS; i++) {
+            registry.notifyGroupMessage(message, 1);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocatedStart = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < sends; i++) {
+            registry.notifyGroupMessage(message, 1);
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedStart;
+
+        System.out.printf("%8d   %12.0f   %21d%n", groupSize, (double) cpu / sends, allocated / sends);
+    }
+
+    private static FrameCodec codecFor(int userId) {
+        switch (userId % 3) {
+            case 0:
+                return new JsonLineCodec(true);
+            case 1:
+                return new JsonLineCodec();
+            default:
+                return new BinaryFrameCodec();
+        }
+    }
+
+    // Conexion falsa: codifica como lo haria la real y descarta la trama
+    private static class EncodingConnection implements ClientConnection {
+        private final FrameCodec codec;
+        private long bytes;
+
+        EncodingConnection(FrameCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void send(Packet packet) {
+            bytes += codec.encode(packet).length;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "bench";
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package chat.bench;
+
+import chat.model.AudioPacket;
+import chat.server.VoiceServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generador sintetico de audio para el VoiceServer: reparte las llamadas entre
+// los shards y, por cada shard, un hilo envia datagramas de 20 ms de audio tan
+// rapido como puede mientras otro cuenta los que llegan reenviados. Mide
+// cuantos datagramas por segundo reenvia el servidor segun el numero de shards
+// y cuantos bytes asignan los hilos del servidor por datagrama reenviado.
+public class VoiceRelayBenchmark {
+    private static final int BASE_PORT = 7500;
+    private static final int PAYLOAD_BYTES = 160;
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxShards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Shards   datagramas reenviados/s   perdidos   bytes/datagrama");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            run(calls, seconds, shards);
+        }
+    }
+
+    private static void run(int calls, int seconds, int shardCount) throws Exception {
+        VoiceServer server = new VoiceServer(BASE_PORT, shardCount);
+        Thread serverThread = new Thread(server, "voice-bench-server");
+        serverThread.start();
+
+        List<Lane> lanes = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            lanes.add(new Lane(new InetSocketAddress("127.0.0.1", BASE_PORT + shard)));
+        }
+        // Cada llamada son dos clientes con ids consecutivos en el mismo shard
+        for (int call = 0; call < calls; call++) {
+            lanes.get(call % shardCount).addCall(2 * call + 1);
+        }
+        for (Lane lane : lanes) {
+            lane.register();
+        }
+        Thread.sleep(300);
+
+        List<Thread> threads = new ArrayList<>();
+        for (Lane lane : lanes) {
+            threads.add(new Thread(lane::send, "voice-bench-send"));
+            threads.add(new Thread(lane::receive, "voice-bench-receive"));
+        }
+        long[] serverThreadIds = serverThreadIds();
+        long allocatedBefore = allocatedBytes(serverThreadIds);
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        for (Lane lane : lanes) {
+            lane.running = false;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long allocated = allocatedBytes(serverThreadIds) - allocatedBefore;
+
+        long sent = 0;
+        long received = 0;
+        for (Lane lane : lanes) {
+            sent += lane.sent.get();
+            received += lane.received.get();
+            lane.close();
+        }
+        server.stop();
+        serverThread.join();
+
+        System.out.printf("%6d   %23.0f   %7.1f%%   %15.1f%n", shardCount, received / elapsed,
+                sent == 0 ? 0.0 : 100.0 * (sent - received) / sent,
+                received == 0 ? 0.0 : (double) allocated / received);
+    }
+
+    // Hilos del servidor: el que ejecuta el primer shard, el resto de shards y sus workers
+    private static long[] serverThreadIds() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("voice-bench-server")
+                        || thread.getName().startsWith("voice-shard-")
+                        || thread.getName().startsWith("voice-relay-"))
+                .mapToLong(Thread::getId)
+                .toArray();
+    }
+
+    private static long allocatedBytes(long[] threadIds) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threadIds)) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    // Clientes de las llamadas asignadas a un shard
+    private static class Lane {
+        private final InetSocketAddress server;
+        private final List<DatagramChannel> channels = new ArrayList<>();
+        private final List<Integer> userIds = new ArrayList<>();
+        private final Selector selector;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private volatile boolean running = true;
+
+        Lane(InetSocketAddress server) throws IOException {
+            this.server = server;
+            this.selector = Selector.open();
+        }
+
+        void addCall(int firstUserId) throws IOException {
+            for (int userId = firstUserId; userId <= firstUserId + 1; userId++) {
+                DatagramChannel channel = DatagramChannel.open();
+                channel.configureBlocking(false);
+                channel.bind(new InetSocketAddress("127.0.0.1", 0));
+                channel.register(selector, SelectionKey.OP_READ);
+                channels.add(channel);
+                userIds.add(userId);
+            }
+        }
+
+        void register() throws IOException {
+            ByteBuffer packet = ByteBuffer.allocate(AudioPacket.HEADER_BYTES);
+            for (int i = 0; i < channels.size(); i++) {
+                packet.clear();
+                packet.putInt(0, userIds.get(i)).putInt(4, 0);
+                channels.get(i).send(packet, server);
+            }
+        }
+
+        void send() {
+            ByteBuffer packet = ByteBuffer.allocateDirect(AudioPacket.HEADER_BYTES + PAYLOAD_BYTES);
+            int sequence = 0;
+            try {
+                while (running) {
+                    sequence++;
+                    for (int i = 0; i < channels.size() && running; i++) {
+                        int userId = userIds.get(i);
+                        int peerId = userId % 2 == 1 ? userId + 1 : userId - 1;
+                        packet.clear();
+                        packet.putInt(0, userId).putInt(4, peerId).putInt(8, sequence);
+                        packet.putInt(20, PAYLOAD_BYTES);
+                        if (channels.get(i).send(packet, server) > 0) {
+                            sent.incrementAndGet();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error enviando: " + e.getMessage());
+            }
+        }
+
+        void receive() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+            try {
+                while (running) {
+                    if (selector.select(100) == 0) {
+                        continue;
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        DatagramChannel channel = (DatagramChannel) key.channel();
+                        buffer.clear();
+                        while (channel.receive(buffer) != null) {
+                            received.incrementAndGet();
+                            buffer.clear();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                System.err.println("Error recibiendo: " + e.getMessage());
+            }
+        }
+
+        void close() throws IOException {
+            selector.close();
+            for (DatagramChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+}
@@ -21,6 +21,12 @@ public class AudioCapture {
     }
     
     public void startCapture() throws LineUnavailableException {
+        startCapture(0);
+    }
+    
+    // Con bufferBytes > 0 la linea se abre con ese buffer: cuanto menor, menos
+    // audio puede quedar esperando a ser leido
+    public void startCapture(int bufferBytes) throws LineUnavailableException {
         DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
         
         if (!AudioSystem.isLineSupported(info)) {
@@ -28,13 +34,35 @@ public class AudioCapture {
         }
         
         microphone = (TargetDataLine) AudioSystem.getLine(info);
-        microphone.open(format);
+        if (bufferBytes > 0) {
+            microphone.open(format, bufferBytes);
+        } else {
+            microphone.open(format);
+        }
         microphone.start();
         isCapturing = true;
         
         System.out.println("Captura de audio iniciada");
     }
     
+    // Lee exactamente length bytes directamente en buffer a partir de offset,
+    // bloqueando hasta que el microfono los tenga. Devuelve menos solo si la
+    // captura se detiene entretanto.
+    public int captureFrame(byte[] buffer, int offset, int length) {
+        if (!isCapturing || microphone == null) {
+            return 0;
+        }
+        return Math.max(0, microphone.read(buffer, offset, length));
+    }
+    
+    // Bytes ya capturados que esperan a ser leidos
+    public int available() {
+        if (!isCapturing || microphone == null) {
+            return 0;
+        }
+        return microphone.available();
+    }
+    
     public byte[] captureChunk() {
         if (!isCapturing || microphone == null) {
             return new byte[0];
@@ -0,0 +1,24 @@
+package chat.audio;
+
+// Codec de audio para llamadas y notas de voz. Entra y sale PCM en el formato
+// de AudioCapture/AudioPlayback (44,1 kHz, 16 bits, mono, big endian); lo que
+// viaja en el datagrama es lo que produce encode(). Cada paquete se codifica
+// por separado, sin estado entre paquetes, asi que una perdida no afecta a los
+// siguientes y una misma instancia sirve a varios hilos.
+//
+// Las implementaciones se descubren con ServiceLoader: basta un JAR con la
+// clase y su linea en META-INF/services/chat.audio.AudioCodec.
+public interface AudioCodec {
+    // Byte que identifica el codec en la cabecera de AudioPacket (0 = PCM, hasta 127)
+    int getId();
+
+    // Nombre con el que se negocia en la llamada
+    String getName();
+
+    // Codifica length bytes de PCM y devuelve los bytes escritos en out
+    int encode(byte[] pcm, int offset, int length, byte[] out, int outOffset);
+
+    // Decodifica un paquete a PCM y devuelve los bytes escritos, o -1 si los
+    // datos no son validos o el resultado no cabe en pcm
+    int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset);
+}
@@ -0,0 +1,92 @@
+package chat.audio;
+
+import chat.model.AudioPacket;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+// Registro de los codecs disponibles. PCM esta siempre; el resto se carga con
+// ServiceLoader en el orden de META-INF/services, que es tambien el orden de
+// preferencia al ofrecerlos en una llamada.
+public final class AudioCodecs {
+    public static final AudioCodec PCM = new PcmCodec();
+
+    private static final AudioCodec[] BY_ID = new AudioCodec[128];
+    private static final Map<String, AudioCodec> BY_NAME = new LinkedHashMap<>();
+
+    static {
+        for (AudioCodec codec : ServiceLoader.load(AudioCodec.class)) {
+            register(codec);
+        }
+        register(PCM);
+    }
+
+    private AudioCodecs() {
+    }
+
+    private static void register(AudioCodec codec) {
+        int id = codec.getId();
+        if (id < 0 || id >= BY_ID.length || isReserved(id)) {
+            System.err.println("Codec de audio con id fuera de rango o reservado: " + codec.getName());
+            return;
+        }
+        if (BY_ID[id] != null) {
+            if (BY_ID[id].getClass() != codec.getClass()) {
+                System.err.println("Codec de audio " + codec.getName() + " ignorado: id " + id +
+                        " ya usado por " + BY_ID[id].getName());
+            }
+            return;
+        }
+        BY_ID[id] = codec;
+        BY_NAME.put(codec.getName().toUpperCase(), codec);
+    }
+
+    // Ids del byte de codec que usan paquetes que no son audio codificado
+    private static boolean isReserved(int id) {
+        return id == ComfortNoise.CODEC_ID || id == AudioPacket.VOICE_NOTE_DATA || id == AudioPacket.VOICE_NOTE_ACK
+                || id == AudioPacket.FEC_PARITY || id == AudioPacket.QUALITY_REPORT;
+    }
+
+    // null si el id no corresponde a ningun codec cargado
+    public static AudioCodec byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
+    // null si no hay un codec con ese nombre
+    public static AudioCodec byName(String name) {
+        return name == null ? null : BY_NAME.get(name.toUpperCase());
+    }
+
+    // Nombres a ofrecer al iniciar una llamada: el preferido primero (si existe)
+    // y despues el resto en orden de registro, con PCM siempre al final
+    public static List<String> offer(String preferred) {
+        List<String> names = new ArrayList<>();
+        AudioCodec first = byName(preferred);
+        if (first != null) {
+            names.add(first.getName());
+        }
+        for (AudioCodec codec : BY_NAME.values()) {
+            if (codec != first) {
+                names.add(codec.getName());
+            }
+        }
+        return names;
+    }
+
+    // El primero de la oferta que este disponible aqui; sin oferta (clientes
+    // antiguos) o sin coincidencias, PCM
+    public static AudioCodec negotiate(List<String> offered) {
+        if (offered != null) {
+            for (String name : offered) {
+                AudioCodec codec = byName(name);
+                if (codec != null) {
+                    return codec;
+                }
+            }
+        }
+        return PCM;
+    }
+}
@@ -20,6 +20,12 @@ public class AudioPlayback {
     }
     
     public void startPlayback() throws LineUnavailableException {
+        startPlayback(0);
+    }
+    
+    // Con bufferBytes > 0 la linea se abre con ese buffer: cuanto menor, menos
+    // audio espera en la tarjeta y antes bloquea playChunk
+    public void startPlayback(int bufferBytes) throws LineUnavailableException {
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
         
         if (!AudioSystem.isLineSupported(info)) {
@@ -27,7 +33,11 @@ public class AudioPlayback {
         }
         
         speaker = (SourceDataLine) AudioSystem.getLine(info);
-        speaker.open(format);
+        if (bufferBytes > 0) {
+            speaker.open(format, bufferBytes);
+        } else {
+            speaker.open(format);
+        }
         speaker.start();
         isPlaying = true;
         
@@ -35,11 +45,18 @@ public class AudioPlayback {
     }
     
     public void playChunk(byte[] audioData) {
-        if (!isPlaying || speaker == null || audioData == null || audioData.length == 0) {
+        if (audioData != null) {
+            playChunk(audioData, 0, audioData.length);
+        }
+    }
+    
+    // Reproduce una parte del arreglo, por ejemplo el audio dentro del datagrama recibido
+    public void playChunk(byte[] audioData, int offset, int length) {
+        if (!isPlaying || speaker == null || length <= 0) {
             return;
         }
         
-        speaker.write(audioData, 0, audioData.length);
+        speaker.write(audioData, offset, length);
     }
     
     public void playAudio(byte[] audioData) throws LineUnavailableException {
@@ -0,0 +1,60 @@
+package chat.audio;
+
+import java.util.Random;
+
+// Ruido de confort, como en RFC 3389: durante los silencios el emisor deja de
+// enviar audio y solo manda de vez en cuando un paquete con el nivel del ruido
+// de fondo. El receptor rellena el hueco con ruido de ese nivel para que el
+// silencio no suene a llamada cortada. Paquete:
+//   [muestras PCM por bloque:2][nivel en -dBov:1]
+public final class ComfortNoise {
+    // Id en el byte de codec de la cabecera; no se negocia y ningun AudioCodec puede usarlo
+    public static final int CODEC_ID = 13;
+    public static final int PAYLOAD_BYTES = 3;
+    // -127 dBov: el nivel mas bajo que cabe, practicamente silencio
+    public static final int MIN_LEVEL = 127;
+    private static final double FULL_SCALE = Short.MAX_VALUE;
+
+    private ComfortNoise() {
+    }
+
+    public static int encode(int samples, int level, byte[] out, int offset) {
+        out[offset] = (byte) (samples >> 8);
+        out[offset + 1] = (byte) samples;
+        out[offset + 2] = (byte) Math.max(0, Math.min(MIN_LEVEL, level));
+        return PAYLOAD_BYTES;
+    }
+
+    // Muestras del bloque que sustituye, o -1 si el paquete no es valido
+    public static int samples(byte[] data, int offset, int length) {
+        if (length < PAYLOAD_BYTES || (data[offset + 2] & 0xFF) > MIN_LEVEL) {
+            return -1;
+        }
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    public static int level(byte[] data, int offset) {
+        return data[offset + 2] & 0xFF;
+    }
+
+    // Nivel en -dBov de un valor RMS de PCM de 16 bits
+    public static int levelOf(double rms) {
+        if (rms < 1) {
+            return MIN_LEVEL;
+        }
+        int level = (int) Math.round(-20 * Math.log10(rms / FULL_SCALE));
+        return Math.max(0, Math.min(MIN_LEVEL, level));
+    }
+
+    // Ruido blanco uniforme con el RMS del nivel dado, en PCM de 16 bits big endian
+    public static void fill(byte[] pcm, int offset, int length, int level, Random random) {
+        double rms = FULL_SCALE * Math.pow(10, -level / 20.0);
+        // Una uniforme en [-a, a] tiene RMS a / sqrt(3)
+        int amplitude = (int) Math.min(FULL_SCALE, rms * Math.sqrt(3));
+        for (int i = offset; i + 1 < offset + length; i += 2) {
+            int sample = amplitude == 0 ? 0 : random.nextInt(2 * amplitude + 1) - amplitude;
+            pcm[i] = (byte) (sample >> 8);
+            pcm[i + 1] = (byte) sample;
+        }
+    }
+}
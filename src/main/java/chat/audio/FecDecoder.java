@@ -0,0 +1,213 @@
+package chat.audio;
+
+// Lado receptor de FecEncoder para un flujo: guarda los ultimos paquetes
+// recibidos y las paridades pendientes y, en cuanto a un grupo le falta solo
+// uno, lo reconstruye. Tras onPacket() u onParity(), si recover() devuelve
+// true el paquete reconstruido esta en getData()/getLength() con su
+// secuencia, codec y timestamp, y se trata como si hubiera llegado por la
+// red. Todo se reserva al crearlo; recibir no crea objetos. Un solo hilo.
+public class FecDecoder {
+    // Paquetes recordados; una paridad cuyo grupo ya salio de aqui se descarta
+    private static final int CAPACITY = 32;
+    private static final int MAX_PARITIES = 4;
+
+    private final int[] sequences = new int[CAPACITY];
+    private final boolean[] present = new boolean[CAPACITY];
+    // Reconstruido y aun no llegado: si llega despues solo venia con retraso
+    private final boolean[] rebuilt = new boolean[CAPACITY];
+    private final int[] codecs = new int[CAPACITY];
+    private final long[] timestamps = new long[CAPACITY];
+    private final int[] lengths = new int[CAPACITY];
+    private final byte[][] packets = new byte[CAPACITY][FecEncoder.MAX_DATA_BYTES];
+
+    private final boolean[] parityValid = new boolean[MAX_PARITIES];
+    private final int[] parityBases = new int[MAX_PARITIES];
+    private final int[] parityLengths = new int[MAX_PARITIES];
+    private final byte[][] parities = new byte[MAX_PARITIES][FecEncoder.HEADER_BYTES + FecEncoder.MAX_DATA_BYTES];
+    private int nextParity;
+    // Paridad que toca revisar tras el ultimo evento, o -1
+    private int candidate = -1;
+
+    private boolean started;
+    private int firstSequence;
+    private int highestSequence;
+    private long storedPackets;
+    private long recoveredFrames;
+
+    private final byte[] recovered = new byte[FecEncoder.MAX_DATA_BYTES];
+    private int recoveredSequence;
+    private int recoveredCodec;
+    private long recoveredTimestamp;
+    private int recoveredLength;
+
+    // Un paquete de audio o de ruido de confort del flujo, tal como llego
+    public void onPacket(int sequence, int codecId, long timestamp, byte[] data, int offset, int length) {
+        candidate = -1;
+        if (isStored(sequence)) {
+            int slot = Math.floorMod(sequence, CAPACITY);
+            if (rebuilt[slot]) {
+                rebuilt[slot] = false;
+                recoveredFrames--;
+            }
+            return;
+        }
+        if (length > FecEncoder.MAX_DATA_BYTES || !store(sequence, codecId, timestamp, data, offset, length)) {
+            return;
+        }
+        for (int p = 0; p < MAX_PARITIES; p++) {
+            if (parityValid[p] && covers(p, sequence)) {
+                candidate = p;
+                return;
+            }
+        }
+    }
+
+    // Un paquete de paridad; sequence es la del primer paquete de su grupo
+    public void onParity(int sequence, byte[] data, int offset, int length) {
+        candidate = -1;
+        if (length < FecEncoder.HEADER_BYTES || length > parities[0].length
+                || data[offset] <= 0 || data[offset] > FecEncoder.MAX_GROUP_FRAMES) {
+            return;
+        }
+        int p = nextParity;
+        nextParity = (nextParity + 1) % MAX_PARITIES;
+        System.arraycopy(data, offset, parities[p], 0, length);
+        parityBases[p] = sequence;
+        parityLengths[p] = length;
+        parityValid[p] = true;
+        candidate = p;
+    }
+
+    // Reconstruye el unico paquete que le falte al grupo del ultimo evento
+    public boolean recover() {
+        int p = candidate;
+        candidate = -1;
+        if (p < 0 || !parityValid[p]) {
+            return false;
+        }
+        int base = parityBases[p];
+        int count = parities[p][0];
+        int missing = -1;
+        for (int i = 0; i < count; i++) {
+            int sequence = base + i;
+            if (started && highestSequence - sequence >= CAPACITY) {
+                // Parte del grupo ya no esta: la paridad no sirve
+                parityValid[p] = false;
+                return false;
+            }
+            if (!isStored(sequence)) {
+                if (missing >= 0) {
+                    return false;
+                }
+                missing = sequence;
+            }
+        }
+        parityValid[p] = false;
+        if (missing < 0) {
+            return false;
+        }
+
+        byte[] parity = parities[p];
+        int codecId = parity[1] & 0xFF;
+        int length = ((parity[2] & 0xFF) << 8) | (parity[3] & 0xFF);
+        long timestamp = 0;
+        for (int i = 0; i < 8; i++) {
+            timestamp = (timestamp << 8) | (parity[4 + i] & 0xFF);
+        }
+        int dataLength = parityLengths[p] - FecEncoder.HEADER_BYTES;
+        System.arraycopy(parity, FecEncoder.HEADER_BYTES, recovered, 0, dataLength);
+        for (int i = 0; i < count; i++) {
+            int sequence = base + i;
+            if (sequence == missing) {
+                continue;
+            }
+            int slot = Math.floorMod(sequence, CAPACITY);
+            codecId ^= codecs[slot];
+            length ^= lengths[slot];
+            timestamp ^= timestamps[slot];
+            byte[] packet = packets[slot];
+            for (int j = Math.min(lengths[slot], dataLength) - 1; j >= 0; j--) {
+                recovered[j] ^= packet[j];
+            }
+        }
+        if (length <= 0 || length > dataLength) {
+            return false;
+        }
+
+        recoveredSequence = missing;
+        recoveredCodec = codecId;
+        recoveredTimestamp = timestamp;
+        recoveredLength = length;
+        store(missing, codecId, timestamp, recovered, 0, length);
+        rebuilt[Math.floorMod(missing, CAPACITY)] = true;
+        recoveredFrames++;
+        return true;
+    }
+
+    public byte[] getData() {
+        return recovered;
+    }
+
+    public int getLength() {
+        return recoveredLength;
+    }
+
+    public int getSequence() {
+        return recoveredSequence;
+    }
+
+    public int getCodecId() {
+        return recoveredCodec;
+    }
+
+    public long getTimestamp() {
+        return recoveredTimestamp;
+    }
+
+    // Paquetes reconstruidos con la paridad que no llegaron despues por su cuenta
+    public long getRecoveredFrames() {
+        return recoveredFrames;
+    }
+
+    // Paquetes que faltan entre el primero y el ultimo recibidos, ya contados los recuperados
+    public long getLostFrames() {
+        return started ? Math.max(0, (long) (highestSequence - firstSequence) + 1 - storedPackets) : 0;
+    }
+
+    private boolean covers(int p, int sequence) {
+        int offset = sequence - parityBases[p];
+        return offset >= 0 && offset < parities[p][0];
+    }
+
+    private boolean isStored(int sequence) {
+        int slot = Math.floorMod(sequence, CAPACITY);
+        return present[slot] && sequences[slot] == sequence;
+    }
+
+    // false si es repetido o demasiado viejo para recordarlo
+    private boolean store(int sequence, int codecId, long timestamp, byte[] data, int offset, int length) {
+        if (!started) {
+            started = true;
+            firstSequence = sequence;
+            highestSequence = sequence;
+        } else if (highestSequence - sequence >= CAPACITY || isStored(sequence)) {
+            return false;
+        }
+        if (sequence - highestSequence > 0) {
+            highestSequence = sequence;
+        }
+        if (sequence - firstSequence < 0) {
+            firstSequence = sequence;
+        }
+        int slot = Math.floorMod(sequence, CAPACITY);
+        sequences[slot] = sequence;
+        present[slot] = true;
+        rebuilt[slot] = false;
+        codecs[slot] = codecId;
+        timestamps[slot] = timestamp;
+        lengths[slot] = length;
+        System.arraycopy(data, offset, packets[slot], 0, length);
+        storedPackets++;
+        return true;
+    }
+}
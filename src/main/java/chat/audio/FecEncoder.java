@@ -0,0 +1,85 @@
+package chat.audio;
+
+import java.util.Arrays;
+
+// Correccion de errores por paridad XOR para el audio de llamadas: tras cada
+// grupo de hasta N paquetes consecutivos (audio o ruido de confort) se envia
+// uno de paridad con el XOR de todos ellos. Si del grupo se pierde uno solo,
+// quien recibe lo reconstruye con los demas y la paridad (FecDecoder) sin
+// esperar a un reenvio. El paquete de paridad lleva en la cabecera el codec
+// AudioPacket.FEC_PARITY y como numero de secuencia el del primero del grupo:
+//   [paquetes:1][XOR codecs:1][XOR longitudes:2][XOR timestamps:8][XOR datos]
+// Los datos mas cortos se completan con ceros hasta el mas largo del grupo.
+public class FecEncoder {
+    public static final int HEADER_BYTES = 12;
+    public static final int MAX_GROUP_FRAMES = 8;
+    static final int MAX_DATA_BYTES = 4096;
+
+    private final int groupFrames;
+    private final byte[] parity = new byte[MAX_DATA_BYTES];
+    private int maxLength;
+    private int codecXor;
+    private int lengthXor;
+    private long timestampXor;
+    private int baseSequence;
+    private int count;
+
+    public FecEncoder(int groupFrames) {
+        this.groupFrames = Math.max(1, Math.min(MAX_GROUP_FRAMES, groupFrames));
+    }
+
+    // Suma al grupo un paquete ya enviado; devuelve false si no cabe y no queda protegido
+    public boolean add(int sequence, int codecId, long timestamp, byte[] data, int offset, int length) {
+        if (length > MAX_DATA_BYTES) {
+            return false;
+        }
+        if (count == 0) {
+            baseSequence = sequence;
+        }
+        for (int i = 0; i < length; i++) {
+            parity[i] ^= data[offset + i];
+        }
+        maxLength = Math.max(maxLength, length);
+        codecXor ^= codecId;
+        lengthXor ^= length;
+        timestampXor ^= timestamp;
+        count++;
+        return true;
+    }
+
+    // Grupo lleno: toca enviar la paridad
+    public boolean isComplete() {
+        return count >= groupFrames;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Secuencia del primer paquete del grupo, para la cabecera de la paridad
+    public int getBaseSequence() {
+        return baseSequence;
+    }
+
+    // Escribe la paridad del grupo en out[outOffset...], devuelve su longitud y
+    // empieza un grupo nuevo. out no puede ser ninguno de los datos sumados.
+    public int writeParity(byte[] out, int outOffset) {
+        out[outOffset] = (byte) count;
+        out[outOffset + 1] = (byte) codecXor;
+        out[outOffset + 2] = (byte) (lengthXor >> 8);
+        out[outOffset + 3] = (byte) lengthXor;
+        for (int i = 0; i < 8; i++) {
+            out[outOffset + 4 + i] = (byte) (timestampXor >>> (56 - 8 * i));
+        }
+        System.arraycopy(parity, 0, out, outOffset + HEADER_BYTES, maxLength);
+        int written = HEADER_BYTES + maxLength;
+
+        Arrays.fill(parity, 0, maxLength, (byte) 0);
+        maxLength = 0;
+        codecXor = 0;
+        lengthXor = 0;
+        timestampXor = 0;
+        count = 0;
+        return written;
+    }
+}
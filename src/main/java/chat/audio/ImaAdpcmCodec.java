@@ -0,0 +1,153 @@
+package chat.audio;
+
+// IMA-ADPCM a 22,05 kHz: 4 bits por muestra y la mitad de las muestras, 88 kbps
+// frente a 705 de PCM (8x) con mas ancho de banda de voz que mu-law. Cada
+// paquete lleva el estado inicial del predictor, asi que se decodifica solo:
+//   [muestras PCM:2][predictor:2][indice de paso:1][nibbles, dos por byte]
+public class ImaAdpcmCodec implements AudioCodec {
+    public static final int ID = 2;
+    private static final int FACTOR = 2;
+    private static final int HEADER_BYTES = 5;
+
+    private static final int[] STEPS = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+            253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+            1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+            3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442,
+            11487, 12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794,
+            32767
+    };
+    private static final int[] INDEX_CHANGE = {-1, -1, -1, -1, 2, 4, 6, 8};
+    // Muestras con las que se estima el paso inicial de cada paquete
+    private static final int INITIAL_STEP_SAMPLES = 8;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "ADPCM";
+    }
+
+    @Override
+    public int encode(byte[] pcm, int offset, int length, byte[] out, int outOffset) {
+        int samples = length / 2;
+        int coded = Resampling.reducedCount(samples, FACTOR);
+        int predictor = coded > 0 ? Resampling.reducedSample(pcm, offset, samples, FACTOR, 0) : 0;
+        int index = initialIndex(pcm, offset, samples, coded);
+
+        out[outOffset] = (byte) (samples >> 8);
+        out[outOffset + 1] = (byte) samples;
+        out[outOffset + 2] = (byte) (predictor >> 8);
+        out[outOffset + 3] = (byte) predictor;
+        out[outOffset + 4] = (byte) index;
+
+        int at = outOffset + HEADER_BYTES;
+        for (int i = 0; i < coded; i++) {
+            int sample = Resampling.reducedSample(pcm, offset, samples, FACTOR, i);
+            int step = STEPS[index];
+            int difference = sample - predictor;
+            int nibble = 0;
+            if (difference < 0) {
+                nibble = 8;
+                difference = -difference;
+            }
+            if (difference >= step) {
+                nibble |= 4;
+                difference -= step;
+            }
+            if (difference >= step >> 1) {
+                nibble |= 2;
+                difference -= step >> 1;
+            }
+            if (difference >= step >> 2) {
+                nibble |= 1;
+            }
+            // El codificador sigue al decodificador para no acumular error
+            predictor = predict(predictor, step, nibble);
+            index = nextIndex(index, nibble);
+
+            if ((i & 1) == 0) {
+                out[at] = (byte) nibble;
+            } else {
+                out[at++] |= (byte) (nibble << 4);
+            }
+        }
+        return HEADER_BYTES + (coded + 1) / 2;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        if (length < HEADER_BYTES) {
+            return -1;
+        }
+        int samples = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+        int coded = Resampling.reducedCount(samples, FACTOR);
+        int predictor = (short) ((data[offset + 2] << 8) | (data[offset + 3] & 0xFF));
+        int index = data[offset + 4];
+        if (index < 0 || index >= STEPS.length || length - HEADER_BYTES < (coded + 1) / 2
+                || 2 * samples > pcm.length - pcmOffset) {
+            return -1;
+        }
+
+        int previous = 0;
+        for (int i = 0; i < coded; i++) {
+            int packed = data[offset + HEADER_BYTES + i / 2];
+            int nibble = (i & 1) == 0 ? packed & 0x0F : (packed >> 4) & 0x0F;
+            predictor = predict(predictor, STEPS[index], nibble);
+            index = nextIndex(index, nibble);
+            if (i > 0) {
+                Resampling.expand(pcm, pcmOffset, samples, FACTOR, i - 1, previous, predictor, false);
+            }
+            previous = predictor;
+        }
+        if (coded > 0) {
+            Resampling.expand(pcm, pcmOffset, samples, FACTOR, coded - 1, previous, previous, true);
+        }
+        return 2 * samples;
+    }
+
+    private static int predict(int predictor, int step, int nibble) {
+        int delta = step >> 3;
+        if ((nibble & 4) != 0) {
+            delta += step;
+        }
+        if ((nibble & 2) != 0) {
+            delta += step >> 1;
+        }
+        if ((nibble & 1) != 0) {
+            delta += step >> 2;
+        }
+        predictor += (nibble & 8) != 0 ? -delta : delta;
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+    }
+
+    private static int nextIndex(int index, int nibble) {
+        return Math.max(0, Math.min(STEPS.length - 1, index + INDEX_CHANGE[nibble & 7]));
+    }
+
+    // Paso inicial proporcional a la variacion de las primeras muestras, para
+    // no arrancar cada paquete con el paso minimo
+    private static int initialIndex(byte[] pcm, int offset, int samples, int coded) {
+        int count = Math.min(INITIAL_STEP_SAMPLES, coded - 1);
+        if (count <= 0) {
+            return 0;
+        }
+        int total = 0;
+        int previous = Resampling.reducedSample(pcm, offset, samples, FACTOR, 0);
+        for (int i = 1; i <= count; i++) {
+            int sample = Resampling.reducedSample(pcm, offset, samples, FACTOR, i);
+            total += Math.abs(sample - previous);
+            previous = sample;
+        }
+        int average = total / count;
+        int index = 0;
+        while (index < STEPS.length - 1 && STEPS[index] < average) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,282 @@
+package chat.audio;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+// Buffer de reproduccion para un flujo de audio por UDP. Ordena las tramas por
+// numero de secuencia y las entrega a ritmo de reproduccion con un retardo que
+// se adapta al jitter observado (estimador de RFC 3550 sobre los timestamps del
+// emisor): con red estable retiene una o dos tramas y con red irregular algunas
+// mas. Lo que llega cuando su turno ya paso se descarta; una trama que falta se
+// sustituye por la anterior, cada vez mas atenuada, y si sobran tramas
+// respecto al objetivo se saltan para no acumular latencia. Tras un paquete de
+// ruido de confort el emisor esta callado: el hueco hasta su siguiente paquete
+// se rellena con ruido de ese nivel y, al volver la voz, se espera de nuevo al
+// retardo objetivo. Un hilo llama a put() al recibir y otro a next() al
+// reproducir.
+public class JitterBuffer {
+    // Tramas que caben en el buffer; mas alla se considera que el flujo se reinicio
+    private static final int CAPACITY = 64;
+    private static final int MAX_FRAME_BYTES = 4096;
+    private static final int MIN_TARGET_FRAMES = 1;
+    private static final int MAX_TARGET_FRAMES = 12;
+    // Retardo objetivo: margen de JITTER_FACTOR veces el jitter estimado
+    private static final double JITTER_FACTOR = 4.0;
+    // Tramas de sobra respecto al objetivo antes de empezar a saltar
+    private static final int EXCESS_FRAMES = 2;
+    // Tramas seguidas que se ocultan repitiendo la anterior antes de callar
+    private static final int MAX_CONCEALED_FRAMES = 3;
+    private static final float CONCEAL_FADE = 0.5f;
+
+    private final double bytesPerMillis;
+    private final byte[][] frames = new byte[CAPACITY][MAX_FRAME_BYTES];
+    private final int[] lengths = new int[CAPACITY];
+    private final int[] sequences = new int[CAPACITY];
+    private final boolean[] present = new boolean[CAPACITY];
+    // Nivel en -dBov de las tramas de ruido de confort; -1 en las de audio
+    private final int[] noiseLevels = new int[CAPACITY];
+    private final byte[] output = new byte[MAX_FRAME_BYTES];
+    private int outputLength;
+
+    private boolean started;
+    private boolean playing;
+    // Siguiente secuencia a reproducir y la mas alta recibida
+    private int nextSequence;
+    private int highestSequence;
+    private int buffered;
+
+    private byte[] lastFrame = new byte[MAX_FRAME_BYTES];
+    private int lastLength;
+    private int concealed;
+    private float concealGain;
+    // Nivel del ultimo ruido de confort reproducido, o -1 si el emisor habla
+    private int noiseLevel = -1;
+    private final Random random = new Random();
+
+    // Estimacion de jitter en milisegundos
+    private boolean hasPrevious;
+    private double previousTransit;
+    private double jitterMillis;
+    private double frameMillis = 20;
+    // Retardo minimo; con FEC cubre un grupo de paridad para que lo
+    // reconstruido llegue antes de su turno
+    private int minTargetFrames = MIN_TARGET_FRAMES;
+
+    private long receivedPackets;
+    private long latePackets;
+    private long concealedFrames;
+    private long skippedFrames;
+    private long comfortNoiseFrames;
+
+    public JitterBuffer(AudioFormat format) {
+        this.bytesPerMillis = format.getFrameSize() * format.getSampleRate() / 1000.0;
+    }
+
+    // Guarda una trama recibida. timestamp es el del emisor en milisegundos.
+    public synchronized void put(int sequence, long timestamp, byte[] data, int offset, int length) {
+        int slot = accept(sequence, timestamp, length);
+        if (slot >= 0) {
+            System.arraycopy(data, offset, frames[slot], 0, length);
+            noiseLevels[slot] = -1;
+        }
+    }
+
+    // Guarda un paquete de ruido de confort que sustituye a length bytes de audio
+    public synchronized void putComfortNoise(int sequence, long timestamp, int level, int length) {
+        int slot = accept(sequence, timestamp, length);
+        if (slot >= 0) {
+            ComfortNoise.fill(frames[slot], 0, length, level, random);
+            noiseLevels[slot] = level;
+        }
+    }
+
+    // Reserva el hueco de una trama recibida; -1 si llega tarde, repetida o no cabe
+    private int accept(int sequence, long timestamp, int length) {
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            return -1;
+        }
+        receivedPackets++;
+        updateJitter(timestamp, System.nanoTime() / 1_000_000.0);
+        frameMillis = length / bytesPerMillis;
+
+        if (!started || sequence - nextSequence >= CAPACITY || nextSequence - sequence >= CAPACITY) {
+            // Primer paquete o salto de secuencia que no cabe: se empieza de nuevo
+            reset(sequence);
+        } else if (sequence - nextSequence < 0) {
+            latePackets++;
+            return -1;
+        }
+
+        int slot = Math.floorMod(sequence, CAPACITY);
+        if (present[slot] && sequences[slot] == sequence) {
+            return -1;
+        }
+        lengths[slot] = length;
+        sequences[slot] = sequence;
+        if (!present[slot]) {
+            present[slot] = true;
+            buffered++;
+        }
+        if (sequence - highestSequence > 0) {
+            highestSequence = sequence;
+        }
+        return slot;
+    }
+
+    // Trama a reproducir ahora, o null si se esta llenando el buffer y no hay
+    // ruido de confort que poner mientras. El arreglo devuelto se reutiliza en
+    // la siguiente llamada; su longitud util es getOutputLength().
+    public synchronized byte[] next() {
+        if (!started) {
+            return null;
+        }
+        if (!playing) {
+            if (depth() < getTargetFrames()) {
+                return noiseLevel >= 0 ? comfortNoise() : null;
+            }
+            playing = true;
+        }
+
+        // Demasiado retardo acumulado: saltar tramas hasta volver al objetivo
+        while (depth() > getTargetFrames() + EXCESS_FRAMES) {
+            discard(nextSequence);
+            nextSequence++;
+            skippedFrames++;
+        }
+
+        int slot = Math.floorMod(nextSequence, CAPACITY);
+        if (present[slot] && sequences[slot] == nextSequence) {
+            outputLength = lengths[slot];
+            System.arraycopy(frames[slot], 0, output, 0, outputLength);
+            byte[] swap = lastFrame;
+            lastFrame = frames[slot];
+            frames[slot] = swap;
+            lastLength = outputLength;
+            noiseLevel = noiseLevels[slot];
+            present[slot] = false;
+            buffered--;
+            nextSequence++;
+            concealed = 0;
+            concealGain = 1f;
+            return output;
+        }
+
+        if (noiseLevel >= 0 && buffered == 0) {
+            // El emisor esta en silencio: ruido hasta que vuelva a hablar, y
+            // entonces se llena otra vez el buffer hasta el objetivo
+            playing = false;
+            return comfortNoise();
+        }
+
+        // Falta la trama que toca: repetir la anterior cada vez mas baja. Si hay
+        // tramas posteriores se da por perdida; si no, aun puede llegar tarde.
+        if (buffered == 0 && concealed >= MAX_CONCEALED_FRAMES) {
+            // El emisor paro o la red se corto: esperar a llenar otra vez
+            playing = false;
+            return null;
+        }
+        if (buffered > 0) {
+            nextSequence++;
+        }
+        concealed++;
+        concealedFrames++;
+        float gain = concealed > MAX_CONCEALED_FRAMES ? 0f : concealGain;
+        concealGain *= CONCEAL_FADE;
+        outputLength = lastLength;
+        scale(lastFrame, output, lastLength, gain);
+        return output;
+    }
+
+    private byte[] comfortNoise() {
+        outputLength = lastLength;
+        ComfortNoise.fill(output, 0, outputLength, noiseLevel, random);
+        comfortNoiseFrames++;
+        return output;
+    }
+
+    public synchronized int getOutputLength() {
+        return outputLength;
+    }
+
+    // Tramas que conviene retener segun el jitter medido
+    public synchronized int getTargetFrames() {
+        int frames = 1 + (int) Math.ceil(JITTER_FACTOR * jitterMillis / Math.max(1.0, frameMillis));
+        return Math.max(minTargetFrames, Math.min(MAX_TARGET_FRAMES, frames));
+    }
+
+    public synchronized void setMinTargetFrames(int frames) {
+        minTargetFrames = Math.max(MIN_TARGET_FRAMES, Math.min(MAX_TARGET_FRAMES, frames));
+    }
+
+    public synchronized double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public synchronized long getReceivedPackets() {
+        return receivedPackets;
+    }
+
+    public synchronized long getLatePackets() {
+        return latePackets;
+    }
+
+    public synchronized long getConcealedFrames() {
+        return concealedFrames;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public synchronized long getComfortNoiseFrames() {
+        return comfortNoiseFrames;
+    }
+
+    // J += (|D| - J) / 16, con D la variacion del tiempo de transito entre paquetes
+    private void updateJitter(long timestamp, double arrivalMillis) {
+        double transit = arrivalMillis - timestamp;
+        if (hasPrevious) {
+            double difference = Math.abs(transit - previousTransit);
+            jitterMillis += (difference - jitterMillis) / 16.0;
+        }
+        previousTransit = transit;
+        hasPrevious = true;
+    }
+
+    // Tramas desde la siguiente a reproducir hasta la mas alta recibida
+    private int depth() {
+        return buffered == 0 ? 0 : highestSequence - nextSequence + 1;
+    }
+
+    private void discard(int sequence) {
+        int slot = Math.floorMod(sequence, CAPACITY);
+        if (present[slot] && sequences[slot] == sequence) {
+            present[slot] = false;
+            buffered--;
+        }
+    }
+
+    private void reset(int sequence) {
+        for (int i = 0; i < CAPACITY; i++) {
+            present[i] = false;
+        }
+        buffered = 0;
+        started = true;
+        playing = false;
+        nextSequence = sequence;
+        highestSequence = sequence;
+        concealed = 0;
+        concealGain = 1f;
+        noiseLevel = -1;
+    }
+
+    // PCM de 16 bits big endian, como AudioCapture
+    private static void scale(byte[] source, byte[] target, int length, float gain) {
+        for (int i = 0; i + 1 < length; i += 2) {
+            int sample = (short) ((source[i] << 8) | (source[i + 1] & 0xFF));
+            int scaled = Math.round(sample * gain);
+            target[i] = (byte) (scaled >> 8);
+            target[i + 1] = (byte) scaled;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package chat.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+// Ritmo de envio de una llamada. Parte la captura en tramas de duracion fija y
+// entrega cada una en cuanto el microfono la completa, sin esperas, asi que el
+// envio sigue al reloj de la tarjeta de sonido. La marca de tiempo de cada
+// trama sale de ese mismo reloj (muestras capturadas desde la primera trama) y
+// no de System.currentTimeMillis(): avanza exactamente una trama cada vez. Si
+// el hilo se retrasa y se acumulan en el microfono mas de MAX_BACKLOG_FRAMES,
+// se descartan las mas antiguas para no arrastrar ese retardo; el reloj sigue
+// contando sus muestras.
+public class MediaScheduler {
+    private static final int MAX_BACKLOG_FRAMES = 2;
+
+    private final AudioCapture capture;
+    private final int frameMillis;
+    private final int frameBytes;
+    private final int frameSamples;
+    private final float sampleRate;
+
+    // Instante (reloj del sistema) de la primera muestra de la primera trama
+    private long startMillis = -1;
+    private long capturedSamples;
+    private long timestamp;
+    private long droppedFrames;
+
+    public MediaScheduler(AudioCapture capture, int frameMillis) {
+        AudioFormat format = capture.getFormat();
+        this.capture = capture;
+        this.frameMillis = frameMillis;
+        this.sampleRate = format.getSampleRate();
+        this.frameSamples = Math.round(sampleRate * frameMillis / 1000f);
+        this.frameBytes = frameSamples * format.getFrameSize();
+    }
+
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    // Buffer con el que abrir el microfono: el retraso maximo tolerado y algo de margen
+    public int getLineBufferBytes() {
+        return (MAX_BACKLOG_FRAMES + 2) * frameBytes;
+    }
+
+    // Espera a la siguiente trama completa y la deja en buffer a partir de
+    // offset. Devuelve getFrameBytes(), o 0 si la captura se detuvo antes.
+    public int nextFrame(byte[] buffer, int offset) {
+        while (capture.available() > (MAX_BACKLOG_FRAMES + 1) * frameBytes) {
+            if (capture.captureFrame(buffer, offset, frameBytes) < frameBytes) {
+                return 0;
+            }
+            capturedSamples += frameSamples;
+            droppedFrames++;
+        }
+        if (capture.captureFrame(buffer, offset, frameBytes) < frameBytes) {
+            return 0;
+        }
+        if (startMillis < 0) {
+            startMillis = System.currentTimeMillis() - frameMillis;
+        }
+        timestamp = startMillis + Math.round(capturedSamples * 1000.0 / sampleRate);
+        capturedSamples += frameSamples;
+        return frameBytes;
+    }
+
+    // Marca de tiempo en milisegundos de la ultima trama entregada
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
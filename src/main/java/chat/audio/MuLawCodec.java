@@ -0,0 +1,70 @@
+package chat.audio;
+
+// G.711 mu-law a 11,025 kHz: un byte por muestra y un cuarto de las muestras,
+// 88 kbps frente a 705 de PCM (8x). Paquete: [muestras PCM:2][mu-law...]
+public class MuLawCodec implements AudioCodec {
+    public static final int ID = 1;
+    private static final int FACTOR = 4;
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 32635;
+    private static final short[] DECODE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int value = ~i & 0xFF;
+            int exponent = (value >> 4) & 0x07;
+            int mantissa = value & 0x0F;
+            int sample = (((mantissa << 3) + BIAS) << exponent) - BIAS;
+            DECODE[i] = (short) ((value & 0x80) != 0 ? -sample : sample);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "ULAW";
+    }
+
+    @Override
+    public int encode(byte[] pcm, int offset, int length, byte[] out, int outOffset) {
+        int samples = length / 2;
+        int coded = Resampling.reducedCount(samples, FACTOR);
+        out[outOffset] = (byte) (samples >> 8);
+        out[outOffset + 1] = (byte) samples;
+        for (int i = 0; i < coded; i++) {
+            out[outOffset + 2 + i] = toMuLaw(Resampling.reducedSample(pcm, offset, samples, FACTOR, i));
+        }
+        return 2 + coded;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        if (length < 2) {
+            return -1;
+        }
+        int samples = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+        int coded = Resampling.reducedCount(samples, FACTOR);
+        if (length - 2 < coded || 2 * samples > pcm.length - pcmOffset) {
+            return -1;
+        }
+        for (int i = 0; i < coded; i++) {
+            int from = DECODE[data[offset + 2 + i] & 0xFF];
+            int to = i + 1 < coded ? DECODE[data[offset + 3 + i] & 0xFF] : from;
+            Resampling.expand(pcm, pcmOffset, samples, FACTOR, i, from, to, i + 1 == coded);
+        }
+        return 2 * samples;
+    }
+
+    private static byte toMuLaw(int sample) {
+        int sign = sample < 0 ? 0x80 : 0;
+        int magnitude = Math.min(CLIP, Math.abs(sample)) + BIAS;
+        // magnitude >> 7 esta entre 1 y 255: el exponente es su bit mas alto
+        int exponent = 31 - Integer.numberOfLeadingZeros(magnitude >> 7);
+        int mantissa = (magnitude >> (exponent + 3)) & 0x0F;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+}
@@ -0,0 +1,32 @@
+package chat.audio;
+
+// Sin compresion: el audio viaja tal como sale de AudioCapture. Es el formato
+// de siempre y el que se usa si la otra parte no negocia codec.
+public class PcmCodec implements AudioCodec {
+    public static final int ID = 0;
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "PCM";
+    }
+
+    @Override
+    public int encode(byte[] pcm, int offset, int length, byte[] out, int outOffset) {
+        System.arraycopy(pcm, offset, out, outOffset, length);
+        return length;
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, byte[] pcm, int pcmOffset) {
+        if (length > pcm.length - pcmOffset) {
+            return -1;
+        }
+        System.arraycopy(data, offset, pcm, pcmOffset, length);
+        return length;
+    }
+}
@@ -0,0 +1,53 @@
+package chat.audio;
+
+import chat.model.AudioPacket;
+
+import java.nio.ByteBuffer;
+
+// Informe periodico de calidad entre las dos partes de una llamada, al estilo
+// de los informes RTCP (RFC 3550, 6.4): cada uno lleva la hora de envio y el
+// eco del ultimo informe recibido del otro con el tiempo que se retuvo, de
+// modo que quien recibe el eco calcula el RTT con su propio reloj:
+//   RTT = llegada - eco - retenido
+// Va con el codec AudioPacket.QUALITY_REPORT y no consume numero de
+// secuencia. El servidor de voz lee de paso el RTT que informa cada parte.
+//   [enviado:8][eco:8][retenido ms:4][RTT de quien envia ms:4, -1 sin medir]
+public final class QualityReport {
+    public static final int CODEC_ID = AudioPacket.QUALITY_REPORT;
+    public static final int PAYLOAD_BYTES = 24;
+
+    private QualityReport() {
+    }
+
+    // Escribe en la posicion actual de target con el eco de peer, el flujo del otro
+    public static void encode(ByteBuffer target, long now, StreamStats peer) {
+        long echo = peer != null ? peer.getReportTimestamp() : 0;
+        target.putLong(now);
+        target.putLong(echo);
+        target.putInt(echo != 0 ? (int) (now - peer.getReportArrival()) : 0);
+        target.putInt(peer != null ? (int) Math.round(peer.getRttMillis()) : -1);
+    }
+
+    public static boolean isValid(int length) {
+        return length >= PAYLOAD_BYTES;
+    }
+
+    public static long sentAt(ByteBuffer data, int offset) {
+        return data.getLong(offset);
+    }
+
+    // RTT que mide quien envio el informe, o -1
+    public static int senderRtt(ByteBuffer data, int offset) {
+        return data.getInt(offset + 20);
+    }
+
+    // RTT a partir del eco que trae el informe, o -1 si aun no hay eco
+    public static long measureRtt(ByteBuffer data, int offset, long now) {
+        long echo = data.getLong(offset + 8);
+        if (echo == 0) {
+            return -1;
+        }
+        long rtt = now - echo - data.getInt(offset + 16);
+        return rtt >= 0 ? rtt : -1;
+    }
+}
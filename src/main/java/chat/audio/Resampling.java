@@ -0,0 +1,55 @@
+package chat.audio;
+
+// Cambio de frecuencia de muestreo por un factor entero, para los codecs que
+// trabajan a menos de 44,1 kHz. Al bajar se promedian grupos de `factor`
+// muestras (un paso bajo sencillo); al subir se interpola linealmente entre
+// muestras consecutivas. Trabaja muestra a muestra sobre los arreglos de
+// bytes, sin buffers intermedios.
+final class Resampling {
+    private Resampling() {
+    }
+
+    // PCM de 16 bits big endian
+    static int readSample(byte[] pcm, int offset, int index) {
+        int at = offset + 2 * index;
+        return (short) ((pcm[at] << 8) | (pcm[at + 1] & 0xFF));
+    }
+
+    static void writeSample(byte[] pcm, int offset, int index, int sample) {
+        int at = offset + 2 * index;
+        pcm[at] = (byte) (sample >> 8);
+        pcm[at + 1] = (byte) sample;
+    }
+
+    // Muestras que quedan al reducir `samples` por `factor`; el ultimo grupo puede ir incompleto
+    static int reducedCount(int samples, int factor) {
+        return (samples + factor - 1) / factor;
+    }
+
+    // Muestra `index` de la senal reducida: media de su grupo de muestras originales
+    static int reducedSample(byte[] pcm, int offset, int samples, int factor, int index) {
+        int start = index * factor;
+        int end = Math.min(samples, start + factor);
+        int total = 0;
+        for (int i = start; i < end; i++) {
+            total += readSample(pcm, offset, i);
+        }
+        return total / (end - start);
+    }
+
+    // Escribe las muestras originales entre el centro del grupo `index` y el del
+    // siguiente, pasando de `from` a `to` (la siguiente muestra reducida). El
+    // primer grupo rellena tambien desde el principio y el ultimo (last, con
+    // to == from) hasta el final.
+    static void expand(byte[] pcm, int offset, int samples, int factor, int index, int from, int to,
+                       boolean last) {
+        // Posiciones en medias muestras para centrar grupos de tamano par
+        int center = 2 * index * factor + factor - 1;
+        int start = index == 0 ? 0 : (center + 1) / 2;
+        int end = last ? samples : Math.min(samples, (center + 2 * factor + 1) / 2);
+        for (int i = start; i < end; i++) {
+            int position = Math.max(0, Math.min(2 * factor, 2 * i - center));
+            writeSample(pcm, offset, i, from + (to - from) * position / (2 * factor));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package chat.audio;
+
+import chat.model.CallQuality;
+
+// Contadores de un flujo de audio recibido, como los de un receptor RTP
+// (RFC 3550, A.3 y A.8): recibidos, perdidos segun los numeros de secuencia,
+// desordenados, repetidos y jitter entre llegadas a partir del timestamp del
+// emisor. Anotar un paquete no crea objetos; un hilo anota y cualquier otro
+// puede consultar en vivo. Guarda tambien el RTT del flujo y el ultimo
+// informe de calidad de su emisor, para devolverle el eco (ver QualityReport).
+public class StreamStats {
+    // Secuencias recientes recordadas para reconocer repetidos
+    private static final int WINDOW = 64;
+
+    private boolean started;
+    private int baseSequence;
+    private int highestSequence;
+    // Bit i: llego highestSequence - i
+    private long window;
+    private long received;
+    private long reordered;
+    private long duplicates;
+
+    private boolean hasTransit;
+    private double previousTransit;
+    private double jitterMillis;
+
+    private double rttMillis = -1;
+    private long reportTimestamp;
+    private long reportArrival;
+
+    // timestamp del emisor y llegada en milisegundos
+    public synchronized void onPacket(int sequence, long timestamp, long arrivalMillis) {
+        if (!started) {
+            started = true;
+            baseSequence = sequence;
+            highestSequence = sequence;
+            window = 1;
+        } else {
+            int delta = sequence - highestSequence;
+            if (delta > 0) {
+                window = delta >= WINDOW ? 1 : (window << delta) | 1;
+                highestSequence = sequence;
+            } else {
+                int age = -delta;
+                if (age < WINDOW) {
+                    long bit = 1L << age;
+                    if ((window & bit) != 0) {
+                        duplicates++;
+                        return;
+                    }
+                    window |= bit;
+                }
+                reordered++;
+                if (sequence - baseSequence < 0) {
+                    baseSequence = sequence;
+                }
+            }
+        }
+        received++;
+        updateJitter(timestamp, arrivalMillis);
+    }
+
+    // J += (|D| - J) / 16, con D la variacion del tiempo de transito entre paquetes
+    private void updateJitter(long timestamp, long arrivalMillis) {
+        double transit = arrivalMillis - timestamp;
+        if (hasTransit) {
+            jitterMillis += (Math.abs(transit - previousTransit) - jitterMillis) / 16.0;
+        }
+        previousTransit = transit;
+        hasTransit = true;
+    }
+
+    // Informe de calidad del emisor: se guarda para devolverle el eco
+    public synchronized void onReport(long reportTimestamp, long arrivalMillis) {
+        this.reportTimestamp = reportTimestamp;
+        this.reportArrival = arrivalMillis;
+    }
+
+    // Muestra de RTT medida con un eco; se suaviza como el SRTT de RFC 6298
+    public synchronized void addRttSample(double sampleMillis) {
+        rttMillis = rttMillis < 0 ? sampleMillis : rttMillis + (sampleMillis - rttMillis) / 8;
+    }
+
+    // RTT ya suavizado que midio otro (el que informa)
+    public synchronized void setRttMillis(double rttMillis) {
+        this.rttMillis = rttMillis;
+    }
+
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    // Esperados segun la secuencia mas alta menos recibidos
+    public synchronized long getLost() {
+        return started ? Math.max(0, (long) (highestSequence - baseSequence) + 1 - received) : 0;
+    }
+
+    public synchronized long getReordered() {
+        return reordered;
+    }
+
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    public synchronized double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public synchronized double getRttMillis() {
+        return rttMillis;
+    }
+
+    // Timestamp del emisor en su ultimo informe, 0 si aun no envio ninguno
+    public synchronized long getReportTimestamp() {
+        return reportTimestamp;
+    }
+
+    public synchronized long getReportArrival() {
+        return reportArrival;
+    }
+
+    public synchronized CallQuality toQuality() {
+        return new CallQuality(received, getLost(), reordered, jitterMillis, rttMillis);
+    }
+}
@@ -0,0 +1,65 @@
+package chat.audio;
+
+import javax.sound.sampled.AudioFormat;
+
+// Deteccion de voz por energia para no enviar los silencios de una llamada. Un
+// bloque es voz si su RMS supera en SPEECH_MARGIN al ruido de fondo estimado y
+// ademas un minimo absoluto. La estimacion del ruido baja enseguida con los
+// bloques mas flojos y sube despacio, asi que sigue a un ventilador pero no a
+// la voz, que siempre tiene pausas entre palabras. Tras el ultimo bloque con voz
+// se sigue considerando voz durante hangoverMillis para no cortar finales de
+// palabra ni pausas cortas.
+public class VoiceActivityDetector {
+    // ~ -42 dBov: por debajo nunca es voz, aunque el ruido de fondo sea nulo
+    private static final double MIN_SPEECH_RMS = 250;
+    // ~10 dB sobre el ruido de fondo
+    private static final double SPEECH_MARGIN = 3.0;
+    private static final double MIN_NOISE_RMS = 10;
+    private static final double NOISE_FALL = 0.5;
+    private static final double NOISE_RISE_DB_PER_SECOND = 3.0;
+
+    private final double bytesPerMillis;
+    private final int hangoverMillis;
+    private double noiseRms = MIN_NOISE_RMS;
+    private double hangoverLeft;
+
+    public VoiceActivityDetector(AudioFormat format, int hangoverMillis) {
+        this.bytesPerMillis = format.getFrameSize() * format.getSampleRate() / 1000.0;
+        this.hangoverMillis = hangoverMillis;
+    }
+
+    // PCM de 16 bits big endian, como AudioCapture
+    public boolean isSpeech(byte[] pcm, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return hangoverLeft > 0;
+        }
+        double energy = 0;
+        for (int i = 0; i < samples; i++) {
+            int sample = (short) ((pcm[offset + 2 * i] << 8) | (pcm[offset + 2 * i + 1] & 0xFF));
+            energy += (double) sample * sample;
+        }
+        double rms = Math.sqrt(energy / samples);
+        double millis = length / bytesPerMillis;
+
+        boolean speech = rms >= Math.max(MIN_SPEECH_RMS, noiseRms * SPEECH_MARGIN);
+        if (rms < noiseRms) {
+            noiseRms += NOISE_FALL * (rms - noiseRms);
+        } else {
+            noiseRms = Math.min(rms, noiseRms * Math.pow(10, NOISE_RISE_DB_PER_SECOND * millis / 20000.0));
+        }
+        noiseRms = Math.max(MIN_NOISE_RMS, noiseRms);
+
+        if (speech) {
+            hangoverLeft = hangoverMillis;
+            return true;
+        }
+        hangoverLeft -= millis;
+        return hangoverLeft > 0;
+    }
+
+    // Nivel del ruido de fondo para los paquetes de ruido de confort, en -dBov
+    public int getNoiseLevel() {
+        return ComfortNoise.levelOf(noiseRms);
+    }
+}
@@ -1,39 +1,90 @@
 package chat.client;
 
+import chat.audio.AudioCapture;
+import chat.audio.AudioCodec;
+import chat.audio.AudioCodecs;
+import chat.audio.AudioPlayback;
 import chat.model.*;
-import chat.protocol.Protocol;
+import chat.protocol.BlockCompressor;
+import chat.protocol.BlockDecompressor;
+import chat.protocol.FrameCodec;
+import chat.protocol.Handshake;
 import chat.protocol.Protocol.Command;
 import chat.protocol.Protocol.Packet;
 import com.google.gson.reflect.TypeToken;
 
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
 import java.io.*;
+import java.lang.reflect.Type;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class ChatClient {
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 5000;
+    private static final int READ_BUFFER_SIZE = 8192;
+    // Formato de trama: BINARY (por defecto) o JSON con -Dchat.wire=JSON
+    private static final String WIRE_FORMAT = System.getProperty("chat.wire", "BINARY");
+    // Compresion negociada con el servidor; se desactiva con -Dchat.compression=false
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("chat.compression", "true"));
+    // Codec de audio que se ofrece primero en las llamadas: ADPCM (por defecto), ULAW o PCM
+    private static final String AUDIO_CODEC = System.getProperty("chat.audio.codec", "ADPCM");
+    // Paridad FEC en llamadas 1:1: un paquete de paridad cada tantos de audio (0 = sin FEC)
+    private static final int AUDIO_FEC_FRAMES = Integer.getInteger("chat.audio.fec", 3);
+    // Deteccion de voz en llamadas (-Dchat.vad=false envia tambien los silencios) y
+    // cuanto se sigue enviando tras la ultima voz
+    private static final boolean VOICE_ACTIVITY_DETECTION = Boolean.parseBoolean(System.getProperty("chat.vad", "true"));
+    private static final int VAD_HANGOVER_MILLIS = Integer.getInteger("chat.vad.hangover.ms", 300);
+    // Audio de cada fragmento de una nota de voz enviada por TCP
+    private static final int VOICE_NOTE_CHUNK_MILLIS = 100;
+    private static final int COMPRESSION_LEVEL = 1;
+    private static final int COMPRESSION_MIN_BYTES = 512;
+    private static final int RESPONSE_TIMEOUT_SECONDS = 10;
+    private static final Type MESSAGE_LIST = new TypeToken<List<Message>>(){}.getType();
+    private static final Type USER_LIST = new TypeToken<List<User>>(){}.getType();
+    private static final Type GROUP_LIST = new TypeToken<List<Group>>(){}.getType();
 
     private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private InputStream in;
+    private OutputStream out;
+    private FrameCodec codec;
+    private BlockCompressor compressor;
+    private BlockDecompressor decompressor;
     private Scanner scanner;
     private User currentUser;
     private boolean running = true;
-    private VoiceClient voiceClient;
+    private volatile VoiceClient voiceClient;
+    // Reproduce las notas de voz (TCP y UDP) fuera del hilo que lee la conexion
+    private VoiceNotePlayer voiceNotePlayer;
     private final Object scannerLock = new Object();
     private volatile boolean waitingForInput = false;
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final AtomicInteger nextVoiceNoteId = new AtomicInteger(1);
+    // Notas de voz que llegan por fragmentos, por emisor (32 bits altos) y
+    // nota; solo las toca el hilo que lee la conexion
+    private final Map<Long, VoiceNoteStream> incomingVoiceNotes = new HashMap<>();
+    private final Map<Integer, Consumer<Packet>> pendingRequests = new ConcurrentHashMap<>();
 
     public ChatClient() {
         scanner = new Scanner(System.in);
+        voiceNotePlayer = new VoiceNotePlayer(new AudioPlayback(), () -> {
+            VoiceClient voice = voiceClient;
+            return voice != null && voice.isInCall();
+        });
     }
 
     public void start() {
         try {
             socket = new Socket(SERVER_HOST, SERVER_PORT);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = new BufferedOutputStream(socket.getOutputStream());
+            negotiateWireFormat();
 
             // Iniciar hilo para recibir mensajes
             new Thread(this::receiveMessages).start();
@@ -42,7 +93,8 @@ public class ChatClient {
             authenticate();
 
             if (currentUser != null) {
-                voiceClient = new VoiceClient(currentUser.getId());
+                voiceClient = new VoiceClient(currentUser.getId(), VOICE_ACTIVITY_DETECTION, VAD_HANGOVER_MILLIS,
+                        voiceNotePlayer);
                 showMainMenu();
             }
 
@@ -53,6 +105,20 @@ public class ChatClient {
         }
     }
 
+    private void negotiateWireFormat() throws IOException {
+        Handshake.WireFormat requested = Handshake.WireFormat.valueOf(WIRE_FORMAT.toUpperCase());
+        out.write(Handshake.hello(requested, COMPRESSION ? Handshake.FLAG_DEFLATE : 0));
+        out.flush();
+
+        byte[] reply = new byte[Handshake.LENGTH];
+        new DataInputStream(in).readFully(reply);
+        codec = Handshake.newCodec(Handshake.parse(reply));
+        if ((Handshake.flags(reply) & Handshake.FLAG_DEFLATE) != 0) {
+            compressor = new BlockCompressor(COMPRESSION_LEVEL, COMPRESSION_MIN_BYTES);
+            decompressor = new BlockDecompressor();
+        }
+    }
+
     private void showWelcome() {
         System.out.println("\n========================================");
         System.out.println("       CHAT CLI - Estilo WhatsApp       ");
@@ -99,7 +165,7 @@ public class ChatClient {
         }
 
         Packet packet = new Packet(Command.LOGIN, username);
-        sendPacket(packet);
+        handleAuthentication(awaitResponse(packet));
     }
 
     private void register() {
@@ -110,7 +176,7 @@ public class ChatClient {
         }
 
         Packet packet = new Packet(Command.REGISTER, username);
-        sendPacket(packet);
+        handleAuthentication(awaitResponse(packet));
     }
 
     private void showMainMenu() {
@@ -213,12 +279,14 @@ public class ChatClient {
         Message message = new Message(currentUser.getId(), currentUser.getUsername(), content);
         message.setReceiverId(receiverId);
 
-        Packet packet = new Packet(Command.SEND_MESSAGE, Protocol.toJson(message));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.SEND_MESSAGE, message);
+        request(packet, this::printResult);
     }
 
+    // Acepta varios IDs separados por coma: todas las peticiones salen seguidas
+    // y cada historial se muestra cuando llega su respuesta
     private void viewChatHistory() {
-        System.out.print("\nID del usuario: ");
+        System.out.print("\nID del usuario (varios separados por coma): ");
         String userIdStr;
         synchronized (scannerLock) {
             userIdStr = scanner.nextLine().trim();
@@ -228,16 +296,23 @@ public class ChatClient {
             return;
         }
 
-        int userId;
+        List<Integer> userIds = new ArrayList<>();
         try {
-            userId = Integer.parseInt(userIdStr);
+            for (String part : userIdStr.split(",")) {
+                userIds.add(Integer.parseInt(part.trim()));
+            }
         } catch (NumberFormatException e) {
             System.out.println("Error: ID invalido");
             return;
         }
 
-        Packet packet = new Packet(Command.GET_HISTORY, String.valueOf(userId));
-        sendPacket(packet);
+        for (int userId : userIds) {
+            Packet packet = new Packet(Command.GET_HISTORY, String.valueOf(userId));
+            request(packet, response -> onSuccess(response, r -> {
+                System.out.println("\nChat con usuario " + userId + ":");
+                displayMessages(r.getData(MESSAGE_LIST));
+            }));
+        }
     }
 
     private void createGroup() {
@@ -253,7 +328,8 @@ public class ChatClient {
         }
 
         Packet packet = new Packet(Command.CREATE_GROUP, groupName);
-        sendPacket(packet);
+        request(packet, response -> onSuccess(response,
+                r -> System.out.println("\nGrupo creado: " + r.getData(Group.class))));
     }
 
     private void sendGroupMessage() {
@@ -289,8 +365,8 @@ public class ChatClient {
         Message message = new Message(currentUser.getId(), currentUser.getUsername(), content);
         message.setGroupId(groupId);
 
-        Packet packet = new Packet(Command.SEND_GROUP_MESSAGE, Protocol.toJson(message));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.SEND_GROUP_MESSAGE, message);
+        request(packet, this::printResult);
     }
 
     private void viewGroupMessages() {
@@ -313,7 +389,7 @@ public class ChatClient {
         }
 
         Packet packet = new Packet(Command.GET_GROUP_MESSAGES, String.valueOf(groupId));
-        sendPacket(packet);
+        request(packet, response -> onSuccess(response, r -> displayMessages(r.getData(MESSAGE_LIST))));
     }
 
     private void makeCall() {
@@ -367,9 +443,11 @@ public class ChatClient {
 
         Call call = new Call(currentUser.getId(), currentUser.getUsername(),
                 receiverId, receiverUsername);
+        call.setAudioCodecs(AudioCodecs.offer(AUDIO_CODEC));
+        call.setAudioFecFrames(Math.max(0, AUDIO_FEC_FRAMES));
 
-        Packet packet = new Packet(Command.CALL_REQUEST, Protocol.toJson(call));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.CALL_REQUEST, call);
+        request(packet, this::printResult);
 
         System.out.println("\nLlamando a " + receiverUsername + "... (usando TCP para señalizacion)");
     }
@@ -407,9 +485,10 @@ public class ChatClient {
         Call call = new Call(currentUser.getId(), currentUser.getUsername(),
                 groupId, groupName);
         call.setGroupCall(true);
+        call.setAudioCodecs(AudioCodecs.offer(AUDIO_CODEC));
 
-        Packet packet = new Packet(Command.CALL_REQUEST, Protocol.toJson(call));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.CALL_REQUEST, call);
+        request(packet, this::printResult);
 
         System.out.println("\nLlamando al grupo " + groupName + "... (usando TCP para señalizacion)");
     }
@@ -478,8 +557,8 @@ public class ChatClient {
         message.setReceiverId(receiverId);
         message.setType(Message.MessageType.AUDIO);
 
-        Packet packet = new Packet(Command.SEND_MESSAGE, Protocol.toJson(message));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.SEND_MESSAGE, message);
+        request(packet, this::printResult);
 
         sendVoiceNoteTCP(receiverId, null, duration);
     }
@@ -529,72 +608,108 @@ public class ChatClient {
         message.setGroupId(groupId);
         message.setType(Message.MessageType.AUDIO);
 
-        Packet packet = new Packet(Command.SEND_GROUP_MESSAGE, Protocol.toJson(message));
-        sendPacket(packet);
+        Packet packet = new Packet(Command.SEND_GROUP_MESSAGE, message);
+        request(packet, this::printResult);
 
         sendVoiceNoteTCP(0, groupId, duration);
     }
 
+    // La nota se envia mientras se graba, en fragmentos VOICE_NOTE_CHUNK de
+    // VOICE_NOTE_CHUNK_MILLIS con el audio adjunto en binario: llega casi en
+    // cuanto termina la grabacion, nunca esta entera en memoria y entre un
+    // fragmento y otro pasa el resto del trafico de la conexion. El servidor
+    // reenvia cada fragmento al llegar y confirma al recibir el ultimo.
     private void sendVoiceNoteTCP(int receiverId, Integer groupId, int durationSeconds) {
+        AudioCapture capture = new AudioCapture();
         try {
             System.out.println("\nGrabando audio por " + durationSeconds + " segundos...");
-
-            chat.audio.AudioCapture capture = new chat.audio.AudioCapture();
-            byte[] audioData = capture.recordForDuration(durationSeconds * 1000);
-
-            System.out.println("Audio capturado: " + audioData.length + " bytes");
-            System.out.println("Enviando audio por TCP...");
-
-            VoiceNoteData voiceNote;
-            if (groupId != null) {
-                voiceNote = new VoiceNoteData(currentUser.getId(), groupId, audioData, durationSeconds, true);
-            } else {
-                voiceNote = new VoiceNoteData(currentUser.getId(), receiverId, audioData, durationSeconds);
+            capture.startCapture();
+
+            AudioFormat format = capture.getFormat();
+            int frameBytes = format.getFrameSize();
+            int chunkBytes = (int) (format.getFrameRate() * VOICE_NOTE_CHUNK_MILLIS / 1000) * frameBytes;
+            long totalBytes = (long) (format.getFrameRate() * durationSeconds) * frameBytes;
+            // El fragmento se copia a la trama al enviarlo: el buffer se reutiliza
+            byte[] buffer = new byte[chunkBytes];
+            int noteId = nextVoiceNoteId.getAndIncrement();
+            int sequence = 0;
+            long recorded = 0;
+            boolean last = false;
+
+            while (!last) {
+                int length = capture.captureFrame(buffer, 0, (int) Math.min(chunkBytes, totalBytes - recorded));
+                recorded += length;
+                last = length == 0 || recorded >= totalBytes;
+                VoiceNoteChunk chunk = new VoiceNoteChunk(currentUser.getId(), noteId, sequence++, last,
+                        (int) (recorded * 1000 / (format.getFrameRate() * frameBytes)));
+                Packet packet = new Packet(Command.VOICE_NOTE_CHUNK, chunk);
+                packet.setRoute(groupId != null ? 0 : receiverId, groupId != null ? groupId : 0);
+                packet.setBinary(buffer, 0, length);
+                if (last) {
+                    request(packet, this::printResult);
+                } else if (!sendPacket(packet)) {
+                    return;
+                }
             }
+            System.out.println("Nota de voz enviada por TCP (" + sequence + " fragmentos, " + recorded + " bytes)");
 
-            Packet packet = new Packet(Command.VOICE_NOTE_DATA, Protocol.toJson(voiceNote));
-            sendPacket(packet);
-
-            System.out.println("Nota de voz enviada correctamente por TCP");
-
-        } catch (Exception e) {
-            System.err.println("Error enviando nota de voz: " + e.getMessage());
-            e.printStackTrace();
+        } catch (LineUnavailableException e) {
+            System.err.println("Error accediendo al microfono: " + e.getMessage());
+        } finally {
+            capture.stopCapture();
         }
     }
 
     private void viewUsers() {
         Packet packet = new Packet(Command.GET_USERS);
-        sendPacket(packet);
+        request(packet, response -> onSuccess(response, r -> displayUsers(r.getData(USER_LIST))));
     }
 
     private void logout() {
         Packet packet = new Packet(Command.LOGOUT);
-        sendPacket(packet);
+        request(packet, this::printResult);
         running = false;
         System.out.println("\nSesion cerrada");
     }
 
     private void receiveMessages() {
         try {
-            String line;
-            while (running && (line = in.readLine()) != null) {
-                Packet packet = Protocol.deserialize(line);
-                handleResponse(packet);
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int read;
+            while (running && (read = in.read(buffer)) != -1) {
+                if (decompressor != null) {
+                    decompressor.decode(ByteBuffer.wrap(buffer, 0, read), codec, this::handleResponse);
+                } else {
+                    codec.decode(ByteBuffer.wrap(buffer, 0, read), this::handleResponse);
+                }
             }
         } catch (IOException e) {
             if (running) {
                 System.err.println("\nConexion perdida con el servidor.");
             }
+        } catch (RuntimeException e) {
+            // Trama invalida: el flujo ya no se puede seguir leyendo
+            System.err.println("\nRespuesta invalida del servidor: " + e.getMessage());
         } finally {
             running = false; // Ensure running is false if connection is lost
+            if (decompressor != null) {
+                decompressor.close();
+            }
         }
     }
 
     private void handleResponse(Packet packet) {
+        if (packet.getRequestId() != 0) {
+            Consumer<Packet> handler = pendingRequests.remove(packet.getRequestId());
+            if (handler != null) {
+                handler.accept(packet);
+                return;
+            }
+        }
+
         switch (packet.getCommand()) {
             case SUCCESS:
-                handleSuccess(packet);
+                printResult(packet);
                 break;
             case ERROR:
                 System.out.println("\nError: " + packet.getError());
@@ -605,6 +720,9 @@ public class ChatClient {
             case VOICE_NOTE_DATA:
                 handleIncomingVoiceNote(packet);
                 break;
+            case VOICE_NOTE_CHUNK:
+                handleIncomingVoiceNoteChunk(packet);
+                break;
             case CALL_REQUEST:
                 handleIncomingCall(packet);
                 break;
@@ -623,38 +741,37 @@ public class ChatClient {
         }
     }
 
-    private void handleSuccess(Packet packet) {
-        if (currentUser == null && packet.getData() != null) {
-            // Respuesta de login/register
-            currentUser = Protocol.fromJson(packet.getData(), User.class);
+    private void handleAuthentication(Packet response) {
+        if (response == null) {
+            return;
+        }
+        if (response.getCommand() == Command.SUCCESS) {
+            currentUser = response.getData(User.class);
             System.out.println("\nAutenticacion exitosa");
-        } else if (packet.getData() != null && packet.getData().startsWith("[")) {
-            // Lista de mensajes, usuarios o grupos
-            if (packet.getData().contains("\"username\"")) {
-                List<User> users = Protocol.fromJson(packet.getData(),
-                        new TypeToken<List<User>>(){}.getType());
-                displayUsers(users);
-            } else if (packet.getData().contains("\"memberIds\"")) {
-                List<Group> groups = Protocol.fromJson(packet.getData(),
-                        new TypeToken<List<Group>>(){}.getType());
-                displayGroups(groups);
-            } else {
-                List<Message> messages = Protocol.fromJson(packet.getData(),
-                        new TypeToken<List<Message>>(){}.getType());
-                displayMessages(messages);
-            }
         } else {
-            System.out.println("\n" + packet.getData());
+            System.out.println("\nError: " + response.getError());
+        }
+    }
+
+    private void onSuccess(Packet response, Consumer<Packet> handler) {
+        if (response.getCommand() == Command.SUCCESS) {
+            handler.accept(response);
+        } else {
+            System.out.println("\nError: " + response.getError());
         }
     }
 
+    private void printResult(Packet response) {
+        onSuccess(response, r -> System.out.println("\n" + r.getData()));
+    }
+
     private void handleIncomingMessage(Packet packet) {
-        Message message = Protocol.fromJson(packet.getData(), Message.class);
+        Message message = packet.getData(Message.class);
         System.out.println("\nNuevo mensaje de " + message.getSenderUsername() + ": " + message.getContent());
     }
 
     private void handleIncomingCall(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
+        Call call = packet.getData(Call.class);
         System.out.println("\n\n========================================");
         System.out.println("  LLAMADA ENTRANTE de " + call.getCallerUsername());
         System.out.println("========================================");
@@ -686,12 +803,20 @@ public class ChatClient {
             String response = future.get(30, TimeUnit.SECONDS);
 
             if (response != null && response.trim().equalsIgnoreCase("s")) {
-                Packet acceptPacket = new Packet(Command.CALL_ACCEPT, Protocol.toJson(call));
-                sendPacket(acceptPacket);
+                // Se elige el primer codec de la oferta que tambien tenemos
+                call.setAudioCodec(AudioCodecs.negotiate(call.getAudioCodecs()).getName());
+                call.setAudioFecFrames(Math.max(0, Math.min(call.getAudioFecFrames(), AUDIO_FEC_FRAMES)));
+                Packet acceptPacket = new Packet(Command.CALL_ACCEPT, call);
+                request(acceptPacket, this::printResult);
 
                 System.out.println("\nLlamada aceptada. Conectando audio por UDP...");
                 if (voiceClient != null) {
-                    voiceClient.startCall(call.getCallerId());
+                    if (call.isGroupCall()) {
+                        voiceClient.startGroupCall(call.getReceiverId(), call.getMediaPort(), callCodec(call));
+                    } else {
+                        voiceClient.startCall(call.getCallerId(), call.getMediaPort(), call.getMediaSession(),
+                                callCodec(call), call.getAudioFecFrames());
+                    }
                     System.out.println("Llamada en curso");
                     System.out.println("Presione Enter para finalizar la llamada");
 
@@ -709,30 +834,36 @@ public class ChatClient {
                     System.err.println("Error: VoiceClient no inicializado");
                 }
 
-                Packet endPacket = new Packet(Command.CALL_END, Protocol.toJson(call));
-                sendPacket(endPacket);
+                Packet endPacket = new Packet(Command.CALL_END, call);
+                request(endPacket, this::printResult);
             } else {
-                Packet rejectPacket = new Packet(Command.CALL_REJECT, Protocol.toJson(call));
-                sendPacket(rejectPacket);
+                Packet rejectPacket = new Packet(Command.CALL_REJECT, call);
+                request(rejectPacket, this::printResult);
                 System.out.println("\nLlamada rechazada");
             }
         } catch (TimeoutException e) {
             System.out.println("\nTiempo de espera agotado. Llamada rechazada automaticamente.");
-            Packet rejectPacket = new Packet(Command.CALL_REJECT, Protocol.toJson(call));
-            sendPacket(rejectPacket);
+            Packet rejectPacket = new Packet(Command.CALL_REJECT, call);
+            request(rejectPacket, this::printResult);
             future.cancel(true);
         } catch (Exception e) {
             System.err.println("\nError procesando llamada entrante: " + e.getMessage());
             // Attempt to send a reject packet even if an error occurred
-            Packet rejectPacket = new Packet(Command.CALL_REJECT, Protocol.toJson(call));
-            sendPacket(rejectPacket);
+            Packet rejectPacket = new Packet(Command.CALL_REJECT, call);
+            request(rejectPacket, this::printResult);
         } finally {
             executor.shutdownNow();
         }
     }
 
     private void handleCallAccepted(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
+        Call call = packet.getData(Call.class);
+
+        // En una llamada grupal llega una aceptacion por cada miembro que se une
+        if (call.isGroupCall() && voiceClient != null && voiceClient.isInCall()) {
+            System.out.println("\nOtro miembro se unio a la llamada grupal");
+            return;
+        }
 
         System.out.println("\n========================================");
         System.out.println("  Llamada aceptada");
@@ -740,7 +871,12 @@ public class ChatClient {
         System.out.println("Conectando audio por UDP...");
 
         if (voiceClient != null) {
-            voiceClient.startCall(call.getReceiverId());
+            if (call.isGroupCall()) {
+                voiceClient.startGroupCall(call.getReceiverId(), call.getMediaPort(), callCodec(call));
+            } else {
+                voiceClient.startCall(call.getReceiverId(), call.getMediaPort(), call.getMediaSession(),
+                        callCodec(call), call.getAudioFecFrames());
+            }
             System.out.println("Llamada en curso");
             System.out.println("Presione Enter para finalizar la llamada");
 
@@ -769,8 +905,14 @@ public class ChatClient {
             System.err.println("Error: VoiceClient no inicializado");
         }
 
-        Packet endPacket = new Packet(Command.CALL_END, Protocol.toJson(call));
-        sendPacket(endPacket);
+        Packet endPacket = new Packet(Command.CALL_END, call);
+        request(endPacket, this::printResult);
+    }
+
+    // Codec elegido al aceptar; si la otra parte no negocia (cliente antiguo), PCM
+    private static AudioCodec callCodec(Call call) {
+        AudioCodec codec = AudioCodecs.byName(call.getAudioCodec());
+        return codec != null ? codec : AudioCodecs.PCM;
     }
 
     private void handleCallRejected(Packet packet) {
@@ -818,7 +960,7 @@ public class ChatClient {
             return;
         }
         Packet packet = new Packet(Command.GET_USER_GROUPS, String.valueOf(currentUser.getId()));
-        sendPacket(packet);
+        request(packet, response -> onSuccess(response, r -> displayGroups(r.getData(GROUP_LIST))));
     }
 
     private void addMemberToGroup() {
@@ -859,7 +1001,7 @@ public class ChatClient {
         }
 
         Packet packet = new Packet(Command.ADD_TO_GROUP, groupId + "," + userId);
-        sendPacket(packet);
+        request(packet, this::printResult);
     }
 
     private void displayGroups(List<Group> groups) {
@@ -874,21 +1016,69 @@ public class ChatClient {
         System.out.println("====================================");
     }
 
-    private void sendPacket(Packet packet) {
+    // Envia una peticion con un id nuevo. El manejador se registra antes de
+    // enviar y se ejecuta en el hilo receptor cuando llega la respuesta con ese
+    // id, asi que puede haber varias peticiones pendientes a la vez.
+    private void request(Packet packet, Consumer<Packet> onResponse) {
+        int requestId = nextRequestId.getAndIncrement();
+        packet.setRequestId(requestId);
+        pendingRequests.put(requestId, onResponse);
+        if (!sendPacket(packet)) {
+            pendingRequests.remove(requestId);
+        }
+    }
+
+    // Para las peticiones que el menu necesita antes de seguir (login/registro)
+    private Packet awaitResponse(Packet packet) {
+        CompletableFuture<Packet> response = new CompletableFuture<>();
+        request(packet, response::complete);
+        try {
+            return response.get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            pendingRequests.remove(packet.getRequestId());
+            System.out.println("\nEl servidor no respondio a tiempo");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error esperando respuesta: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private synchronized void closeCompressor() {
+        if (compressor != null) {
+            System.out.println("Compresion enviada: " + compressor.getStats());
+            System.out.println("Compresion recibida: " + decompressor.getStats());
+            compressor.close();
+            compressor = null;
+        }
+    }
+
+    private synchronized boolean sendPacket(Packet packet) {
         if (out != null && !socket.isClosed()) {
-            out.println(Protocol.serialize(packet));
+            try {
+                byte[] frame = codec.encode(packet);
+                out.write(compressor != null ? compressor.compress(frame) : frame);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                System.err.println("Error enviando paquete: " + e.getMessage());
+            }
         } else {
             System.err.println("Error: No se puede enviar paquete. Conexion cerrada o no inicializada.");
         }
+        return false;
     }
 
     private void disconnect() {
         try {
             running = false; // Signal the receiveMessages loop to stop
+            closeCompressor();
             if (voiceClient != null) {
                 voiceClient.close();
                 voiceClient = null; // Help garbage collection
             }
+            voiceNotePlayer.close();
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
@@ -911,23 +1101,43 @@ public class ChatClient {
         }
     }
 
+    // Se llama en el hilo que lee la conexion: solo encola la nota. Los datos
+    // se convierten y decodifican al reproducirla, en el hilo del reproductor
+    // (cada trama recibida es un objeto propio, asi que puede usarse alli).
     private void handleIncomingVoiceNote(Packet packet) {
-        try {
-            VoiceNoteData voiceNote = Protocol.fromJson(packet.getData(), VoiceNoteData.class);
-            byte[] audioData = voiceNote.getAudioBytes();
-
-            System.out.println("\nRecibida nota de voz (" + voiceNote.getDurationSeconds() +
-                    " segundos, " + audioData.length + " bytes)");
-            System.out.println("Reproduciendo audio...");
-
-            chat.audio.AudioPlayback playback = new chat.audio.AudioPlayback();
-            playback.playAudio(audioData);
-
-            System.out.println("Reproduccion completada");
+        voiceNotePlayer.enqueue(() -> {
+            VoiceNoteData voiceNote = packet.getData(VoiceNoteData.class);
+            System.out.println("\nRecibida nota de voz (" + voiceNote.getDurationSeconds() + " segundos)");
+            return voiceNote.openAudioStream();
+        });
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error reproduciendo nota de voz: " + e.getMessage());
-            e.printStackTrace();
+    // Con el primer fragmento la nota entra en la cola del reproductor y
+    // empieza a sonar con el audio que ya haya; los siguientes se le anaden.
+    // Como en las notas enteras, aqui no se espera nunca al audio.
+    private void handleIncomingVoiceNoteChunk(Packet packet) {
+        VoiceNoteChunk chunk = packet.getData(VoiceNoteChunk.class);
+        if (chunk == null) {
+            return;
+        }
+        long key = ((long) chunk.getSenderId() << 32) | (chunk.getNoteId() & 0xFFFFFFFFL);
+        VoiceNoteStream stream = incomingVoiceNotes.get(key);
+        if (stream == null || stream.isFinished()) {
+            if (chunk.getSequence() != 0) {
+                return;
+            }
+            // Notas abandonadas a medias por su emisor
+            incomingVoiceNotes.values().removeIf(VoiceNoteStream::isFinished);
+            stream = new VoiceNoteStream(chunk.getSenderId());
+            if (!voiceNotePlayer.enqueue(stream)) {
+                return;
+            }
+            incomingVoiceNotes.put(key, stream);
+        }
+        stream.append(packet.getBinary());
+        if (chunk.isLast()) {
+            stream.finish();
+            incomingVoiceNotes.remove(key);
         }
     }
 
@@ -1,23 +1,53 @@
 package chat.client;
 
 import chat.audio.AudioCapture;
+import chat.audio.AudioCodec;
+import chat.audio.AudioCodecs;
 import chat.audio.AudioPlayback;
+import chat.audio.ComfortNoise;
+import chat.audio.FecDecoder;
+import chat.audio.FecEncoder;
+import chat.audio.JitterBuffer;
+import chat.audio.MediaScheduler;
+import chat.audio.QualityReport;
+import chat.audio.StreamStats;
+import chat.audio.VoiceActivityDetector;
 import chat.model.AudioPacket;
+import chat.model.AudioPacketView;
+import chat.model.CallQuality;
 
 import javax.sound.sampled.LineUnavailableException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class VoiceClient {
     private static final String SERVER_HOST = "localhost";
     private static final int UDP_PORT = 5001;
     private static final int BUFFER_SIZE = 4096;
+    // Buffer de la linea de salida durante una llamada (~46 ms): el retardo lo
+    // decide el JitterBuffer y no el buffer por defecto de la linea
+    private static final int CALL_LINE_BUFFER_BYTES = 4096;
+    // Duracion de cada trama de audio enviada en una llamada
+    private static final int FRAME_MILLIS = 20;
+    // En silencio se envia un paquete de ruido de confort cada tanto; tambien
+    // mantiene al cliente en la llamada grupal y abierto el NAT
+    private static final long COMFORT_NOISE_INTERVAL_MILLIS = 500;
+    // El servidor olvida los registros sin trafico (server.voice.idle.timeout.ms,
+    // 60 s por defecto): se renuevan con margen para seguir recibiendo notas de voz
+    private static final long REGISTRATION_INTERVAL_MILLIS = 20_000;
+    // Cada cuanto se envia un informe de calidad al otro en una llamada 1:1
+    private static final long QUALITY_REPORT_INTERVAL_MILLIS = 2_000;
 
     private DatagramSocket socket;
     private InetAddress serverAddress;
-    private boolean inCall = false;
+    private volatile boolean inCall = false;
     private Thread sendThread;
+    private Thread playoutThread;
     private Thread listenerThread;
     private boolean running = true;
 
@@ -25,74 +55,161 @@ public class VoiceClient {
     private AudioPlayback audioPlayback;
 
     private int userId;
-    private int otherUserId;
+    // receiverId de los paquetes de audio: la sesion de medios con SESSION_FLAG,
+    // el otro usuario si el servidor no da sesiones o el grupo con GROUP_FLAG
+    private int audioReceiverId;
+    // Puerto del shard del VoiceServer asignado a la llamada en curso
+    private volatile int callPort = UDP_PORT;
+    // Codec negociado para la llamada en curso
+    private volatile AudioCodec callCodec = AudioCodecs.PCM;
+    // Paquetes por grupo de paridad FEC negociados para la llamada; 0 = sin FEC
+    private volatile int callFecFrames;
+    // Usuario al otro lado de la llamada 1:1, para los informes de calidad; 0 en grupo
+    private volatile int callPeerId;
     private int sequenceNumber = 0;
-
-    private ConcurrentLinkedQueue<byte[]> voiceNoteQueue = new ConcurrentLinkedQueue<>();
-    private Thread voiceNotePlayerThread;
-
-    public VoiceClient(int userId) throws SocketException, UnknownHostException {
+    // Sin deteccion de voz se envian todos los bloques capturados
+    private final boolean voiceActivityDetection;
+    private final int vadHangoverMillis;
+
+    // Un JitterBuffer por emisor: en llamadas grupales con FORWARD llegan varios flujos
+    private final Map<Integer, JitterBuffer> callStreams = new ConcurrentHashMap<>();
+    // Y, con FEC, lo necesario para reconstruir sus paquetes perdidos
+    private final Map<Integer, FecDecoder> callRecovery = new ConcurrentHashMap<>();
+    // Y lo que se mide de cada flujo recibido (perdidas, jitter, RTT)
+    private final Map<Integer, StreamStats> callStats = new ConcurrentHashMap<>();
+
+    // Reproduce las notas de voz recibidas enteras, cuando no hay llamada
+    private final VoiceNotePlayer voiceNotePlayer;
+    private final VoiceNoteReceiver voiceNoteReceiver;
+    // Envios de notas de voz en curso por id de nota, para entregarles los ACK
+    private final Map<Integer, VoiceNoteSender> outgoingNotes = new ConcurrentHashMap<>();
+
+    public VoiceClient(int userId, boolean voiceActivityDetection, int vadHangoverMillis,
+                       VoiceNotePlayer voiceNotePlayer) throws SocketException, UnknownHostException {
         this.userId = userId;
+        this.voiceNotePlayer = voiceNotePlayer;
+        this.voiceActivityDetection = voiceActivityDetection;
+        this.vadHangoverMillis = vadHangoverMillis;
         this.socket = new DatagramSocket();
         this.serverAddress = InetAddress.getByName(SERVER_HOST);
         this.audioCapture = new AudioCapture();
         this.audioPlayback = new AudioPlayback();
+        this.voiceNoteReceiver = new VoiceNoteReceiver(socket, serverAddress, UDP_PORT, userId,
+                (senderId, audio) -> {
+                    System.out.println("[VoiceClient] Nota de voz de " + senderId + " recibida (" +
+                            audio.length + " bytes)");
+                    voiceNotePlayer.enqueue(() -> new ByteArrayInputStream(audio));
+                });
 
         registerWithServer();
 
         startBackgroundListener();
-        startVoiceNotePlayer();
     }
 
     private void registerWithServer() {
+        registerWithServer(UDP_PORT, 0);
+    }
+
+    // Cada puerto del servidor de voz tiene su propia tabla de clientes: hay que
+    // registrarse en el de la llamada antes de enviar audio. Dirigido a un grupo,
+    // el registro une al cliente a la llamada grupal aunque aun no hable; a una
+    // sesion de medios, le da a conocer la direccion por la que recibir.
+    private void registerWithServer(int port, int receiverId) {
         try {
-            // Enviar paquete de registro (con datos vacíos)
-            AudioPacket registerPacket = new AudioPacket(userId, 0, 0, new byte[0]);
-            byte[] packetData = registerPacket.toBytes();
-
-            DatagramPacket packet = new DatagramPacket(
-                    packetData,
-                    packetData.length,
-                    serverAddress,
-                    UDP_PORT
-            );
-            socket.send(packet);
-            System.out.println("[VoiceClient] Registrado con servidor UDP");
+            sendRegistration(port, receiverId);
+            System.out.println("[VoiceClient] Registrado con servidor UDP en puerto " + port);
         } catch (IOException e) {
             System.err.println("Error registrando con servidor UDP: " + e.getMessage());
         }
     }
 
+    private void sendRegistration(int port, int receiverId) throws IOException {
+        // Enviar paquete de registro (con datos vacíos)
+        AudioPacket registerPacket = new AudioPacket(userId, receiverId, 0, new byte[0]);
+        byte[] packetData = registerPacket.toBytes();
+
+        DatagramPacket packet = new DatagramPacket(
+                packetData,
+                packetData.length,
+                serverAddress,
+                port
+        );
+        socket.send(packet);
+    }
+
+    // El datagrama se lee siempre en el mismo buffer y se decodifica con el codec
+    // que indica su cabecera. El audio de la llamada pasa al JitterBuffer de su
+    // emisor, que lo reproduce en orden desde otro hilo, y el ruido de confort
+    // le indica que el emisor calla. Los fragmentos y ACK de notas de voz llevan
+    // su propio valor en el byte de codec y van a VoiceNoteReceiver y a los
+    // VoiceNoteSender en curso; el audio de llamada que llega fuera de una
+    // llamada se descarta. Entre datagramas se renueva el registro.
     private void startBackgroundListener() {
         listenerThread = new Thread(() -> {
             byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] pcm = new byte[BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            AudioPacketView view = new AudioPacketView();
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            long lastRegistration = System.currentTimeMillis();
+
+            try {
+                socket.setSoTimeout(100);
+            } catch (SocketException e) {
+                System.err.println("Error configurando socket de audio: " + e.getMessage());
+            }
 
             while (running) {
                 try {
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    socket.setSoTimeout(100);
+                    long now = System.currentTimeMillis();
+                    if (now - lastRegistration >= REGISTRATION_INTERVAL_MILLIS) {
+                        lastRegistration = now;
+                        sendRegistration(UDP_PORT, 0);
+                    }
+                    packet.setLength(buffer.length);
                     socket.receive(packet);
 
-                    byte[] receivedData = new byte[packet.getLength()];
-                    System.arraycopy(packet.getData(), 0, receivedData, 0, packet.getLength());
-
-                    AudioPacket audioPacket = AudioPacket.fromBytes(receivedData);
-
-                    System.out.println("[VoiceClient] Paquete recibido de usuario " + audioPacket.getSenderId() +
-                            ", seq: " + audioPacket.getSequenceNumber() +
-                            ", datos: " + audioPacket.getDataLength() + " bytes");
-
-                    // Si estamos en llamada, reproducir inmediatamente
-                    if (inCall && audioPacket.getAudioData() != null && audioPacket.getAudioData().length > 0) {
-                        if (!audioPlayback.isPlaying()) {
-                            audioPlayback.startPlayback();
+                    wrapped.clear().limit(packet.getLength());
+                    if (!view.wrap(wrapped).isValid() || view.getDataLength() == 0) {
+                        continue;
+                    }
+                    if (view.getCodecId() == AudioPacket.VOICE_NOTE_DATA) {
+                        voiceNoteReceiver.onData(wrapped, view);
+                        continue;
+                    }
+                    if (view.getCodecId() == AudioPacket.VOICE_NOTE_ACK) {
+                        acknowledgeVoiceNote(wrapped, view);
+                        continue;
+                    }
+                    if (!inCall) {
+                        continue;
+                    }
+                    int senderId = view.getSenderId();
+                    if (view.getCodecId() == QualityReport.CODEC_ID) {
+                        onQualityReport(senderId, wrapped, view);
+                        continue;
+                    }
+                    FecDecoder fec = callFecFrames > 0 ? callRecovery(senderId) : null;
+                    if (view.getCodecId() == AudioPacket.FEC_PARITY) {
+                        if (fec == null) {
+                            continue;
                         }
-                        audioPlayback.playChunk(audioPacket.getAudioData());
+                        fec.onParity(view.getSequenceNumber(), buffer, view.getDataOffset(), view.getDataLength());
+                    } else {
+                        callStats(senderId).onPacket(view.getSequenceNumber(), view.getTimestamp(),
+                                System.currentTimeMillis());
+                        deliverCallPacket(senderId, view.getSequenceNumber(), view.getTimestamp(),
+                                view.getCodecId(), buffer, view.getDataOffset(), view.getDataLength(), pcm);
+                        if (fec == null) {
+                            continue;
+                        }
+                        fec.onPacket(view.getSequenceNumber(), view.getCodecId(), view.getTimestamp(),
+                                buffer, view.getDataOffset(), view.getDataLength());
                     }
-                    // Si no estamos en llamada, es una nota de voz - agregar a cola
-                    else if (!inCall && audioPacket.getAudioData() != null && audioPacket.getAudioData().length > 0) {
-                        System.out.println("[VoiceClient] Nota de voz agregada a cola");
-                        voiceNoteQueue.offer(audioPacket.getAudioData());
+                    // Con el que acaba de llegar, a su grupo puede faltarle solo uno
+                    if (fec.recover()) {
+                        deliverCallPacket(senderId, fec.getSequence(), fec.getTimestamp(), fec.getCodecId(),
+                                fec.getData(), 0, fec.getLength(), pcm);
                     }
 
                 } catch (SocketTimeoutException e) {
@@ -101,8 +218,6 @@ public class VoiceClient {
                     if (running) {
                         System.err.println("Error en listener de audio: " + e.getMessage());
                     }
-                } catch (LineUnavailableException e) {
-                    System.err.println("Error iniciando reproduccion: " + e.getMessage());
                 }
             }
         });
@@ -110,98 +225,307 @@ public class VoiceClient {
         listenerThread.start();
     }
 
-    private void startVoiceNotePlayer() {
-        voiceNotePlayerThread = new Thread(() -> {
-            while (running) {
-                try {
-                    if (!voiceNoteQueue.isEmpty() && !inCall) {
-                        System.out.println("\n=== Reproduciendo nota de voz recibida ===");
-
-                        // Iniciar reproducción
-                        audioPlayback.startPlayback();
-
-                        // Reproducir todos los chunks de la nota de voz
-                        int chunksPlayed = 0;
-                        while (!voiceNoteQueue.isEmpty()) {
-                            byte[] chunk = voiceNoteQueue.poll();
-                            if (chunk != null) {
-                                audioPlayback.playChunk(chunk);
-                                chunksPlayed++;
-                            }
-                        }
+    // Audio o ruido de confort de la llamada, recibido o reconstruido con FEC
+    private void deliverCallPacket(int senderId, int sequence, long timestamp, int codecId,
+                                   byte[] data, int offset, int length, byte[] pcm) {
+        if (codecId == ComfortNoise.CODEC_ID) {
+            int samples = ComfortNoise.samples(data, offset, length);
+            if (samples > 0) {
+                callStream(senderId).putComfortNoise(sequence, timestamp, ComfortNoise.level(data, offset),
+                        2 * samples);
+            }
+            return;
+        }
+        AudioCodec codec = AudioCodecs.byId(codecId);
+        int pcmLength = codec == null ? -1 : codec.decode(data, offset, length, pcm, 0);
+        if (pcmLength > 0) {
+            callStream(senderId).put(sequence, timestamp, pcm, 0, pcmLength);
+        }
+    }
 
-                        // Detener reproducción
-                        audioPlayback.stopPlayback();
-                        System.out.println("=== Nota de voz reproducida (" + chunksPlayed + " chunks) ===\n");
-                    }
+    // Se guarda para devolverle el eco y, si trae el de uno nuestro, da una muestra de RTT
+    private void onQualityReport(int senderId, ByteBuffer datagram, AudioPacketView view) {
+        if (!QualityReport.isValid(view.getDataLength())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        StreamStats stats = callStats(senderId);
+        stats.onReport(QualityReport.sentAt(datagram, view.getDataOffset()), now);
+        long rtt = QualityReport.measureRtt(datagram, view.getDataOffset(), now);
+        if (rtt >= 0) {
+            stats.addRttSample(rtt);
+        }
+    }
 
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    break;
-                } catch (LineUnavailableException e) {
-                    System.err.println("Error reproduciendo nota de voz: " + e.getMessage());
-                }
-            }
+    private void acknowledgeVoiceNote(ByteBuffer datagram, AudioPacketView view) {
+        if (view.getDataLength() < VoiceNoteTransfer.ACK_BYTES) {
+            return;
+        }
+        int offset = view.getDataOffset();
+        VoiceNoteSender sender = outgoingNotes.get(datagram.getInt(offset));
+        if (sender != null) {
+            sender.onAck(datagram.getInt(offset + 4), datagram.getLong(offset + 8));
+        }
+    }
+
+    private JitterBuffer callStream(int senderId) {
+        return callStreams.computeIfAbsent(senderId, id -> {
+            JitterBuffer stream = new JitterBuffer(audioPlayback.getFormat());
+            // Retener un grupo de paridad: lo reconstruido llega con la paridad, tras el grupo
+            stream.setMinTargetFrames(callFecFrames);
+            return stream;
         });
-        voiceNotePlayerThread.setDaemon(true);
-        voiceNotePlayerThread.start();
     }
 
-    public void startCall(int otherUserId) {
-        this.otherUserId = otherUserId;
+    private FecDecoder callRecovery(int senderId) {
+        return callRecovery.computeIfAbsent(senderId, id -> new FecDecoder());
+    }
+
+    private StreamStats callStats(int senderId) {
+        return callStats.computeIfAbsent(senderId, id -> new StreamStats());
+    }
+
+    // Calidad de lo recibido en la llamada en curso (o la ultima), en vivo
+    public CallQuality getCallQuality() {
+        CallQuality quality = new CallQuality();
+        for (StreamStats stats : callStats.values()) {
+            quality.add(stats.toQuality());
+        }
+        return quality;
+    }
+
+    // Con mediaSession el audio va por la sesion que el servidor de chat abrio
+    // al aceptar la llamada; con 0 (servidor de voz aparte) va al otro usuario.
+    // Con fecFrames > 0 se envia una paridad cada fecFrames paquetes.
+    public void startCall(int otherUserId, int mediaPort, int mediaSession, AudioCodec codec, int fecFrames) {
+        this.callPeerId = otherUserId;
+        startCall(mediaSession > 0 ? AudioPacketView.sessionReceiver(mediaSession) : otherUserId,
+                mediaPort, codec, fecFrames, false);
+    }
+
+    // El servidor de voz mezcla al resto de miembros en un unico flujo de bajada
+    public void startGroupCall(int groupId, int mediaPort, AudioCodec codec) {
+        this.callPeerId = 0;
+        startCall(AudioPacketView.groupReceiver(groupId), mediaPort, codec, 0, true);
+    }
+
+    private void startCall(int receiverId, int mediaPort, AudioCodec codec, int fecFrames, boolean group) {
+        this.audioReceiverId = receiverId;
+        this.callCodec = codec;
+        this.callFecFrames = Math.max(0, Math.min(FecEncoder.MAX_GROUP_FRAMES, fecFrames));
+        this.callPort = mediaPort > 0 ? mediaPort : UDP_PORT;
+        if (group || (receiverId & AudioPacket.SESSION_FLAG) != 0) {
+            registerWithServer(callPort, receiverId);
+        } else if (callPort != UDP_PORT) {
+            registerWithServer(callPort, 0);
+        }
         this.inCall = true;
         this.sequenceNumber = 0;
 
-        // Limpiar cola de notas de voz
-        voiceNoteQueue.clear();
+        // Las notas de voz pendientes se reproducen al colgar
+        callStreams.clear();
+        callRecovery.clear();
+        callStats.clear();
 
+        MediaScheduler scheduler = new MediaScheduler(audioCapture, FRAME_MILLIS);
         try {
-            audioCapture.startCapture();
-            audioPlayback.startPlayback();
+            audioCapture.startCapture(scheduler.getLineBufferBytes());
+            audioPlayback.startPlayback(CALL_LINE_BUFFER_BYTES);
         } catch (LineUnavailableException e) {
             System.err.println("Error iniciando dispositivos de audio: " + e.getMessage());
             inCall = false;
             return;
         }
 
-        sendThread = new Thread(this::sendAudio);
+        sendThread = new Thread(() -> sendAudio(scheduler));
         sendThread.start();
+        playoutThread = new Thread(this::playCallAudio);
+        playoutThread.setDaemon(true);
+        playoutThread.start();
 
-        System.out.println("=== Llamada iniciada - Hable ahora ===");
+        System.out.println("=== Llamada iniciada (audio " + codec.getName() +
+                (callFecFrames > 0 ? ", FEC 1/" + callFecFrames : "") + ") - Hable ahora ===");
     }
 
-    private void sendAudio() {
+    // Cada trama de FRAME_MILLIS sale en cuanto el MediaScheduler la completa,
+    // con la marca de tiempo del reloj de muestras. Los mismos buffers y
+    // DatagramPacket se reutilizan durante toda la llamada. Con PCM el microfono
+    // escribe directamente detras de la cabecera; con otro codec se captura
+    // aparte y se codifica en su sitio. Las tramas sin voz no se envian: al
+    // empezar el silencio y luego cada COMFORT_NOISE_INTERVAL_MILLIS sale solo
+    // un paquete de ruido de confort con el nivel del ruido de fondo. Con FEC,
+    // tras cada grupo de paquetes, o al callar si el grupo quedo a medias, sale
+    // su paridad. En llamadas 1:1 sale ademas un informe de calidad cada
+    // QUALITY_REPORT_INTERVAL_MILLIS, hable o no.
+    private void sendAudio(MediaScheduler scheduler) {
+        AudioCodec codec = callCodec;
+        FecEncoder fec = callFecFrames > 0 ? new FecEncoder(callFecFrames) : null;
+        byte[] parityBuffer = fec != null ? new byte[BUFFER_SIZE] : null;
+        DatagramPacket parityPacket = fec != null
+                ? new DatagramPacket(parityBuffer, parityBuffer.length, serverAddress, callPort) : null;
+        VoiceActivityDetector detector = voiceActivityDetection
+                ? new VoiceActivityDetector(audioCapture.getFormat(), vadHangoverMillis) : null;
+        boolean silent = false;
+        long lastComfortNoise = 0;
+        long capturedFrames = 0;
+        long silentFrames = 0;
+        boolean raw = codec.getId() == AudioCodecs.PCM.getId();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] pcm = raw ? buffer : new byte[BUFFER_SIZE];
+        int pcmOffset = raw ? AudioPacket.HEADER_BYTES : 0;
+        ByteBuffer header = ByteBuffer.wrap(buffer);
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length, serverAddress, callPort);
+        int peerId = callPeerId;
+        byte[] reportBuffer = new byte[AudioPacket.HEADER_BYTES + QualityReport.PAYLOAD_BYTES];
+        ByteBuffer report = ByteBuffer.wrap(reportBuffer);
+        DatagramPacket reportPacket = new DatagramPacket(reportBuffer, reportBuffer.length, serverAddress, callPort);
+        long lastReport = System.currentTimeMillis();
+
         while (inCall) {
-            try {
-                byte[] audioData = audioCapture.captureChunk();
-
-                if (audioData.length > 0) {
-                    AudioPacket audioPacket = new AudioPacket(userId, otherUserId, sequenceNumber++, audioData);
-                    byte[] packetData = audioPacket.toBytes();
-
-                    DatagramPacket packet = new DatagramPacket(
-                            packetData,
-                            packetData.length,
-                            serverAddress,
-                            UDP_PORT
-                    );
-                    socket.send(packet);
-
-                    if (sequenceNumber % 50 == 0) {
-                        System.out.println("[VoiceClient] Enviados " + sequenceNumber + " paquetes de audio");
-                    }
+            // Bloquea hasta completar la trama; 0 si la captura se detuvo
+            int length = scheduler.nextFrame(pcm, pcmOffset);
+            if (length == 0) {
+                break;
+            }
+            capturedFrames++;
+            long timestamp = scheduler.getTimestamp();
+            if (peerId != 0 && System.currentTimeMillis() - lastReport >= QUALITY_REPORT_INTERVAL_MILLIS) {
+                lastReport = System.currentTimeMillis();
+                sendQualityReport(report, reportPacket, peerId, timestamp, lastReport);
+            }
+            int codecId = codec.getId();
+            if (detector == null || detector.isSpeech(pcm, pcmOffset, length)) {
+                silent = false;
+                if (!raw) {
+                    length = codec.encode(pcm, 0, length, buffer, AudioPacket.HEADER_BYTES);
+                }
+            } else {
+                silentFrames++;
+                if (!silent || timestamp - lastComfortNoise >= COMFORT_NOISE_INTERVAL_MILLIS) {
+                    lastComfortNoise = timestamp;
+                    codecId = ComfortNoise.CODEC_ID;
+                    length = ComfortNoise.encode(length / 2, detector.getNoiseLevel(),
+                            buffer, AudioPacket.HEADER_BYTES);
+                } else {
+                    length = 0;
                 }
+                silent = true;
+            }
+            if (length == 0) {
+                if (fec != null && !fec.isEmpty()) {
+                    sendParity(fec, parityBuffer, parityPacket, timestamp);
+                }
+                continue;
+            }
+
+            try {
+                int sequence = sequenceNumber++;
+                header.clear();
+                AudioPacketView.encodeHeader(header, userId, audioReceiverId, sequence,
+                        timestamp, codecId, length);
+                packet.setLength(AudioPacket.HEADER_BYTES + length);
+                socket.send(packet);
 
-                Thread.sleep(20);
+                if (fec != null && fec.add(sequence, codecId, timestamp, buffer, AudioPacket.HEADER_BYTES, length)
+                        && fec.isComplete()) {
+                    sendParity(fec, parityBuffer, parityPacket, timestamp);
+                }
 
+                if (sequenceNumber % 50 == 0) {
+                    System.out.println("[VoiceClient] Enviados " + sequenceNumber + " paquetes de audio");
+                }
             } catch (IOException e) {
                 if (inCall) {
                     System.err.println("Error enviando audio: " + e.getMessage());
                 }
-            } catch (InterruptedException e) {
-                break;
             }
         }
+
+        if (scheduler.getDroppedFrames() > 0) {
+            System.out.println("[VoiceClient] Tramas descartadas por retraso en el envio: " +
+                    scheduler.getDroppedFrames());
+        }
+        if (detector != null && capturedFrames > 0) {
+            System.out.println("[VoiceClient] Deteccion de voz: " + silentFrames + " de " + capturedFrames +
+                    " tramas eran silencio (" + (100 * silentFrames / capturedFrames) + "%)");
+        }
+    }
+
+    // La paridad lleva la secuencia del primer paquete de su grupo
+    private void sendParity(FecEncoder fec, byte[] parityBuffer, DatagramPacket parityPacket, long timestamp) {
+        int baseSequence = fec.getBaseSequence();
+        int length = fec.writeParity(parityBuffer, AudioPacket.HEADER_BYTES);
+        try {
+            AudioPacketView.encodeHeader(ByteBuffer.wrap(parityBuffer), userId, audioReceiverId, baseSequence,
+                    timestamp, AudioPacket.FEC_PARITY, length);
+            parityPacket.setLength(AudioPacket.HEADER_BYTES + length);
+            socket.send(parityPacket);
+        } catch (IOException e) {
+            if (inCall) {
+                System.err.println("Error enviando paridad FEC: " + e.getMessage());
+            }
+        }
+    }
+
+    // Lleva la secuencia del siguiente paquete de audio sin gastarla
+    private void sendQualityReport(ByteBuffer report, DatagramPacket reportPacket, int peerId,
+                                   long timestamp, long now) {
+        try {
+            report.clear();
+            AudioPacketView.encodeHeader(report, userId, audioReceiverId, sequenceNumber,
+                    timestamp, QualityReport.CODEC_ID, QualityReport.PAYLOAD_BYTES);
+            QualityReport.encode(report, now, callStats.get(peerId));
+            socket.send(reportPacket);
+        } catch (IOException e) {
+            if (inCall) {
+                System.err.println("Error enviando informe de calidad: " + e.getMessage());
+            }
+        }
+    }
+
+    // Saca una trama de cada JitterBuffer, las suma si hay varios emisores y la
+    // escribe en la linea; la escritura bloquea al ritmo de reproduccion
+    private void playCallAudio() {
+        byte[] mixed = new byte[BUFFER_SIZE];
+
+        while (inCall) {
+            int length = 0;
+            for (JitterBuffer stream : callStreams.values()) {
+                byte[] frame = stream.next();
+                if (frame != null) {
+                    length = mixInto(mixed, length, frame, stream.getOutputLength());
+                }
+            }
+
+            if (length == 0) {
+                // Llenando los buffers: esperar un poco sin ocupar la CPU
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                continue;
+            }
+            audioPlayback.playChunk(mixed, 0, length);
+        }
+    }
+
+    // Suma PCM de 16 bits big endian con saturacion; devuelve la nueva longitud
+    private static int mixInto(byte[] mixed, int mixedLength, byte[] frame, int frameLength) {
+        if (mixedLength == 0) {
+            System.arraycopy(frame, 0, mixed, 0, frameLength);
+            return frameLength;
+        }
+        for (int i = 0; i + 1 < frameLength; i += 2) {
+            int sample = (short) ((frame[i] << 8) | (frame[i + 1] & 0xFF));
+            if (i + 1 < mixedLength) {
+                sample += (short) ((mixed[i] << 8) | (mixed[i + 1] & 0xFF));
+            }
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            mixed[i] = (byte) (sample >> 8);
+            mixed[i + 1] = (byte) sample;
+        }
+        return Math.max(mixedLength, frameLength);
     }
 
     public void sendVoiceNote(int receiverId, int durationSeconds) {
@@ -212,32 +536,31 @@ public class VoiceClient {
             byte[] recordedAudio = audioCapture.recordForDuration(durationSeconds * 1000);
 
             System.out.println("Enviando nota de voz (" + recordedAudio.length + " bytes)...");
+            if (recordedAudio.length == 0
+                    || VoiceNoteTransfer.chunkCount(recordedAudio.length) > VoiceNoteTransfer.MAX_CHUNKS) {
+                System.err.println("Nota de voz vacia o demasiado larga");
+                return;
+            }
 
-            int chunkSize = 1024;
-            int offset = 0;
-            int seq = 0;
-
-            while (offset < recordedAudio.length) {
-                int length = Math.min(chunkSize, recordedAudio.length - offset);
-                byte[] chunk = new byte[length];
-                System.arraycopy(recordedAudio, offset, chunk, 0, length);
-
-                AudioPacket audioPacket = new AudioPacket(userId, receiverId, seq++, chunk);
-                byte[] packetData = audioPacket.toBytes();
-
-                DatagramPacket packet = new DatagramPacket(
-                        packetData,
-                        packetData.length,
-                        serverAddress,
-                        UDP_PORT
-                );
-                socket.send(packet);
-
-                offset += length;
-                Thread.sleep(20);
+            // Ventana deslizante con confirmaciones del receptor: ver VoiceNoteSender
+            VoiceNoteSender sender = new VoiceNoteSender(socket, serverAddress, UDP_PORT, userId, receiverId,
+                    ThreadLocalRandom.current().nextInt(), recordedAudio);
+            outgoingNotes.put(sender.getNoteId(), sender);
+            long start = System.currentTimeMillis();
+            boolean delivered;
+            try {
+                delivered = sender.send();
+            } finally {
+                outgoingNotes.remove(sender.getNoteId());
             }
 
-            System.out.println("=== Nota de voz enviada exitosamente (" + seq + " paquetes) ===");
+            if (delivered) {
+                System.out.println("=== Nota de voz enviada exitosamente (" + sender.getChunks() + " fragmentos, " +
+                        sender.getRetransmissions() + " reenviados, " + (System.currentTimeMillis() - start) +
+                        " ms) ===");
+            } else {
+                System.err.println("El destinatario no confirmo la nota de voz");
+            }
 
         } catch (LineUnavailableException e) {
             System.err.println("Error accediendo al microfono: " + e.getMessage());
@@ -251,13 +574,29 @@ public class VoiceClient {
     public void endCall() {
         inCall = false;
 
-        audioCapture.stopCapture();
-        audioPlayback.stopPlayback();
-
         if (sendThread != null) {
             sendThread.interrupt();
         }
+        if (playoutThread != null) {
+            playoutThread.interrupt();
+        }
 
+        audioCapture.stopCapture();
+        audioPlayback.stopPlayback();
+
+        if (!callRecovery.isEmpty()) {
+            long recovered = 0;
+            long lost = 0;
+            for (FecDecoder fec : callRecovery.values()) {
+                recovered += fec.getRecoveredFrames();
+                lost += fec.getLostFrames();
+            }
+            System.out.println("[VoiceClient] FEC: " + recovered + " paquetes recuperados, " + lost +
+                    " perdidos sin recuperar");
+        }
+        if (!callStats.isEmpty()) {
+            System.out.println("[VoiceClient] Calidad recibida: " + getCallQuality());
+        }
         System.out.println("=== Llamada finalizada ===");
     }
 
@@ -268,9 +607,6 @@ public class VoiceClient {
         if (listenerThread != null) {
             listenerThread.interrupt();
         }
-        if (voiceNotePlayerThread != null) {
-            voiceNotePlayerThread.interrupt();
-        }
 
         if (socket != null && !socket.isClosed()) {
             socket.close();
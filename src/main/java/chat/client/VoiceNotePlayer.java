@@ -0,0 +1,106 @@
+package chat.client;
+
+import chat.audio.AudioPlayback;
+
+import javax.sound.sampled.LineUnavailableException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+
+// Reproduce las notas de voz en un hilo propio, una tras otra. Quien las
+// recibe (el hilo lector de la conexion TCP o el listener UDP de VoiceClient)
+// solo las encola y sigue: nunca espera a la tarjeta de sonido. El audio de
+// cada nota se abre y se decodifica ya en este hilo, por bloques de
+// CHUNK_BYTES, y cada bloque se escribe en la linea en cuanto esta listo, asi
+// que la nota empieza a sonar con el primero. Mientras haya una llamada en
+// curso (paused) las notas esperan en la cola; si la cola se llena, las nuevas
+// se descartan.
+final class VoiceNotePlayer {
+    private static final int QUEUE_CAPACITY = 16;
+    // ~46 ms de audio a 44,1 kHz, 16 bits, mono
+    private static final int CHUNK_BYTES = 4096;
+    private static final long PAUSE_CHECK_MILLIS = 100;
+
+    // Audio PCM de una nota; open() se llama en el hilo de reproduccion
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final AudioPlayback playback;
+    private final BooleanSupplier paused;
+    private final BlockingQueue<Source> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    VoiceNotePlayer(AudioPlayback playback, BooleanSupplier paused) {
+        this.playback = playback;
+        this.paused = paused;
+        this.thread = new Thread(this::run, "voice-note-player");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // No bloquea; false si hay demasiadas notas pendientes
+    boolean enqueue(Source note) {
+        if (!queue.offer(note)) {
+            System.err.println("Demasiadas notas de voz pendientes, se descarta una");
+            return false;
+        }
+        return true;
+    }
+
+    void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    // La linea se abre para la primera nota y sigue abierta mientras haya mas
+    private void run() {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        while (running) {
+            try {
+                Source note = queue.take();
+                while (paused.getAsBoolean()) {
+                    Thread.sleep(PAUSE_CHECK_MILLIS);
+                }
+                System.out.println("\n=== Reproduciendo nota de voz recibida ===");
+                playback.startPlayback();
+                int notesPlayed = 0;
+                try {
+                    while (note != null && running) {
+                        play(note, chunk);
+                        notesPlayed++;
+                        note = paused.getAsBoolean() ? null : queue.poll();
+                    }
+                } finally {
+                    playback.stopPlayback();
+                }
+                System.out.println("=== Notas de voz reproducidas (" + notesPlayed + ") ===\n");
+            } catch (InterruptedException e) {
+                break;
+            } catch (LineUnavailableException e) {
+                System.err.println("Error reproduciendo nota de voz: " + e.getMessage());
+            }
+        }
+    }
+
+    // Solo se escriben tramas completas; el resto pasa al siguiente bloque
+    private void play(Source note, byte[] chunk) {
+        int frameBytes = playback.getFormat().getFrameSize();
+        try (InputStream audio = note.open()) {
+            int filled = 0;
+            int read;
+            while (running && (read = audio.read(chunk, filled, chunk.length - filled)) != -1) {
+                filled += read;
+                int whole = filled - filled % frameBytes;
+                playback.playChunk(chunk, 0, whole);
+                System.arraycopy(chunk, whole, chunk, 0, filled - whole);
+                filled -= whole;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reproduciendo nota de voz: " + e.getMessage());
+        }
+    }
+}
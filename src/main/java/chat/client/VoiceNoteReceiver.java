@@ -0,0 +1,183 @@
+package chat.client;
+
+import chat.model.AudioPacketView;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Reensambla las notas de voz que llegan con VoiceNoteTransfer. Cada fragmento
+// se copia en su sitio de la nota, cada datagrama se confirma con el estado
+// completo (recibidos seguidos y mapa de los siguientes) y, cuando estan todos,
+// la nota se entrega entera y en orden una sola vez. Las notas terminadas se
+// recuerdan un tiempo para volver a confirmarlas si el emisor no recibio el
+// ultimo ACK. La cabecera de un datagrama no se cree para reservar memoria:
+// el buffer de la nota crece con la ventana del emisor y hay un maximo de
+// notas a medias por emisor y en total (se descarta la mas antigua). Solo lo
+// usa el hilo listener de VoiceClient.
+final class VoiceNoteReceiver {
+    // Una nota a medias sin fragmentos nuevos en este tiempo se abandona
+    private static final long STALE_MILLIS = 30_000;
+    private static final int COMPLETED_MEMORY = 64;
+    private static final int MAX_IN_PROGRESS = 16;
+    private static final int MAX_IN_PROGRESS_PER_SENDER = 4;
+
+    interface Listener {
+        void onVoiceNote(int senderId, byte[] audio);
+    }
+
+    private static final class Reassembly {
+        final int chunks;
+        byte[] audio;
+        final BitSet received = new BitSet();
+        int cumulative;
+        int length;
+        long lastActivity;
+
+        Reassembly(int chunks) {
+            this.chunks = chunks;
+            this.audio = new byte[Math.min(chunks, VoiceNoteTransfer.WINDOW_CHUNKS) * VoiceNoteTransfer.CHUNK_BYTES];
+        }
+
+        // Duplica el buffer hasta que quepa el fragmento, sin pasar del total
+        void ensureCapacity(int index) {
+            int needed = (index + 1) * VoiceNoteTransfer.CHUNK_BYTES;
+            if (needed > audio.length) {
+                int max = chunks * VoiceNoteTransfer.CHUNK_BYTES;
+                audio = Arrays.copyOf(audio, Math.min(max, Math.max(needed, audio.length * 2)));
+            }
+        }
+    }
+
+    private final DatagramSocket socket;
+    private final InetAddress server;
+    private final int port;
+    private final int userId;
+    private final Listener listener;
+    // Clave: emisor en los 32 bits altos e id de nota en los bajos
+    // por orden de llegada de su primer fragmento
+    private final Map<Long, Reassembly> inProgress = new LinkedHashMap<>();
+    // Notas ya entregadas y cuantos fragmentos tenian
+    private final Map<Long, Integer> completed = new LinkedHashMap<Long, Integer>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > COMPLETED_MEMORY;
+        }
+    };
+
+    VoiceNoteReceiver(DatagramSocket socket, InetAddress server, int port, int userId, Listener listener) {
+        this.socket = socket;
+        this.server = server;
+        this.port = port;
+        this.userId = userId;
+        this.listener = listener;
+    }
+
+    // datagram es el paquete VOICE_NOTE_DATA entero que describe view
+    void onData(ByteBuffer datagram, AudioPacketView view) throws IOException {
+        int senderId = view.getSenderId();
+        int index = view.getSequenceNumber();
+        int offset = view.getDataOffset();
+        int length = view.getDataLength() - VoiceNoteTransfer.DATA_HEADER_BYTES;
+        if (length <= 0) {
+            return;
+        }
+        int noteId = datagram.getInt(offset);
+        int chunks = datagram.getInt(offset + 4);
+        if (chunks <= 0 || chunks > VoiceNoteTransfer.MAX_CHUNKS || index < 0 || index >= chunks
+                || length > VoiceNoteTransfer.CHUNK_BYTES
+                || (index < chunks - 1 && length != VoiceNoteTransfer.CHUNK_BYTES)) {
+            return;
+        }
+
+        long key = ((long) senderId << 32) | (noteId & 0xFFFFFFFFL);
+        Integer done = completed.get(key);
+        if (done != null) {
+            VoiceNoteTransfer.sendAck(socket, server, port, userId, senderId, noteId, done, 0);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        expireStale(now);
+        Reassembly note = inProgress.get(key);
+        if (note == null) {
+            if (index >= VoiceNoteTransfer.WINDOW_CHUNKS) {
+                return;
+            }
+            makeRoom(senderId);
+            note = new Reassembly(chunks);
+            inProgress.put(key, note);
+        } else if (note.chunks != chunks || index >= note.cumulative + VoiceNoteTransfer.WINDOW_CHUNKS) {
+            // El emisor nunca pasa de una ventana por delante de lo confirmado
+            return;
+        }
+        note.lastActivity = now;
+        if (!note.received.get(index)) {
+            note.ensureCapacity(index);
+            datagram.get(offset + VoiceNoteTransfer.DATA_HEADER_BYTES, note.audio,
+                    index * VoiceNoteTransfer.CHUNK_BYTES, length);
+            note.received.set(index);
+            if (index == chunks - 1) {
+                note.length = index * VoiceNoteTransfer.CHUNK_BYTES + length;
+            }
+            while (note.received.get(note.cumulative)) {
+                note.cumulative++;
+            }
+        }
+
+        long map = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (note.received.get(note.cumulative + 1 + bit)) {
+                map |= 1L << bit;
+            }
+        }
+        VoiceNoteTransfer.sendAck(socket, server, port, userId, senderId, noteId, note.cumulative, map);
+
+        if (note.cumulative == chunks) {
+            inProgress.remove(key);
+            completed.put(key, chunks);
+            listener.onVoiceNote(senderId, Arrays.copyOf(note.audio, note.length));
+        }
+    }
+
+    // Antes de empezar una nota de senderId: se descarta su nota a medias mas
+    // antigua si ya tiene demasiadas y, si no cabe ninguna mas, la mas antigua
+    private void makeRoom(int senderId) {
+        int fromSender = 0;
+        Long oldestFromSender = null;
+        for (Long key : inProgress.keySet()) {
+            if ((int) (key >>> 32) == senderId) {
+                if (oldestFromSender == null) {
+                    oldestFromSender = key;
+                }
+                fromSender++;
+            }
+        }
+        Long evict = null;
+        if (fromSender >= MAX_IN_PROGRESS_PER_SENDER) {
+            evict = oldestFromSender;
+        } else if (inProgress.size() >= MAX_IN_PROGRESS) {
+            evict = inProgress.keySet().iterator().next();
+        }
+        if (evict != null) {
+            inProgress.remove(evict);
+            System.out.println("[VoiceClient] Demasiadas notas de voz a medias, se descarta la mas antigua");
+        }
+    }
+
+    private void expireStale(long now) {
+        Iterator<Reassembly> it = inProgress.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastActivity > STALE_MILLIS) {
+                it.remove();
+                System.out.println("[VoiceClient] Nota de voz incompleta descartada");
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package chat.client;
+
+import chat.model.AudioPacket;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Envia una nota de voz con ventana deslizante: hasta WINDOW_CHUNKS fragmentos
+// sin confirmar y sin pausas entre ellos, asi que el ritmo lo marcan los ACK.
+// Un fragmento se reenvia si pasa el RTO sin confirmar (el RTO se dobla en cada
+// expiracion, como en RFC 6298) o antes, en cuanto se confirma otro enviado
+// despues de el con mas de srtt/4 de diferencia: un hueco en el mapa del ACK
+// es un NACK y no hace falta esperar al temporizador. El RTT solo se mide con
+// fragmentos que no se reenviaron (Karn). El hilo que llama a send() envia y
+// espera; el listener de VoiceClient entrega los ACK con onAck().
+final class VoiceNoteSender {
+    private static final long INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_RTO_NANOS = TimeUnit.SECONDS.toNanos(2);
+    // Sin ninguna confirmacion nueva en este tiempo la nota se da por no entregada
+    private static final long GIVE_UP_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final DatagramSocket socket;
+    private final DatagramPacket packet;
+    private final ByteBuffer buffer;
+    private final int senderId;
+    private final int receiverId;
+    private final int noteId;
+    private final byte[] audio;
+    private final int chunks;
+
+    private final boolean[] acked;
+    private final boolean[] retransmitted;
+    private final long[] sentAt;
+    // Primer fragmento sin confirmar y siguiente que no se ha enviado nunca
+    private int base;
+    private int next;
+    private long lastProgress;
+    // Instante de envio mas reciente entre los fragmentos confirmados
+    private long latestAckedSentAt;
+
+    private long srtt = -1;
+    private long rttvar;
+    private long rto = INITIAL_RTO_NANOS;
+
+    private int packetsSent;
+    private int retransmissions;
+
+    VoiceNoteSender(DatagramSocket socket, InetAddress server, int port, int senderId, int receiverId,
+                    int noteId, byte[] audio) {
+        this.socket = socket;
+        this.buffer = ByteBuffer.allocate(AudioPacket.HEADER_BYTES
+                + VoiceNoteTransfer.DATA_HEADER_BYTES + VoiceNoteTransfer.CHUNK_BYTES);
+        this.packet = new DatagramPacket(buffer.array(), 0, server, port);
+        this.senderId = senderId;
+        this.receiverId = receiverId;
+        this.noteId = noteId;
+        this.audio = audio;
+        this.chunks = VoiceNoteTransfer.chunkCount(audio.length);
+        this.acked = new boolean[chunks];
+        this.retransmitted = new boolean[chunks];
+        this.sentAt = new long[chunks];
+    }
+
+    int getNoteId() {
+        return noteId;
+    }
+
+    int getChunks() {
+        return chunks;
+    }
+
+    int getPacketsSent() {
+        return packetsSent;
+    }
+
+    int getRetransmissions() {
+        return retransmissions;
+    }
+
+    // Bloquea hasta que el receptor confirma todos los fragmentos; false si deja de responder
+    synchronized boolean send() throws IOException, InterruptedException {
+        lastProgress = System.nanoTime();
+        while (base < chunks) {
+            long now = System.nanoTime();
+            if (now - lastProgress > GIVE_UP_NANOS) {
+                return false;
+            }
+            while (next < chunks && next < base + VoiceNoteTransfer.WINDOW_CHUNKS) {
+                transmit(next++, now);
+            }
+
+            long wakeUp = now + rto;
+            boolean timedOut = false;
+            for (int i = base; i < next; i++) {
+                if (acked[i]) {
+                    continue;
+                }
+                boolean expired = now - sentAt[i] >= rto;
+                if (expired || sentAt[i] + srtt / 4 < latestAckedSentAt) {
+                    timedOut |= expired;
+                    retransmitted[i] = true;
+                    retransmissions++;
+                    transmit(i, now);
+                }
+                wakeUp = Math.min(wakeUp, sentAt[i] + rto);
+            }
+            if (timedOut) {
+                rto = Math.min(MAX_RTO_NANOS, 2 * rto);
+            }
+
+            long waitNanos = wakeUp - System.nanoTime();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+            }
+        }
+        return true;
+    }
+
+    // received: bit i a 1 si llego el fragmento cumulative + 1 + i
+    synchronized void onAck(int cumulative, long received) {
+        long now = System.nanoTime();
+        boolean progress = false;
+        int upTo = Math.min(cumulative, next);
+        for (int i = base; i < upTo; i++) {
+            progress |= acknowledge(i, now);
+        }
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            int index = cumulative + 1 + bit;
+            if ((received >>> bit & 1) != 0 && index >= 0 && index < next) {
+                progress |= acknowledge(index, now);
+            }
+        }
+        while (base < chunks && acked[base]) {
+            base++;
+        }
+        if (progress) {
+            lastProgress = now;
+            notifyAll();
+        }
+    }
+
+    private boolean acknowledge(int index, long now) {
+        if (acked[index]) {
+            return false;
+        }
+        acked[index] = true;
+        if (!retransmitted[index]) {
+            updateRto(now - sentAt[index]);
+        }
+        latestAckedSentAt = Math.max(latestAckedSentAt, sentAt[index]);
+        return true;
+    }
+
+    // RFC 6298: SRTT y RTTVAR con ganancias 1/8 y 1/4, RTO = SRTT + 4 RTTVAR
+    private void updateRto(long rtt) {
+        if (srtt < 0) {
+            srtt = rtt;
+            rttvar = rtt / 2;
+        } else {
+            rttvar += (Math.abs(srtt - rtt) - rttvar) / 4;
+            srtt += (rtt - srtt) / 8;
+        }
+        rto = Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, srtt + 4 * rttvar));
+    }
+
+    private void transmit(int index, long now) throws IOException {
+        sentAt[index] = now;
+        packetsSent++;
+        VoiceNoteTransfer.sendChunk(socket, packet, buffer, senderId, receiverId, noteId, audio, index);
+    }
+}
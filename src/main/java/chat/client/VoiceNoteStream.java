@@ -0,0 +1,81 @@
+package chat.client;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Nota de voz que llega por fragmentos (VOICE_NOTE_CHUNK) y se reproduce
+// mientras sigue llegando. El hilo lector de la conexion anade cada fragmento
+// sin esperar; VoiceNotePlayer lee el audio en su hilo y se bloquea hasta el
+// siguiente. Si deja de llegar audio durante STALE_MILLIS (el emisor se
+// desconecto a media nota) la nota se da por terminada.
+final class VoiceNoteStream extends InputStream implements VoiceNotePlayer.Source {
+    private static final long STALE_MILLIS = 10_000;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final int senderId;
+    private final BlockingQueue<ByteBuffer> chunks = new LinkedBlockingQueue<>();
+    private ByteBuffer current;
+    private volatile boolean finished;
+
+    VoiceNoteStream(int senderId) {
+        this.senderId = senderId;
+    }
+
+    // Los bytes no se copian: deben ser de la trama recibida
+    void append(ByteBuffer audio) {
+        if (audio != null && audio.hasRemaining()) {
+            chunks.offer(audio);
+        }
+    }
+
+    void finish() {
+        finished = true;
+        chunks.offer(END);
+    }
+
+    // Terminada, por el ultimo fragmento o por inactividad
+    boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public InputStream open() {
+        System.out.println("\nNota de voz de " + senderId + " (en curso)");
+        return this;
+    }
+
+    @Override
+    public int read() {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        try {
+            while (current == null || !current.hasRemaining()) {
+                if (current == END) {
+                    return -1;
+                }
+                current = chunks.poll(STALE_MILLIS, TimeUnit.MILLISECONDS);
+                if (current == null) {
+                    System.err.println("Nota de voz de " + senderId + " incompleta: dejaron de llegar fragmentos");
+                    finished = true;
+                    current = END;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        int count = Math.min(length, current.remaining());
+        current.get(target, offset, count);
+        return count;
+    }
+}
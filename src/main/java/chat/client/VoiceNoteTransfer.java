@@ -0,0 +1,59 @@
+package chat.client;
+
+import chat.model.AudioPacket;
+import chat.model.AudioPacketView;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+// Protocolo de envio fiable de notas de voz sobre los datagramas de
+// AudioPacket, distinguidos del audio de llamada por el byte de codec:
+//   VOICE_NOTE_DATA: cabecera con sequenceNumber = indice del fragmento y
+//                    [id de nota:4][fragmentos totales:4][audio, CHUNK_BYTES salvo el ultimo]
+//   VOICE_NOTE_ACK:  [id de nota:4][fragmentos recibidos seguidos desde el 0:4]
+//                    [mapa de 64 bits: el bit i indica si llego el fragmento acumulado + 1 + i]
+// El emisor mantiene una ventana de WINDOW_CHUNKS fragmentos sin confirmar
+// (VoiceNoteSender) y el receptor los ordena y confirma cada uno con el estado
+// completo (VoiceNoteReceiver), asi que los huecos del mapa hacen de NACK.
+final class VoiceNoteTransfer {
+    static final int CHUNK_BYTES = 1024;
+    // El mapa del ACK cubre la ventana completa
+    static final int WINDOW_CHUNKS = 64;
+    static final int DATA_HEADER_BYTES = 8;
+    static final int ACK_BYTES = 16;
+    // Unos 95 s de audio a 44,1 kHz; acota la memoria de cada nota en el receptor
+    static final int MAX_CHUNKS = 8192;
+
+    private VoiceNoteTransfer() {
+    }
+
+    static int chunkCount(int audioBytes) {
+        return (audioBytes + CHUNK_BYTES - 1) / CHUNK_BYTES;
+    }
+
+    // Escribe el datagrama de un fragmento en buffer (desde su inicio) y lo envia
+    static void sendChunk(DatagramSocket socket, DatagramPacket packet, ByteBuffer buffer, int senderId,
+                          int receiverId, int noteId, byte[] audio, int index) throws IOException {
+        int chunks = chunkCount(audio.length);
+        int offset = index * CHUNK_BYTES;
+        int length = Math.min(CHUNK_BYTES, audio.length - offset);
+        buffer.clear();
+        AudioPacketView.encodeHeader(buffer, senderId, receiverId, index, System.currentTimeMillis(),
+                AudioPacket.VOICE_NOTE_DATA, DATA_HEADER_BYTES + length);
+        buffer.putInt(noteId).putInt(chunks).put(audio, offset, length);
+        packet.setLength(buffer.position());
+        socket.send(packet);
+    }
+
+    static void sendAck(DatagramSocket socket, InetAddress server, int port, int senderId, int receiverId,
+                        int noteId, int cumulative, long received) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(AudioPacket.HEADER_BYTES + ACK_BYTES);
+        AudioPacketView.encodeHeader(buffer, senderId, receiverId, cumulative, System.currentTimeMillis(),
+                AudioPacket.VOICE_NOTE_ACK, ACK_BYTES);
+        buffer.putInt(noteId).putInt(cumulative).putLong(received);
+        socket.send(new DatagramPacket(buffer.array(), buffer.position(), server, port));
+    }
+}
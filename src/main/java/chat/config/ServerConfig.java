@@ -7,44 +7,210 @@ import java.util.Properties;
 public class ServerConfig {
     private static ServerConfig instance;
     private Properties properties;
-    
+
     private static final int DEFAULT_TCP_PORT = 5000;
     private static final int DEFAULT_UDP_PORT = 5001;
     private static final int DEFAULT_THREAD_POOL_SIZE = 10;
     private static final String DEFAULT_HOST = "localhost";
-    
+    private static final String DEFAULT_TRANSPORT = "BLOCKING";
+    private static final String DEFAULT_EXECUTION_MODE = "FIXED_POOL";
+    private static final int DEFAULT_OUTBOUND_QUEUE_BYTES = 8 * 1024 * 1024;
+    private static final String DEFAULT_OUTBOUND_OVERFLOW = "DISCONNECT";
+    private static final int DEFAULT_REQUEST_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int DEFAULT_REQUEST_PIPELINE = 8;
+    private static final boolean DEFAULT_COMPRESSION = true;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 1;
+    private static final int DEFAULT_COMPRESSION_MIN_BYTES = 512;
+    private static final int DEFAULT_VOICE_WORKERS = 0;
+    private static final int DEFAULT_VOICE_SHARDS = 1;
+    private static final String DEFAULT_VOICE_GROUP_MODE = "MIX";
+    private static final int DEFAULT_VOICE_GROUP_SPEAKERS = 3;
+    private static final int DEFAULT_VOICE_GROUP_SWITCH_MS = 400;
+    private static final boolean DEFAULT_VOICE_EMBEDDED = true;
+    private static final int DEFAULT_VOICE_IDLE_TIMEOUT_MS = 60_000;
+    private static final int DEFAULT_EVENT_LOOPS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Transporte TCP: un hilo por conexion o multiplexado con Selector
+    public enum Transport {
+        BLOCKING, NIO
+    }
+
+    // Hilos que ejecutan cada ClientHandler: pool fijo o un hilo virtual por conexion (Java 21)
+    public enum ExecutionMode {
+        FIXED_POOL, VIRTUAL_THREADS
+    }
+
+    // Audio de llamadas grupales: una mezcla por participante o reenviar los
+    // flujos de quienes estan hablando
+    public enum VoiceGroupMode {
+        MIX, FORWARD
+    }
+
+    // Que hacer cuando un cliente no lee y su cola de salida se llena
+    public enum OverflowPolicy {
+        DROP, DISCONNECT, SPILL
+    }
+
     private ServerConfig() {
         properties = new Properties();
         loadDefaultProperties();
+        loadSystemOverrides();
     }
-    
+
     public static synchronized ServerConfig getInstance() {
         if (instance == null) {
             instance = new ServerConfig();
         }
         return instance;
     }
-    
+
     private void loadDefaultProperties() {
         properties.setProperty("server.tcp.port", String.valueOf(DEFAULT_TCP_PORT));
         properties.setProperty("server.udp.port", String.valueOf(DEFAULT_UDP_PORT));
         properties.setProperty("server.host", DEFAULT_HOST);
         properties.setProperty("server.threadpool.size", String.valueOf(DEFAULT_THREAD_POOL_SIZE));
+        properties.setProperty("server.transport", DEFAULT_TRANSPORT);
+        properties.setProperty("server.nio.eventloops", String.valueOf(DEFAULT_EVENT_LOOPS));
+        properties.setProperty("server.execution.mode", DEFAULT_EXECUTION_MODE);
+        properties.setProperty("server.outbound.queue.bytes", String.valueOf(DEFAULT_OUTBOUND_QUEUE_BYTES));
+        properties.setProperty("server.outbound.overflow", DEFAULT_OUTBOUND_OVERFLOW);
+        properties.setProperty("server.request.threads", String.valueOf(DEFAULT_REQUEST_THREADS));
+        properties.setProperty("server.request.pipeline", String.valueOf(DEFAULT_REQUEST_PIPELINE));
+        properties.setProperty("server.compression", String.valueOf(DEFAULT_COMPRESSION));
+        properties.setProperty("server.compression.level", String.valueOf(DEFAULT_COMPRESSION_LEVEL));
+        properties.setProperty("server.compression.min.bytes", String.valueOf(DEFAULT_COMPRESSION_MIN_BYTES));
+        properties.setProperty("server.voice.workers", String.valueOf(DEFAULT_VOICE_WORKERS));
+        properties.setProperty("server.voice.shards", String.valueOf(DEFAULT_VOICE_SHARDS));
+        properties.setProperty("server.voice.group.mode", DEFAULT_VOICE_GROUP_MODE);
+        properties.setProperty("server.voice.group.speakers", String.valueOf(DEFAULT_VOICE_GROUP_SPEAKERS));
+        properties.setProperty("server.voice.group.switch.ms", String.valueOf(DEFAULT_VOICE_GROUP_SWITCH_MS));
+        properties.setProperty("server.voice.embedded", String.valueOf(DEFAULT_VOICE_EMBEDDED));
+        properties.setProperty("server.voice.idle.timeout.ms", String.valueOf(DEFAULT_VOICE_IDLE_TIMEOUT_MS));
+    }
+
+    // Permite sobreescribir cualquier propiedad con -Dserver.xxx=valor
+    private void loadSystemOverrides() {
+        for (String key : properties.stringPropertyNames()) {
+            String value = System.getProperty(key);
+            if (value != null && !value.isBlank()) {
+                properties.setProperty(key, value.trim());
+            }
+        }
     }
-    
+
     public int getTcpPort() {
         return Integer.parseInt(properties.getProperty("server.tcp.port"));
     }
-    
+
     public int getUdpPort() {
         return Integer.parseInt(properties.getProperty("server.udp.port"));
     }
-    
+
     public String getHost() {
         return properties.getProperty("server.host");
     }
-    
+
     public int getThreadPoolSize() {
         return Integer.parseInt(properties.getProperty("server.threadpool.size"));
     }
+
+    public Transport getTransport() {
+        return Transport.valueOf(properties.getProperty("server.transport").toUpperCase());
+    }
+
+    public int getEventLoopCount() {
+        return Integer.parseInt(properties.getProperty("server.nio.eventloops"));
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return ExecutionMode.valueOf(properties.getProperty("server.execution.mode").toUpperCase());
+    }
+
+    public int getOutboundQueueBytes() {
+        return Integer.parseInt(properties.getProperty("server.outbound.queue.bytes"));
+    }
+
+    public OverflowPolicy getOutboundOverflowPolicy() {
+        return OverflowPolicy.valueOf(properties.getProperty("server.outbound.overflow").toUpperCase());
+    }
+
+    // Hilos para consultas concurrentes (solo con FIXED_POOL; con hilos virtuales hay uno por consulta)
+    public int getRequestThreads() {
+        return Integer.parseInt(properties.getProperty("server.request.threads"));
+    }
+
+    // Consultas en paralelo por conexion antes de procesarlas en orden
+    public int getRequestPipelineDepth() {
+        return Integer.parseInt(properties.getProperty("server.request.pipeline"));
+    }
+
+    // Aceptar compresion si el cliente la pide en el saludo
+    public boolean isCompressionEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("server.compression"));
+    }
+
+    // Nivel de Deflater (1 = mas rapido, 9 = mas compresion)
+    public int getCompressionLevel() {
+        return Integer.parseInt(properties.getProperty("server.compression.level"));
+    }
+
+    // Tramas mas pequenas se envian sin comprimir
+    public int getCompressionMinBytes() {
+        return Integer.parseInt(properties.getProperty("server.compression.min.bytes"));
+    }
+
+    // Hilos que reenvian audio en el VoiceServer, repartidos por remitente.
+    // 0 = se reenvia en el mismo hilo que recibe
+    public int getVoiceWorkers() {
+        return Integer.parseInt(properties.getProperty("server.voice.workers"));
+    }
+
+    // Puertos UDP consecutivos desde server.udp.port, uno por hilo del VoiceServer
+    public int getVoiceShards() {
+        return Integer.parseInt(properties.getProperty("server.voice.shards"));
+    }
+
+    // Puerto de voz de la llamada entre dos usuarios. No depende del orden, asi
+    // que ambas partes y el VoiceServer llegan al mismo shard.
+    public int getVoicePort(int userA, int userB) {
+        int low = Math.min(userA, userB);
+        int high = Math.max(userA, userB);
+        int hash = (low * 0x9E3779B9) ^ high;
+        hash ^= hash >>> 16;
+        return getUdpPort() + Math.floorMod(hash, getVoiceShards());
+    }
+
+    // Todos los miembros de una llamada grupal se mezclan en el mismo shard,
+    // asi que el puerto depende solo del grupo
+    public int getGroupVoicePort(int groupId) {
+        int hash = groupId * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return getUdpPort() + Math.floorMod(hash, getVoiceShards());
+    }
+
+    public VoiceGroupMode getVoiceGroupMode() {
+        return VoiceGroupMode.valueOf(properties.getProperty("server.voice.group.mode").toUpperCase());
+    }
+
+    // Con FORWARD, cuantos de los que mas hablan se reenvian (0 = todos)
+    public int getVoiceGroupSpeakers() {
+        return Integer.parseInt(properties.getProperty("server.voice.group.speakers"));
+    }
+
+    // Tiempo que alguien debe sonar mas que un orador (o callar) antes de cambiarlo
+    public int getVoiceGroupSwitchMillis() {
+        return Integer.parseInt(properties.getProperty("server.voice.group.switch.ms"));
+    }
+
+    // El servidor de chat levanta el VoiceServer en su proceso y le abre una
+    // sesion de medios por llamada aceptada
+    public boolean isVoiceEmbedded() {
+        return Boolean.parseBoolean(properties.getProperty("server.voice.embedded"));
+    }
+
+    // Sin datagramas durante este tiempo se olvida un registro, un extremo de
+    // una sesion o la sesion entera
+    public int getVoiceIdleTimeoutMillis() {
+        return Integer.parseInt(properties.getProperty("server.voice.idle.timeout.ms"));
+    }
 }
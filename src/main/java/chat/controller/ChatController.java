@@ -1,11 +1,11 @@
 package chat.controller;
 
 import chat.model.*;
-import chat.protocol.Protocol;
 import chat.protocol.Protocol.Command;
 import chat.protocol.Protocol.Packet;
 import chat.service.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ChatController {
@@ -25,7 +25,7 @@ public class ChatController {
     public Packet handleRegister(String username) {
         try {
             User user = userService.register(username);
-            return new Packet(Command.SUCCESS, Protocol.toJson(user));
+            return new Packet(Command.SUCCESS, user);
         } catch (Exception e) {
             return createErrorPacket(e.getMessage());
         }
@@ -34,7 +34,7 @@ public class ChatController {
     public Packet handleLogin(String username) {
         try {
             User user = userService.login(username);
-            return new Packet(Command.SUCCESS, Protocol.toJson(user));
+            return new Packet(Command.SUCCESS, user);
         } catch (Exception e) {
             return createErrorPacket(e.getMessage());
         }
@@ -72,20 +72,37 @@ public class ChatController {
         }
     }
     
+    // Guarda el lote con una sola escritura y devuelve una respuesta por mensaje
+    public List<Packet> handleSendMessages(List<Message> messages) {
+        List<Packet> results = new ArrayList<>(messages.size());
+        try {
+            messageService.sendMessages(messages);
+            for (Message message : messages) {
+                results.add(new Packet(Command.SUCCESS,
+                        message.getGroupId() != null ? "Mensaje enviado al grupo" : "Mensaje enviado"));
+            }
+        } catch (Exception e) {
+            for (int i = 0; i < messages.size(); i++) {
+                results.add(createErrorPacket(e.getMessage()));
+            }
+        }
+        return results;
+    }
+
     public Packet handleGetHistory(int userId1, int userId2) {
         List<Message> messages = messageService.getChatHistory(userId1, userId2);
-        return new Packet(Command.SUCCESS, Protocol.toJson(messages));
+        return new Packet(Command.SUCCESS, messages);
     }
     
     public Packet handleGetGroupMessages(int groupId) {
         List<Message> messages = messageService.getGroupMessages(groupId);
-        return new Packet(Command.SUCCESS, Protocol.toJson(messages));
+        return new Packet(Command.SUCCESS, messages);
     }
     
     public Packet handleCreateGroup(String name, int creatorId) {
         try {
             Group group = groupService.createGroup(name, creatorId);
-            return new Packet(Command.SUCCESS, Protocol.toJson(group));
+            return new Packet(Command.SUCCESS, group);
         } catch (Exception e) {
             return createErrorPacket(e.getMessage());
         }
@@ -93,7 +110,7 @@ public class ChatController {
     
     public Packet handleGetUserGroups(int userId) {
         List<Group> groups = groupService.getUserGroups(userId);
-        return new Packet(Command.SUCCESS, Protocol.toJson(groups));
+        return new Packet(Command.SUCCESS, groups);
     }
     
     public Packet handleAddToGroup(int groupId, int userId) {
@@ -107,15 +124,23 @@ public class ChatController {
     
     public Packet handleGetUsers() {
         List<User> users = userService.getAllUsers();
-        return new Packet(Command.SUCCESS, Protocol.toJson(users));
+        return new Packet(Command.SUCCESS, users);
     }
     
     public void handleCallRequest(Call call) {
         callService.initiateCall(call);
     }
     
-    public Packet handleCallAccept(int callerId, int receiverId) {
-        callService.acceptCall(callerId, receiverId);
+    // Anota en la Call la sesion de medios por la que ira su audio
+    public Packet handleCallAccept(Call call) {
+        call.setMediaSession(callService.acceptCall(call.getCallerId(), call.getReceiverId()));
+        return new Packet(Command.SUCCESS, "Llamada aceptada");
+    }
+    
+    public Packet handleGroupCallJoin(int groupId, int userId) {
+        if (!callService.joinGroupCall(groupId, userId)) {
+            return createErrorPacket("No hay llamada en curso en el grupo");
+        }
         return new Packet(Command.SUCCESS, "Llamada aceptada");
     }
     
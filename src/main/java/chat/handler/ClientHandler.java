@@ -1,49 +1,89 @@
 package chat.handler;
 
+import chat.config.ServerConfig;
 import chat.controller.ChatController;
 import chat.model.*;
-import chat.protocol.Protocol;
 import chat.protocol.Protocol.Command;
 import chat.protocol.Protocol.Packet;
-
-import java.io.*;
-import java.net.Socket;
-
-public class ClientHandler implements Runnable {
-    private final Socket socket;
+import chat.transport.ClientConnection;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+public class ClientHandler {
+    // Consultas que no modifican nada y pueden responderse fuera de orden
+    private static final Set<Command> CONCURRENT_COMMANDS = EnumSet.of(
+            Command.GET_HISTORY, Command.GET_GROUP_MESSAGES, Command.GET_USER_GROUPS, Command.GET_USERS);
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final Type PACKET_LIST = new TypeToken<List<Packet>>(){}.getType();
+    // Notas de voz por fragmentos que un cliente puede estar enviando a la vez
+    private static final int MAX_STREAMED_VOICE_NOTES = 4;
+
+    private final ClientConnection connection;
     private final ChatController controller;
     private final ClientRegistry clientRegistry;
+    private final Executor requestExecutor;
+    private final Semaphore concurrentRequests;
+
+    private volatile User currentUser;
+    // Notas de voz que este cliente esta enviando por fragmentos: destinatarios
+    // resueltos con el primer fragmento, por id de nota (vacio si no hay a quien
+    // reenviarla). Se olvidan con el ultimo fragmento o al cerrar la conexion.
+    private final Map<Integer, int[]> streamedVoiceNotes = new ConcurrentHashMap<>();
 
-    private BufferedReader in;
-    private PrintWriter out;
-    private User currentUser;
+    public ClientHandler(ClientConnection connection, ChatController controller, ClientRegistry clientRegistry) {
+        this(connection, controller, clientRegistry, null);
+    }
 
-    public ClientHandler(Socket socket, ChatController controller, ClientRegistry clientRegistry) {
-        this.socket = socket;
+    public ClientHandler(ClientConnection connection, ChatController controller, ClientRegistry clientRegistry,
+                         Executor requestExecutor) {
+        this.connection = connection;
         this.controller = controller;
         this.clientRegistry = clientRegistry;
+        this.requestExecutor = requestExecutor;
+        this.concurrentRequests = new Semaphore(ServerConfig.getInstance().getRequestPipelineDepth());
     }
 
-    @Override
-    public void run() {
-        try {
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
-
-            String line;
-            while ((line = in.readLine()) != null) {
-                Packet packet = Protocol.deserialize(line);
-                handlePacket(packet);
+    // Las consultas con id de correlacion se ejecutan en paralelo y se responden
+    // al terminar. El resto, y todo lo de clientes sin ids, se procesa en orden.
+    // Si ya hay demasiadas consultas en curso se procesa aqui mismo, lo que frena
+    // la lectura de esa conexion.
+    public void handlePacket(Packet packet) {
+        if (requestExecutor != null && packet.getRequestId() != 0
+                && CONCURRENT_COMMANDS.contains(packet.getCommand()) && concurrentRequests.tryAcquire()) {
+            try {
+                requestExecutor.execute(() -> {
+                    try {
+                        process(packet);
+                    } finally {
+                        concurrentRequests.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                concurrentRequests.release();
             }
-        } catch (IOException e) {
-            System.out.println("Cliente desconectado: " +
-                    (currentUser != null ? currentUser.getUsername() : "desconocido"));
-        } finally {
-            disconnect();
         }
+        process(packet);
+    }
+
+    private void process(Packet packet) {
+        process(packet, this::send);
     }
 
-    private void handlePacket(Packet packet) {
+    // Las respuestas van a out: al socket, o a la lista de resultados de un lote
+    private void process(Packet packet, Consumer<Packet> out) {
         try {
             Packet response;
 
@@ -51,51 +91,51 @@ public class ClientHandler implements Runnable {
                 case REGISTER:
                     response = controller.handleRegister(packet.getData());
                     if (response.getCommand() == Command.SUCCESS) {
-                        currentUser = Protocol.fromJson(response.getData(), User.class);
+                        currentUser = response.getData(User.class);
                         clientRegistry.register(currentUser.getId(), this);
                         System.out.println("Nuevo usuario registrado: " + currentUser.getUsername());
                     }
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case LOGIN:
                     response = controller.handleLogin(packet.getData());
                     if (response.getCommand() == Command.SUCCESS) {
-                        currentUser = Protocol.fromJson(response.getData(), User.class);
+                        currentUser = response.getData(User.class);
                         clientRegistry.register(currentUser.getId(), this);
                         System.out.println("Usuario conectado: " + currentUser.getUsername());
                     }
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case LOGOUT:
                     controller.handleLogout(currentUser.getId());
-                    send(new Packet(Command.SUCCESS, "Sesion cerrada"));
+                    reply(packet, new Packet(Command.SUCCESS, "Sesion cerrada"), out);
                     break;
 
                 case SEND_MESSAGE:
-                    Message message = Protocol.fromJson(packet.getData(), Message.class);
+                    Message message = packet.getData(Message.class);
                     message.setSenderId(currentUser.getId());
                     message.setSenderUsername(currentUser.getUsername());
                     response = controller.handleSendMessage(message);
-                    send(response);
+                    reply(packet, response, out);
 
                     // Notificar al destinatario
                     if (message.getReceiverId() != null) {
                         ClientHandler receiver = clientRegistry.get(message.getReceiverId());
                         if (receiver != null) {
-                            Packet notification = new Packet(Command.RECEIVE_MESSAGE, Protocol.toJson(message));
+                            Packet notification = new Packet(Command.RECEIVE_MESSAGE, message);
                             receiver.send(notification);
                         }
                     }
                     break;
 
                 case SEND_GROUP_MESSAGE:
-                    Message groupMessage = Protocol.fromJson(packet.getData(), Message.class);
+                    Message groupMessage = packet.getData(Message.class);
                     groupMessage.setSenderId(currentUser.getId());
                     groupMessage.setSenderUsername(currentUser.getUsername());
                     response = controller.handleSendGroupMessage(groupMessage);
-                    send(response);
+                    reply(packet, response, out);
 
                     // Notificar a miembros del grupo 
                     clientRegistry.notifyGroupMessage(groupMessage, currentUser.getId());
@@ -104,23 +144,23 @@ public class ClientHandler implements Runnable {
                 case GET_HISTORY:
                     int otherUserId = Integer.parseInt(packet.getData());
                     response = controller.handleGetHistory(currentUser.getId(), otherUserId);
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case GET_GROUP_MESSAGES:
                     int groupId = Integer.parseInt(packet.getData());
                     response = controller.handleGetGroupMessages(groupId);
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case CREATE_GROUP:
                     response = controller.handleCreateGroup(packet.getData(), currentUser.getId());
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case GET_USER_GROUPS:
                     response = controller.handleGetUserGroups(currentUser.getId());
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case ADD_TO_GROUP:
@@ -129,78 +169,190 @@ public class ClientHandler implements Runnable {
                             Integer.parseInt(parts[0]),
                             Integer.parseInt(parts[1])
                     );
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case GET_USERS:
                     response = controller.handleGetUsers();
-                    send(response);
+                    reply(packet, response, out);
                     break;
 
                 case VOICE_NOTE_DATA:
-                    handleVoiceNoteData(packet);
+                    handleVoiceNoteData(packet, out);
+                    break;
+
+                case VOICE_NOTE_CHUNK:
+                    handleVoiceNoteChunk(packet, out);
                     break;
 
                 case CALL_REQUEST:
-                    handleCallRequest(packet);
+                    handleCallRequest(packet, out);
                     break;
 
                 case CALL_ACCEPT:
-                    handleCallAccept(packet);
+                    handleCallAccept(packet, out);
                     break;
 
                 case CALL_REJECT:
-                    handleCallReject(packet);
+                    handleCallReject(packet, out);
                     break;
 
                 case CALL_END:
-                    handleCallEnd(packet);
+                    handleCallEnd(packet, out);
+                    break;
+
+                case BATCH:
+                    handleBatch(packet, out);
                     break;
 
                 default:
-                    sendError("Comando no reconocido");
+                    replyError(packet, "Comando no reconocido", out);
             }
         } catch (Exception e) {
-            sendError("Error procesando comando: " + e.getMessage());
+            replyError(packet, "Error procesando comando: " + e.getMessage(), out);
         }
     }
 
-    private void handleVoiceNoteData(Packet packet) {
+    // La nota se enruta con el destino del sobre y se reenvia con los mismos
+    // bytes que llegaron: el audio no se decodifica ni se vuelve a serializar
+    private void handleVoiceNoteData(Packet packet, Consumer<Packet> out) {
+        if (!packet.hasValidRawData()) {
+            replyError(packet, "Nota de voz invalida", out);
+            return;
+        }
         try {
-            VoiceNoteData voiceNote = Protocol.fromJson(packet.getData(), VoiceNoteData.class);
+            int receiverId = packet.getReceiverId();
+            int groupId = packet.getGroupId();
+            if (!packet.hasRoute()) {
+                // Clientes sin destino en el sobre: solo se leen los campos de
+                // destino y el audio se salta sin crear el texto
+                VoiceNoteRoute route = packet.getData(VoiceNoteRoute.class);
+                receiverId = route.receiverId;
+                groupId = route.groupId != null ? route.groupId : 0;
+            }
 
-            System.out.println("Nota de voz recibida de usuario " + voiceNote.getSenderId() +
-                    " (" + voiceNote.getAudioBytes().length + " bytes)");
+            System.out.println("Nota de voz recibida de usuario " + currentUser.getId());
 
-            if (voiceNote.isGroupMessage()) {
+            Packet notification = packet.forward();
+            if (groupId != 0) {
                 // Enviar a todos los miembros del grupo excepto el remitente
-                clientRegistry.notifyGroupVoiceNote(voiceNote, currentUser.getId());
-                send(new Packet(Command.SUCCESS, "Nota de voz enviada al grupo"));
+                clientRegistry.notifyGroupVoiceNote(notification, groupId, currentUser.getId());
+                reply(packet, new Packet(Command.SUCCESS, "Nota de voz enviada al grupo"), out);
             } else {
                 // Enviar al destinatario específico
-                if (voiceNote.getReceiverId() != 0) {
-                    ClientHandler receiver = clientRegistry.get(voiceNote.getReceiverId());
+                if (receiverId != 0) {
+                    ClientHandler receiver = clientRegistry.get(receiverId);
                     if (receiver != null) {
-                        Packet notification = new Packet(Command.VOICE_NOTE_DATA, Protocol.toJson(voiceNote));
                         receiver.send(notification);
-                        send(new Packet(Command.SUCCESS, "Nota de voz enviada"));
+                        reply(packet, new Packet(Command.SUCCESS, "Nota de voz enviada"), out);
                     } else {
-                        sendError("Usuario no disponible");
+                        replyError(packet, "Usuario no disponible", out);
                     }
                 } else {
-                    sendError("ID de destinatario invalido");
+                    replyError(packet, "ID de destinatario invalido", out);
                 }
             }
         } catch (Exception e) {
             System.err.println("Error procesando nota de voz: " + e.getMessage());
-            sendError("Error procesando nota de voz");
+            replyError(packet, "Error procesando nota de voz", out);
+        }
+    }
+
+    // Cada fragmento se reenvia en cuanto llega, con los mismos bytes (el audio
+    // va adjunto y no se toca). Solo se lee la cabecera del fragmento; el
+    // destino va en el sobre. Si no hay a quien enviarla se responde el error
+    // al primer fragmento y el resto se descarta; el ultimo siempre recibe
+    // respuesta.
+    private void handleVoiceNoteChunk(Packet packet, Consumer<Packet> out) {
+        if (!packet.hasValidRawData()) {
+            replyError(packet, "Fragmento de nota de voz invalido", out);
+            return;
+        }
+        VoiceNoteChunk chunk = packet.getData(VoiceNoteChunk.class);
+        if (chunk == null || chunk.getSenderId() != currentUser.getId()) {
+            replyError(packet, "Fragmento de nota de voz invalido", out);
+            return;
+        }
+
+        int[] recipients = streamedVoiceNotes.get(chunk.getNoteId());
+        if (recipients == null) {
+            if (chunk.getSequence() != 0) {
+                if (chunk.isLast()) {
+                    replyError(packet, "Nota de voz desconocida", out);
+                }
+                return;
+            }
+            if (streamedVoiceNotes.size() >= MAX_STREAMED_VOICE_NOTES) {
+                replyError(packet, "Demasiadas notas de voz en curso", out);
+                return;
+            }
+            recipients = voiceNoteRecipients(packet, out);
+            if (!chunk.isLast()) {
+                streamedVoiceNotes.put(chunk.getNoteId(), recipients);
+            }
+        } else if (chunk.isLast()) {
+            streamedVoiceNotes.remove(chunk.getNoteId());
+        }
+        if (recipients.length == 0) {
+            if (chunk.isLast() && chunk.getSequence() != 0) {
+                replyError(packet, "Nota de voz no entregada", out);
+            }
+            return;
+        }
+
+        Packet notification = packet.forward();
+        int delivered = 0;
+        for (int recipientId : recipients) {
+            ClientHandler recipient = clientRegistry.get(recipientId);
+            if (recipient != null) {
+                recipient.send(notification);
+                delivered++;
+            }
+        }
+        if (chunk.isLast()) {
+            System.out.println("Nota de voz de usuario " + currentUser.getId() + " reenviada (" +
+                    (chunk.getSequence() + 1) + " fragmentos)");
+            reply(packet, new Packet(Command.SUCCESS, delivered > 0
+                    ? "Nota de voz enviada" : "Nota de voz sin destinatarios conectados"), out);
         }
     }
 
-    private void handleCallRequest(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
+    // Vacio, tras responder el error, si no hay a quien enviarla
+    private int[] voiceNoteRecipients(Packet packet, Consumer<Packet> out) {
+        if (packet.getGroupId() != 0) {
+            int[] members = clientRegistry.voiceNoteRecipients(packet.getGroupId(), currentUser.getId());
+            if (members == null || members.length == 0) {
+                replyError(packet, members == null ? "Grupo no encontrado" : "El grupo no tiene otros miembros", out);
+                return new int[0];
+            }
+            return members;
+        }
+        if (packet.getReceiverId() == 0) {
+            replyError(packet, "ID de destinatario invalido", out);
+            return new int[0];
+        }
+        if (clientRegistry.get(packet.getReceiverId()) == null) {
+            replyError(packet, "Usuario no disponible", out);
+            return new int[0];
+        }
+        return new int[]{packet.getReceiverId()};
+    }
+
+    // Campos de destino de VoiceNoteData; el resto se ignora al leer
+    private static class VoiceNoteRoute {
+        int receiverId;
+        Integer groupId;
+    }
+
+    private void handleCallRequest(Packet packet, Consumer<Packet> out) {
+        Call call = packet.getData(Call.class);
         call.setCallerId(currentUser.getId());
         call.setCallerUsername(currentUser.getUsername());
+        if (call.isGroupCall() && !clientRegistry.isGroupMember(call.getReceiverId(), currentUser.getId())) {
+            replyError(packet, "No eres miembro del grupo", out);
+            return;
+        }
+        call.setMediaPort(mediaPort(call));
 
         controller.handleCallRequest(call);
 
@@ -209,71 +361,215 @@ public class ClientHandler implements Runnable {
         } else {
             ClientHandler receiver = clientRegistry.get(call.getReceiverId());
             if (receiver != null) {
-                Packet notification = new Packet(Command.CALL_REQUEST, Protocol.toJson(call));
+                Packet notification = new Packet(Command.CALL_REQUEST, call);
                 receiver.send(notification);
-                send(new Packet(Command.SUCCESS, "Llamada iniciada"));
+                reply(packet, new Packet(Command.SUCCESS, "Llamada iniciada"), out);
             } else {
-                sendError("Usuario no disponible");
+                replyError(packet, "Usuario no disponible", out);
             }
         }
     }
 
-    private void handleCallAccept(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
-        Packet response = controller.handleCallAccept(call.getCallerId(), call.getReceiverId());
-        send(response);
+    private void handleCallAccept(Packet packet, Consumer<Packet> out) {
+        Call call = packet.getData(Call.class);
+        Packet response;
+        if (call.isGroupCall()) {
+            // Solo los miembros del grupo, y solo si la llamada sigue en curso
+            if (!clientRegistry.isGroupMember(call.getReceiverId(), currentUser.getId())) {
+                replyError(packet, "No eres miembro del grupo", out);
+                return;
+            }
+            response = controller.handleGroupCallJoin(call.getReceiverId(), currentUser.getId());
+        } else {
+            // Solo puede aceptar una llamada 1:1 quien la recibe
+            call.setReceiverId(currentUser.getId());
+            call.setReceiverUsername(currentUser.getUsername());
+            response = controller.handleCallAccept(call);
+        }
+        call.setMediaPort(mediaPort(call));
+        reply(packet, response, out);
+        if (response.getCommand() != Command.SUCCESS) {
+            return;
+        }
 
         ClientHandler caller = clientRegistry.get(call.getCallerId());
         if (caller != null) {
-            Packet notification = new Packet(Command.CALL_ACCEPT, Protocol.toJson(call));
+            Packet notification = new Packet(Command.CALL_ACCEPT, call);
             caller.send(notification);
         }
     }
 
-    private void handleCallReject(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
+    // Puerto del shard de voz: por pareja de usuarios o, si es grupal, por grupo
+    private static int mediaPort(Call call) {
+        ServerConfig config = ServerConfig.getInstance();
+        return call.isGroupCall() ? config.getGroupVoicePort(call.getReceiverId())
+                : config.getVoicePort(call.getCallerId(), call.getReceiverId());
+    }
+
+    private void handleCallReject(Packet packet, Consumer<Packet> out) {
+        Call call = packet.getData(Call.class);
         Packet response = controller.handleCallReject(call.getCallerId(), call.getReceiverId());
-        send(response);
+        reply(packet, response, out);
 
         ClientHandler caller = clientRegistry.get(call.getCallerId());
         if (caller != null) {
-            Packet notification = new Packet(Command.CALL_REJECT, Protocol.toJson(call));
+            Packet notification = new Packet(Command.CALL_REJECT, call);
             caller.send(notification);
         }
     }
 
-    private void handleCallEnd(Packet packet) {
-        Call call = Protocol.fromJson(packet.getData(), Call.class);
+    private void handleCallEnd(Packet packet, Consumer<Packet> out) {
+        Call call = packet.getData(Call.class);
         Packet response = controller.handleCallEnd(currentUser.getId());
-        send(response);
+        reply(packet, response, out);
+
+        // En una llamada grupal cada miembro sale por su cuenta; el resto sigue
+        if (call.isGroupCall()) {
+            return;
+        }
 
         int otherUserId = call.getCallerId() == currentUser.getId() ?
                 call.getReceiverId() : call.getCallerId();
 
         ClientHandler other = clientRegistry.get(otherUserId);
         if (other != null) {
-            Packet notification = new Packet(Command.CALL_END, Protocol.toJson(call));
+            Packet notification = new Packet(Command.CALL_END, call);
             other.send(notification);
         }
     }
 
+    // Ejecuta en orden los paquetes del lote y responde una sola vez con una
+    // respuesta por paquete, en el mismo orden. Los envios de mensajes seguidos
+    // se guardan juntos con un unico INSERT de varias filas.
+    private void handleBatch(Packet packet, Consumer<Packet> out) {
+        List<Packet> requests = packet.getData(PACKET_LIST);
+        if (requests == null || requests.isEmpty()) {
+            replyError(packet, "Lote vacio", out);
+            return;
+        }
+        if (requests.size() > MAX_BATCH_SIZE) {
+            replyError(packet, "Lote demasiado grande (maximo " + MAX_BATCH_SIZE + ")", out);
+            return;
+        }
+
+        List<Packet> results = new ArrayList<>(requests.size());
+        int index = 0;
+        while (index < requests.size()) {
+            Packet request = requests.get(index);
+            if (isMessageSend(request)) {
+                int end = index + 1;
+                while (end < requests.size() && isMessageSend(requests.get(end))) {
+                    end++;
+                }
+                sendMessages(requests.subList(index, end), results::add);
+                index = end;
+                continue;
+            }
+
+            if (request.getCommand() == Command.BATCH) {
+                replyError(request, "No se permiten lotes anidados", results::add);
+            } else {
+                // Comandos sin respuesta (p. ej. llamada a grupo) reciben un SUCCESS vacio
+                int before = results.size();
+                process(request, results::add);
+                if (results.size() == before) {
+                    reply(request, new Packet(Command.SUCCESS), results::add);
+                }
+            }
+            index++;
+        }
+
+        reply(packet, new Packet(Command.SUCCESS, results), out);
+    }
+
+    private static boolean isMessageSend(Packet packet) {
+        return packet.getCommand() == Command.SEND_MESSAGE || packet.getCommand() == Command.SEND_GROUP_MESSAGE;
+    }
+
+    private void sendMessages(List<Packet> requests, Consumer<Packet> out) {
+        Packet[] results = new Packet[requests.size()];
+        List<Message> messages = new ArrayList<>(requests.size());
+        List<Integer> positions = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            Packet request = requests.get(i);
+            Message message;
+            try {
+                message = request.getData(Message.class);
+            } catch (Exception e) {
+                message = null;
+            }
+
+            boolean group = request.getCommand() == Command.SEND_GROUP_MESSAGE;
+            if (message == null || (group ? message.getGroupId() == null : message.getReceiverId() == null)) {
+                Packet error = new Packet(Command.ERROR);
+                error.setError(group ? "Mensaje de grupo sin grupo" : "Mensaje sin destinatario");
+                results[i] = error;
+                continue;
+            }
+            if (group) {
+                message.setReceiverId(null);
+            } else {
+                message.setGroupId(null);
+            }
+            message.setSenderId(currentUser.getId());
+            message.setSenderUsername(currentUser.getUsername());
+            messages.add(message);
+            positions.add(i);
+        }
+
+        List<Packet> saved = messages.isEmpty() ? new ArrayList<>() : controller.handleSendMessages(messages);
+        for (int i = 0; i < saved.size(); i++) {
+            results[positions.get(i)] = saved.get(i);
+        }
+        for (int i = 0; i < results.length; i++) {
+            reply(requests.get(i), results[i], out);
+        }
+
+        // Notificar despues de guardar todo el lote
+        for (int i = 0; i < saved.size(); i++) {
+            if (saved.get(i).getCommand() != Command.SUCCESS) {
+                continue;
+            }
+            Message message = messages.get(i);
+            if (message.getGroupId() != null) {
+                clientRegistry.notifyGroupMessage(message, currentUser.getId());
+            } else {
+                ClientHandler receiver = clientRegistry.get(message.getReceiverId());
+                if (receiver != null) {
+                    receiver.send(new Packet(Command.RECEIVE_MESSAGE, message));
+                }
+            }
+        }
+    }
+
     public void send(Packet packet) {
-        out.println(Protocol.serialize(packet));
+        connection.send(packet);
+    }
+
+    // Respuesta a una peticion: lleva el mismo id de correlacion
+    private void reply(Packet request, Packet response, Consumer<Packet> out) {
+        response.setRequestId(request.getRequestId());
+        out.accept(response);
     }
 
-    private void sendError(String error) {
+    private void replyError(Packet request, String error, Consumer<Packet> out) {
         Packet packet = new Packet(Command.ERROR);
         packet.setError(error);
-        send(packet);
+        reply(request, packet, out);
     }
 
-    private void disconnect() {
+    public void onDisconnect() {
+        System.out.println("Cliente desconectado: " +
+                (currentUser != null ? currentUser.getUsername() : "desconocido"));
         try {
             if (currentUser != null) {
+                // Sale de la llamada en curso, en particular de la grupal
+                controller.handleCallEnd(currentUser.getId());
                 controller.handleLogout(currentUser.getId());
                 clientRegistry.unregister(currentUser.getId());
             }
-            socket.close();
+            connection.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -3,8 +3,6 @@ package chat.handler;
 import chat.model.Call;
 import chat.model.Group;
 import chat.model.Message;
-import chat.model.VoiceNoteData;
-import chat.protocol.Protocol;
 import chat.protocol.Protocol.Command;
 import chat.protocol.Protocol.Packet;
 import chat.repository.GroupRepository;
@@ -32,13 +30,15 @@ public class ClientRegistry {
         return connectedClients.get(userId);
     }
 
+    // El paquete se crea una sola vez fuera del bucle: cada formato de trama se
+    // codifica con el primer miembro que lo usa y el resto recibe los mismos bytes
     public void notifyGroupMessage(Message message, int senderId) {
         groupRepository.findById(message.getGroupId()).ifPresent(group -> {
+            Packet notification = new Packet(Command.RECEIVE_MESSAGE, message);
             for (int memberId : group.getMemberIds()) {
                 if (memberId != senderId) {
                     ClientHandler member = connectedClients.get(memberId);
                     if (member != null) {
-                        Packet notification = new Packet(Command.RECEIVE_MESSAGE, Protocol.toJson(message));
                         member.send(notification);
                     }
                 }
@@ -46,33 +46,51 @@ public class ClientRegistry {
         });
     }
 
-    public void notifyGroupVoiceNote(VoiceNoteData voiceNote, int senderId) {
-        groupRepository.findById(voiceNote.getGroupId()).ifPresent(group -> {
-            System.out.println("Enviando nota de voz a grupo " + voiceNote.getGroupId() +
+    // La nota llega ya como paquete reenviable: todos los miembros comparten sus bytes
+    public void notifyGroupVoiceNote(Packet notification, int groupId, int senderId) {
+        groupRepository.findById(groupId).ifPresent(group -> {
+            System.out.println("Enviando nota de voz a grupo " + groupId +
                     " con " + group.getMemberIds().size() + " miembros");
 
+            int delivered = 0;
             for (int memberId : group.getMemberIds()) {
                 if (memberId != senderId) {
                     ClientHandler member = connectedClients.get(memberId);
                     if (member != null) {
-                        Packet notification = new Packet(Command.VOICE_NOTE_DATA, Protocol.toJson(voiceNote));
                         member.send(notification);
-                        System.out.println("Nota de voz enviada a miembro " + memberId);
-                    } else {
-                        System.out.println("Miembro " + memberId + " no esta conectado");
+                        delivered++;
                     }
                 }
             }
+            System.out.println("Nota de voz enviada a " + delivered + " miembros conectados");
         });
     }
 
+    // Miembros del grupo salvo el remitente, o null si el grupo no existe. Una
+    // nota de voz por fragmentos los busca con el primero y reenvia a los que
+    // esten conectados cada fragmento, sin volver a consultar el grupo.
+    public int[] voiceNoteRecipients(int groupId, int senderId) {
+        return groupRepository.findById(groupId)
+                .map(group -> group.getMemberIds().stream()
+                        .mapToInt(Integer::intValue)
+                        .filter(memberId -> memberId != senderId)
+                        .toArray())
+                .orElse(null);
+    }
+
+    public boolean isGroupMember(int groupId, int userId) {
+        return groupRepository.findById(groupId)
+                .map(group -> group.getMemberIds().contains(userId))
+                .orElse(false);
+    }
+
     public void notifyGroupCall(Call call, int callerId) {
         groupRepository.findById(call.getReceiverId()).ifPresent(group -> {
+            Packet notification = new Packet(Command.CALL_REQUEST, call);
             for (int memberId : group.getMemberIds()) {
                 if (memberId != callerId) {
                     ClientHandler member = connectedClients.get(memberId);
                     if (member != null) {
-                        Packet notification = new Packet(Command.CALL_REQUEST, Protocol.toJson(call));
                         member.send(notification);
                     }
                 }
@@ -5,6 +5,21 @@ import java.nio.ByteBuffer;
 
 public class AudioPacket implements Serializable {
     private static final long serialVersionUID = 1L;
+    // senderId, receiverId, sequenceNumber, timestamp y dataLength
+    public static final int HEADER_BYTES = 24;
+    // Bit alto de receiverId: el destino es una llamada grupal y el resto es el id del grupo
+    public static final int GROUP_FLAG = 0x80000000;
+    // Siguiente bit: el destino es la sesion de medios de una llamada 1:1
+    // (chat.service.MediaSessionListener) y el resto es el id de sesion
+    public static final int SESSION_FLAG = 0x40000000;
+    // Valores del byte de codec que no llevan audio de llamada sino la
+    // transferencia fiable de notas de voz (chat.client.VoiceNoteTransfer)
+    public static final int VOICE_NOTE_DATA = 20;
+    public static final int VOICE_NOTE_ACK = 21;
+    // Paquete de paridad XOR de un grupo de paquetes de llamada (chat.audio.FecEncoder)
+    public static final int FEC_PARITY = 22;
+    // Informe periodico de calidad entre las partes de una llamada (chat.audio.QualityReport)
+    public static final int QUALITY_REPORT = 23;
     
     private int senderId;
     private int receiverId;
@@ -12,6 +27,8 @@ public class AudioPacket implements Serializable {
     private long timestamp;
     private byte[] audioData;
     private int dataLength;
+    // Codec de audioData (chat.audio.AudioCodecs); 0 = PCM
+    private int codecId;
     
     public AudioPacket() {
         this.timestamp = System.currentTimeMillis();
@@ -28,31 +45,28 @@ public class AudioPacket implements Serializable {
     
     // Serializar a bytes para UDP
     public byte[] toBytes() {
-        ByteBuffer buffer = ByteBuffer.allocate(24 + dataLength);
-        buffer.putInt(senderId);
-        buffer.putInt(receiverId);
-        buffer.putInt(sequenceNumber);
-        buffer.putLong(timestamp);
-        buffer.putInt(dataLength);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + dataLength);
+        AudioPacketView.encodeHeader(buffer, senderId, receiverId, sequenceNumber, timestamp, codecId, dataLength);
         if (audioData != null) {
             buffer.put(audioData);
         }
         return buffer.array();
     }
     
-    // Deserializar desde bytes
+    // Deserializar desde bytes. En el camino de cada datagrama es mejor leer
+    // con AudioPacketView, que no copia el audio.
     public static AudioPacket fromBytes(byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+        AudioPacketView view = new AudioPacketView().wrap(ByteBuffer.wrap(data));
         AudioPacket packet = new AudioPacket();
-        packet.senderId = buffer.getInt();
-        packet.receiverId = buffer.getInt();
-        packet.sequenceNumber = buffer.getInt();
-        packet.timestamp = buffer.getLong();
-        packet.dataLength = buffer.getInt();
+        packet.senderId = view.getSenderId();
+        packet.receiverId = view.getReceiverId();
+        packet.sequenceNumber = view.getSequenceNumber();
+        packet.timestamp = view.getTimestamp();
+        packet.dataLength = view.getDataLength();
+        packet.codecId = view.getCodecId();
         
         if (packet.dataLength > 0) {
-            packet.audioData = new byte[packet.dataLength];
-            buffer.get(packet.audioData);
+            packet.audioData = view.copyData();
         }
         
         return packet;
@@ -102,4 +116,12 @@ public class AudioPacket implements Serializable {
     public int getDataLength() {
         return dataLength;
     }
+    
+    public int getCodecId() {
+        return codecId;
+    }
+    
+    public void setCodecId(int codecId) {
+        this.codecId = codecId;
+    }
 }
@@ -0,0 +1,131 @@
+package chat.model;
+
+import java.nio.ByteBuffer;
+
+// Vista sobre un AudioPacket ya serializado: lee los campos de la cabecera en
+// posiciones fijas del ByteBuffer sin crear objetos ni copiar el audio. Una
+// misma vista se reutiliza con wrap() para cada datagrama, asi que no debe
+// guardarse despues de procesar el paquete. Mismo formato que toBytes():
+//   [senderId:4][receiverId:4][sequenceNumber:4][timestamp:8][codec:1][dataLength:3][audio]
+// El byte de codec es 0 (PCM) en los paquetes de antes, que usaban los cuatro
+// bytes para la longitud.
+public final class AudioPacketView {
+    static final int SENDER_OFFSET = 0;
+    static final int RECEIVER_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int TIMESTAMP_OFFSET = 12;
+    static final int LENGTH_OFFSET = 20;
+    private static final int LENGTH_MASK = 0x00FFFFFF;
+
+    private ByteBuffer buffer;
+    private int base;
+    private int limit;
+
+    // La vista empieza en la posicion actual del buffer y termina en su limite
+    public AudioPacketView wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.base = buffer.position();
+        this.limit = buffer.limit();
+        return this;
+    }
+
+    // Cabecera completa y un dataLength que cabe en lo recibido
+    public boolean isValid() {
+        if (limit - base < AudioPacket.HEADER_BYTES) {
+            return false;
+        }
+        return (buffer.get(base + LENGTH_OFFSET) & 0x80) == 0
+                && getDataLength() <= limit - base - AudioPacket.HEADER_BYTES;
+    }
+
+    public int getSenderId() {
+        return buffer.getInt(base + SENDER_OFFSET);
+    }
+
+    public int getReceiverId() {
+        return buffer.getInt(base + RECEIVER_OFFSET);
+    }
+
+    public boolean isGroupPacket() {
+        return (getReceiverId() & AudioPacket.GROUP_FLAG) != 0;
+    }
+
+    public int getGroupId() {
+        return getReceiverId() & ~AudioPacket.GROUP_FLAG;
+    }
+
+    public boolean isSessionPacket() {
+        return (getReceiverId() & (AudioPacket.GROUP_FLAG | AudioPacket.SESSION_FLAG)) == AudioPacket.SESSION_FLAG;
+    }
+
+    public int getSessionId() {
+        return getReceiverId() & ~AudioPacket.SESSION_FLAG;
+    }
+
+    public int getSequenceNumber() {
+        return buffer.getInt(base + SEQUENCE_OFFSET);
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(base + TIMESTAMP_OFFSET);
+    }
+
+    public int getDataLength() {
+        return buffer.getInt(base + LENGTH_OFFSET) & LENGTH_MASK;
+    }
+
+    // Codec del audio (ver chat.audio.AudioCodecs); 0 es PCM
+    public int getCodecId() {
+        return buffer.get(base + LENGTH_OFFSET) & 0x7F;
+    }
+
+    // Posicion absoluta del audio dentro del buffer envuelto
+    public int getDataOffset() {
+        return base + AudioPacket.HEADER_BYTES;
+    }
+
+    // Solo para quien necesita conservar el audio mas alla del datagrama
+    public byte[] copyData() {
+        byte[] data = new byte[getDataLength()];
+        buffer.get(getDataOffset(), data);
+        return data;
+    }
+
+    // Valor de receiverId para enviar audio a la llamada de un grupo
+    public static int groupReceiver(int groupId) {
+        return groupId | AudioPacket.GROUP_FLAG;
+    }
+
+    // Valor de receiverId para enviar audio por la sesion de una llamada 1:1
+    public static int sessionReceiver(int sessionId) {
+        return sessionId | AudioPacket.SESSION_FLAG;
+    }
+
+    // Escribe un paquete en la posicion actual de target y la avanza. El audio
+    // se toma de data[offset, offset + length).
+    public static void encode(ByteBuffer target, int senderId, int receiverId, int sequenceNumber,
+                              long timestamp, byte[] data, int offset, int length) {
+        encode(target, senderId, receiverId, sequenceNumber, timestamp, 0, data, offset, length);
+    }
+
+    public static void encode(ByteBuffer target, int senderId, int receiverId, int sequenceNumber,
+                              long timestamp, int codecId, byte[] data, int offset, int length) {
+        encodeHeader(target, senderId, receiverId, sequenceNumber, timestamp, codecId, length);
+        target.put(data, offset, length);
+    }
+
+    // Solo la cabecera, para quien ya tiene el audio en su sitio detras de ella
+    public static void encodeHeader(ByteBuffer target, int senderId, int receiverId, int sequenceNumber,
+                                    long timestamp, int length) {
+        encodeHeader(target, senderId, receiverId, sequenceNumber, timestamp, 0, length);
+    }
+
+    public static void encodeHeader(ByteBuffer target, int senderId, int receiverId, int sequenceNumber,
+                                    long timestamp, int codecId, int length) {
+        target.putInt(senderId);
+        target.putInt(receiverId);
+        target.putInt(sequenceNumber);
+        target.putLong(timestamp);
+        target.putInt((codecId << 24) | (length & LENGTH_MASK));
+    }
+}
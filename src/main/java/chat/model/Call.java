@@ -2,6 +2,7 @@ package chat.model;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class Call implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -20,6 +21,20 @@ public class Call implements Serializable {
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private int durationSeconds;
+    // Puerto UDP del VoiceServer para el audio de esta llamada; 0 = puerto por defecto
+    private int mediaPort;
+    // Sesion del VoiceServer que enruta el audio de la llamada; 0 = sin sesion
+    // (servidor de voz aparte), se direcciona por id de usuario
+    private int mediaSession;
+    // Codecs de audio que ofrece quien llama, por preferencia, y el elegido al
+    // aceptar; sin eleccion (clientes antiguos) se usa PCM
+    private List<String> audioCodecs;
+    private String audioCodec;
+    // Paquetes de audio por cada paridad FEC: quien llama ofrece los suyos y
+    // quien acepta deja el menor de los dos; 0 (o clientes antiguos) = sin FEC
+    private int audioFecFrames;
+    // Calidad medida en el servidor de voz al colgar; null si no hubo sesion
+    private CallQuality quality;
     
     public Call() {
         this.startTime = LocalDateTime.now();
@@ -111,6 +126,54 @@ public class Call implements Serializable {
         this.durationSeconds = durationSeconds;
     }
     
+    public int getMediaPort() {
+        return mediaPort;
+    }
+    
+    public void setMediaPort(int mediaPort) {
+        this.mediaPort = mediaPort;
+    }
+    
+    public int getMediaSession() {
+        return mediaSession;
+    }
+    
+    public void setMediaSession(int mediaSession) {
+        this.mediaSession = mediaSession;
+    }
+    
+    public List<String> getAudioCodecs() {
+        return audioCodecs;
+    }
+    
+    public void setAudioCodecs(List<String> audioCodecs) {
+        this.audioCodecs = audioCodecs;
+    }
+    
+    public String getAudioCodec() {
+        return audioCodec;
+    }
+    
+    public void setAudioCodec(String audioCodec) {
+        this.audioCodec = audioCodec;
+    }
+    
+    public int getAudioFecFrames() {
+        return audioFecFrames;
+    }
+    
+    public void setAudioFecFrames(int audioFecFrames) {
+        this.audioFecFrames = audioFecFrames;
+    }
+    
+    public CallQuality getQuality() {
+        return quality;
+    }
+    
+    public void setQuality(CallQuality quality) {
+        this.quality = quality;
+    }
+    
     public boolean isGroupCall() {
         return isGroupCall;
     }
@@ -0,0 +1,70 @@
+package chat.model;
+
+import java.io.Serializable;
+
+// Resumen de la calidad de los flujos de audio de una llamada: paquetes
+// recibidos, perdidos y desordenados, jitter entre llegadas (RFC 3550) y RTT.
+// Con varios flujos se suman los contadores y se toma el peor jitter y RTT.
+public class CallQuality implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long packetsReceived;
+    private long packetsLost;
+    private long packetsReordered;
+    private double jitterMillis;
+    // -1 = sin medir
+    private double rttMillis = -1;
+
+    public CallQuality() {
+    }
+
+    public CallQuality(long packetsReceived, long packetsLost, long packetsReordered,
+                       double jitterMillis, double rttMillis) {
+        this.packetsReceived = packetsReceived;
+        this.packetsLost = packetsLost;
+        this.packetsReordered = packetsReordered;
+        this.jitterMillis = jitterMillis;
+        this.rttMillis = rttMillis;
+    }
+
+    public void add(CallQuality other) {
+        packetsReceived += other.packetsReceived;
+        packetsLost += other.packetsLost;
+        packetsReordered += other.packetsReordered;
+        jitterMillis = Math.max(jitterMillis, other.jitterMillis);
+        rttMillis = Math.max(rttMillis, other.rttMillis);
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    public long getPacketsReordered() {
+        return packetsReordered;
+    }
+
+    public double getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public double getRttMillis() {
+        return rttMillis;
+    }
+
+    // Perdidos sobre esperados, de 0 a 1
+    public double getLossRate() {
+        long expected = packetsReceived + packetsLost;
+        return expected == 0 ? 0 : (double) packetsLost / expected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d recibidos, %d perdidos (%.1f%%), %d desordenados, jitter %.1f ms, RTT %s",
+                packetsReceived, packetsLost, 100 * getLossRate(), packetsReordered, jitterMillis,
+                rttMillis < 0 ? "sin medir" : String.format("%.0f ms", rttMillis));
+    }
+}
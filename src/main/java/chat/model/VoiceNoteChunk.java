@@ -0,0 +1,42 @@
+package chat.model;
+
+// Cabecera de un fragmento de nota de voz enviado mientras se graba. El
+// audio PCM del fragmento va adjunto al paquete en binario, no aqui; el
+// destino va en el sobre. Los fragmentos de una nota llevan el mismo noteId y
+// sequence consecutivos desde 0; el ultimo lleva last y la duracion total
+// (y puede no traer audio).
+public class VoiceNoteChunk {
+    private int senderId;
+    private int noteId;
+    private int sequence;
+    private boolean last;
+    private int durationMillis;
+
+    public VoiceNoteChunk(int senderId, int noteId, int sequence, boolean last, int durationMillis) {
+        this.senderId = senderId;
+        this.noteId = noteId;
+        this.sequence = sequence;
+        this.last = last;
+        this.durationMillis = durationMillis;
+    }
+
+    public int getSenderId() {
+        return senderId;
+    }
+
+    public int getNoteId() {
+        return noteId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public int getDurationMillis() {
+        return durationMillis;
+    }
+}
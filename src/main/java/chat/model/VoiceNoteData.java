@@ -1,5 +1,8 @@
 package chat.model;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
 public class VoiceNoteData {
@@ -39,6 +42,11 @@ public class VoiceNoteData {
         return Base64.getDecoder().decode(audioData);
     }
 
+    // Decodifica el audio a medida que se lee, sin crear el arreglo entero
+    public InputStream openAudioStream() {
+        return Base64.getDecoder().wrap(new ByteArrayInputStream(audioData.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
     public int getDurationSeconds() {
         return durationSeconds;
     }
@@ -0,0 +1,192 @@
+package chat.protocol;
+
+import chat.protocol.Protocol.Command;
+import chat.protocol.Protocol.Packet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Formato binario negociado en el saludo:
+//   [longitud:4][comando:1][flags:1][id:4][destino:4][grupo:4][longitud error:2][error]
+//   [longitud adjunto:4][adjunto][datos]
+// La longitud cuenta los bytes que siguen. El id solo esta si FLAG_REQUEST_ID,
+// destino y grupo si FLAG_ROUTE, el error si FLAG_ERROR, los bytes adjuntos
+// (audio, sin convertir) si FLAG_BINARY y los datos (JSON UTF-8) ocupan el
+// resto de la trama si FLAG_DATA.
+// Lo binario es el sobre; los datos siguen en JSON a proposito. Asi un mismo
+// paquete tiene un solo esquema en los dos formatos, Gson lo convierte
+// directamente desde los bytes de la trama sin crear texto intermedio, y el
+// servidor reenvia los datos tal cual llegaron tanto a clientes binarios como
+// JSON. Lo voluminoso (el audio de las notas) no va en los datos sino como
+// bytes adjuntos, que es donde un formato compacto ahorra de verdad.
+public class BinaryFrameCodec implements FrameCodec {
+    private static final int MAX_FRAME_BYTES = 32 * 1024 * 1024;
+    private static final int LENGTH_BYTES = 4;
+    private static final int FLAG_DATA = 0x01;
+    private static final int FLAG_ERROR = 0x02;
+    private static final int FLAG_REQUEST_ID = 0x04;
+    private static final int FLAG_ROUTE = 0x08;
+    private static final int FLAG_BINARY = 0x10;
+    private static final int MAX_ERROR_BYTES = 0xFFFF;
+
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_BYTES);
+    private byte[] frame;
+    private int frameFilled = 0;
+
+    @Override
+    public byte[] encode(Packet packet) {
+        byte[] frame = packet.getEncoded(Protocol.FORMAT_BINARY);
+        if (frame == null) {
+            frame = serialize(packet);
+            packet.setEncoded(Protocol.FORMAT_BINARY, frame);
+        }
+        return frame;
+    }
+
+    private static byte[] serialize(Packet packet) {
+        byte[] error = packet.getError() != null ? errorBytes(packet.getError()) : null;
+        int requestId = packet.getRequestId();
+        int flags = (packet.hasData() ? FLAG_DATA : 0) | (error != null ? FLAG_ERROR : 0)
+                | (requestId != 0 ? FLAG_REQUEST_ID : 0) | (packet.hasRoute() ? FLAG_ROUTE : 0)
+                | (packet.hasBinary() ? FLAG_BINARY : 0);
+
+        int headerLength = LENGTH_BYTES + 2 + (requestId != 0 ? 4 : 0) + (packet.hasRoute() ? 8 : 0)
+                + (error != null ? 2 + error.length : 0)
+                + (packet.hasBinary() ? 4 + packet.getBinaryLength() : 0);
+        int rawLength = packet.getRawLength();
+        if (rawLength >= 0) {
+            // Datos recibidos sin parsear (reenvio): se copian una sola vez a una
+            // trama del tamano exacto
+            byte[] frame = new byte[headerLength + rawLength];
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            buffer.putInt(frame.length - LENGTH_BYTES);
+            writeHeader(buffer, packet, flags, error);
+            packet.copyRawData(frame, headerLength);
+            return frame;
+        }
+
+        // Cabecera y datos se escriben en el mismo buffer; la longitud se rellena al final
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.position(LENGTH_BYTES);
+        writeHeader(header, packet, flags, error);
+        output.write(header.array(), 0, headerLength);
+        if (packet.hasData()) {
+            try {
+                Protocol.writeData(packet, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        byte[] frame = output.toByteArray();
+        ByteBuffer.wrap(frame).putInt(0, frame.length - LENGTH_BYTES);
+        return frame;
+    }
+
+    // La longitud del error ocupa 2 bytes: un texto mas largo se recorta sin
+    // partir un caracter UTF-8
+    private static byte[] errorBytes(String error) {
+        byte[] bytes = error.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= MAX_ERROR_BYTES) {
+            return bytes;
+        }
+        int length = MAX_ERROR_BYTES;
+        while ((bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static void writeHeader(ByteBuffer buffer, Packet packet, int flags, byte[] error) {
+        buffer.put((byte) packet.getCommand().getId());
+        buffer.put((byte) flags);
+        if ((flags & FLAG_REQUEST_ID) != 0) {
+            buffer.putInt(packet.getRequestId());
+        }
+        if ((flags & FLAG_ROUTE) != 0) {
+            buffer.putInt(packet.getReceiverId());
+            buffer.putInt(packet.getGroupId());
+        }
+        if (error != null) {
+            buffer.putShort((short) error.length);
+            buffer.put(error);
+        }
+        if ((flags & FLAG_BINARY) != 0) {
+            buffer.putInt(packet.getBinaryLength());
+            packet.copyBinary(buffer.array(), buffer.arrayOffset() + buffer.position());
+            buffer.position(buffer.position() + packet.getBinaryLength());
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer input, Consumer<Packet> sink) throws IOException {
+        while (input.hasRemaining()) {
+            if (frame == null) {
+                while (lengthBuffer.hasRemaining() && input.hasRemaining()) {
+                    lengthBuffer.put(input.get());
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return;
+                }
+                int length = lengthBuffer.getInt(0);
+                if (length < 2 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Longitud de trama invalida: " + length);
+                }
+                frame = new byte[length];
+                frameFilled = 0;
+            }
+
+            int count = Math.min(frame.length - frameFilled, input.remaining());
+            input.get(frame, frameFilled, count);
+            frameFilled += count;
+
+            if (frameFilled == frame.length) {
+                byte[] complete = frame;
+                frame = null;
+                lengthBuffer.clear();
+                sink.accept(parse(complete));
+            }
+        }
+    }
+
+    private Packet parse(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        Command command = Command.fromId(buffer.get() & 0xFF);
+        int flags = buffer.get();
+
+        Packet packet = new Packet(command);
+        if ((flags & FLAG_REQUEST_ID) != 0) {
+            packet.setRequestId(buffer.getInt());
+        }
+        if ((flags & FLAG_ROUTE) != 0) {
+            packet.setRoute(buffer.getInt(), buffer.getInt());
+        }
+        if ((flags & FLAG_ERROR) != 0) {
+            int errorLength = buffer.getShort() & 0xFFFF;
+            if (errorLength > buffer.remaining()) {
+                throw new IllegalArgumentException("Longitud de error invalida: " + errorLength);
+            }
+            packet.setError(new String(body, buffer.position(), errorLength, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + errorLength);
+        }
+        if ((flags & FLAG_BINARY) != 0) {
+            // Se queda en la trama recibida, sin copiarlo
+            int binaryLength = buffer.getInt();
+            if (binaryLength < 0 || binaryLength > buffer.remaining()) {
+                throw new IllegalArgumentException("Longitud de adjunto invalida: " + binaryLength);
+            }
+            packet.setBinary(body, buffer.position(), binaryLength);
+            buffer.position(buffer.position() + binaryLength);
+        }
+        if ((flags & FLAG_DATA) != 0) {
+            packet.setRawData(body, buffer.position(), buffer.remaining());
+        }
+        return packet;
+    }
+}
@@ -0,0 +1,75 @@
+package chat.protocol;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+// Lado emisor de la compresion negociada. Cada trama se envia como un bloque
+//   [tipo:1][longitud:4][contenido]
+// RAW lleva la trama tal cual; DEFLATE lleva la salida de un Deflater que se
+// mantiene durante toda la conexion y se vacia con SYNC_FLUSH en cada bloque,
+// asi que las tramas aprovechan el diccionario de las anteriores. Las tramas
+// pequenas no compensan y van en RAW.
+// No es thread-safe: la usa solo el hilo que escribe en el socket.
+public class BlockCompressor {
+    public static final int TYPE_RAW = 0;
+    public static final int TYPE_DEFLATE = 1;
+    public static final int HEADER_BYTES = 5;
+
+    private final Deflater deflater;
+    private final int minCompressBytes;
+    private final CompressionStats stats = new CompressionStats();
+    private byte[] output = new byte[16 * 1024];
+
+    public BlockCompressor(int level, int minCompressBytes) {
+        this.deflater = new Deflater(level, true);
+        this.minCompressBytes = minCompressBytes;
+    }
+
+    public byte[] compress(byte[] frame) {
+        if (frame.length < minCompressBytes) {
+            byte[] block = new byte[HEADER_BYTES + frame.length];
+            writeHeader(block, TYPE_RAW, frame.length);
+            System.arraycopy(frame, 0, block, HEADER_BYTES, frame.length);
+            stats.recordBytes(frame.length, block.length);
+            stats.countBlock(false);
+            return block;
+        }
+
+        long start = CompressionStats.cpuTime();
+        deflater.setInput(frame);
+        int length = HEADER_BYTES;
+        while (true) {
+            if (length == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            int available = output.length - length;
+            int written = deflater.deflate(output, length, available, Deflater.SYNC_FLUSH);
+            length += written;
+            // Con SYNC_FLUSH el bloque esta completo cuando sobra espacio en la salida
+            if (written < available) {
+                break;
+            }
+        }
+
+        byte[] block = Arrays.copyOf(output, length);
+        writeHeader(block, TYPE_DEFLATE, length - HEADER_BYTES);
+        stats.recordCpu(CompressionStats.cpuTime() - start);
+        stats.recordBytes(frame.length, block.length);
+        stats.countBlock(true);
+        return block;
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    public void close() {
+        deflater.end();
+    }
+
+    private static void writeHeader(byte[] block, int type, int length) {
+        block[0] = (byte) type;
+        ByteBuffer.wrap(block, 1, 4).putInt(length);
+    }
+}
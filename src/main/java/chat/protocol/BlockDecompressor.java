@@ -0,0 +1,95 @@
+package chat.protocol;
+
+import chat.protocol.Protocol.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Lado receptor de BlockCompressor: separa los bloques, descomprime los DEFLATE
+// con un Inflater persistente y pasa los bytes resultantes al FrameCodec de la
+// conexion. Los bloques se procesan a medida que llegan, sin esperar a tenerlos
+// completos, y el limite de tamano de trama lo sigue aplicando el codec.
+public class BlockDecompressor {
+    private static final int MAX_BLOCK_BYTES = 32 * 1024 * 1024;
+
+    private final Inflater inflater = new Inflater(true);
+    private final CompressionStats stats = new CompressionStats();
+    private final ByteBuffer header = ByteBuffer.allocate(BlockCompressor.HEADER_BYTES);
+    private final byte[] output = new byte[32 * 1024];
+    private int blockType = -1;
+    private int blockRemaining;
+
+    public void decode(ByteBuffer input, FrameCodec codec, Consumer<Packet> sink) throws IOException {
+        while (input.hasRemaining()) {
+            if (blockType < 0) {
+                while (header.hasRemaining() && input.hasRemaining()) {
+                    header.put(input.get());
+                }
+                if (header.hasRemaining()) {
+                    return;
+                }
+                blockType = header.get(0);
+                blockRemaining = header.getInt(1);
+                header.clear();
+                stats.recordBytes(0, BlockCompressor.HEADER_BYTES);
+                if ((blockType != BlockCompressor.TYPE_RAW && blockType != BlockCompressor.TYPE_DEFLATE)
+                        || blockRemaining < 0 || blockRemaining > MAX_BLOCK_BYTES) {
+                    throw new IOException("Bloque comprimido invalido: tipo " + blockType + ", " + blockRemaining + " bytes");
+                }
+            }
+
+            int count = Math.min(blockRemaining, input.remaining());
+            ByteBuffer chunk = input.duplicate();
+            chunk.limit(chunk.position() + count);
+            input.position(input.position() + count);
+            blockRemaining -= count;
+
+            if (blockType == BlockCompressor.TYPE_RAW) {
+                stats.recordBytes(count, count);
+                codec.decode(chunk, sink);
+            } else {
+                inflate(chunk, codec, sink);
+            }
+
+            if (blockRemaining == 0) {
+                stats.countBlock(blockType == BlockCompressor.TYPE_DEFLATE);
+                blockType = -1;
+            }
+        }
+    }
+
+    private void inflate(ByteBuffer chunk, FrameCodec codec, Consumer<Packet> sink) throws IOException {
+        long start = CompressionStats.cpuTime();
+        int compressed = chunk.remaining();
+        int inflated = 0;
+        inflater.setInput(chunk.array(), chunk.arrayOffset() + chunk.position(), compressed);
+        try {
+            int count;
+            while ((count = inflater.inflate(output)) > 0 || !inflater.needsInput()) {
+                if (count == 0) {
+                    // Sin salida y sin pedir entrada: diccionario o stream corrupto
+                    throw new IOException("Bloque comprimido corrupto");
+                }
+                inflated += count;
+                stats.recordCpu(CompressionStats.cpuTime() - start);
+                codec.decode(ByteBuffer.wrap(output, 0, count), sink);
+                start = CompressionStats.cpuTime();
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque comprimido corrupto", e);
+        }
+        stats.recordCpu(CompressionStats.cpuTime() - start);
+        stats.recordBytes(inflated, compressed);
+    }
+
+    public CompressionStats getStats() {
+        return stats;
+    }
+
+    public void close() {
+        inflater.end();
+    }
+}
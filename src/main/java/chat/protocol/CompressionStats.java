@@ -0,0 +1,67 @@
+package chat.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Contadores de una conexion comprimida: bytes antes y despues de comprimir,
+// tramas que pasaron sin comprimir y tiempo de CPU gastado en deflate/inflate
+public class CompressionStats {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong compressedFrames = new AtomicLong();
+    private final AtomicLong bypassedFrames = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+
+    static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void recordBytes(int raw, int wire) {
+        rawBytes.addAndGet(raw);
+        wireBytes.addAndGet(wire);
+    }
+
+    void countBlock(boolean compressed) {
+        (compressed ? compressedFrames : bypassedFrames).incrementAndGet();
+    }
+
+    void recordCpu(long nanos) {
+        cpuNanos.addAndGet(nanos);
+    }
+
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    public long getCompressedFrames() {
+        return compressedFrames.get();
+    }
+
+    public long getBypassedFrames() {
+        return bypassedFrames.get();
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos.get();
+    }
+
+    // Bytes en el cable por cada byte original (menor es mejor)
+    public double getRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1.0 : (double) wireBytes.get() / raw;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d -> %d bytes (%.0f%%), %d tramas comprimidas, %d sin comprimir, %.1f ms CPU",
+                getRawBytes(), getWireBytes(), getRatio() * 100, getCompressedFrames(), getBypassedFrames(),
+                getCpuNanos() / 1_000_000.0);
+    }
+}
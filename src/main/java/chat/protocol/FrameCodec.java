@@ -0,0 +1,18 @@
+package chat.protocol;
+
+import chat.protocol.Protocol.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+// Convierte paquetes en tramas y viceversa. Cada conexion usa su propia
+// instancia porque el decodificador guarda las tramas incompletas.
+public interface FrameCodec {
+    // La trama se guarda en el paquete y puede compartirse con otras
+    // conexiones, asi que quien la recibe no debe modificarla
+    byte[] encode(Packet packet);
+
+    // Consume todos los bytes disponibles y entrega los paquetes completos
+    void decode(ByteBuffer input, Consumer<Packet> sink) throws IOException;
+}
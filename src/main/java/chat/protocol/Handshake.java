@@ -0,0 +1,58 @@
+package chat.protocol;
+
+import java.io.IOException;
+
+// Saludo al conectar: "CJJ" + version + formato + flags. El servidor responde
+// con el mismo saludo indicando el formato aceptado y las flags que activa.
+// Los clientes antiguos no saludan y empiezan directamente con '{', asi que se
+// atienden con JSON por lineas.
+// Version 2: los datos del paquete van como subarbol JSON, no como texto.
+// Version 3: id de correlacion en peticiones y respuestas.
+// Version 4: byte de flags (compresion).
+// Version 5: destino en el sobre para reenviar notas de voz sin leer los datos.
+// Version 6: bytes adjuntos al paquete y notas de voz por fragmentos.
+public final class Handshake {
+    public static final int VERSION = 6;
+    public static final int LENGTH = 6;
+    // Bloques comprimidos con deflate en ambos sentidos (ver BlockCompressor)
+    public static final int FLAG_DEFLATE = 0x01;
+    private static final byte[] MAGIC = {'C', 'J', 'J'};
+
+    public enum WireFormat {
+        JSON, BINARY
+    }
+
+    private Handshake() {
+    }
+
+    public static boolean isHandshakeStart(byte firstByte) {
+        return firstByte == MAGIC[0];
+    }
+
+    public static byte[] hello(WireFormat format, int flags) {
+        return new byte[]{MAGIC[0], MAGIC[1], MAGIC[2], (byte) VERSION, (byte) format.ordinal(), (byte) flags};
+    }
+
+    public static WireFormat parse(byte[] hello) throws IOException {
+        if (hello.length != LENGTH || hello[0] != MAGIC[0] || hello[1] != MAGIC[1] || hello[2] != MAGIC[2]) {
+            throw new IOException("Saludo de protocolo invalido");
+        }
+        if (hello[3] != VERSION) {
+            throw new IOException("Version de protocolo no soportada: " + hello[3]);
+        }
+        int format = hello[4];
+        if (format < 0 || format >= WireFormat.values().length) {
+            throw new IOException("Formato de trama desconocido: " + format);
+        }
+        return WireFormat.values()[format];
+    }
+
+    // Solo sobre un saludo ya validado con parse
+    public static int flags(byte[] hello) {
+        return hello[5] & 0xFF;
+    }
+
+    public static FrameCodec newCodec(WireFormat format) {
+        return format == WireFormat.BINARY ? new BinaryFrameCodec() : new JsonLineCodec();
+    }
+}
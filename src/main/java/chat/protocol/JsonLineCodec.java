@@ -0,0 +1,100 @@
+package chat.protocol;
+
+import chat.protocol.Protocol.Packet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Formato original: un paquete JSON por linea. Los clientes que no negocian
+// reciben los datos como texto JSON escapado, igual que antes del sobre tipado.
+public class JsonLineCodec implements FrameCodec {
+    private static final int MAX_LINE_BYTES = 32 * 1024 * 1024;
+
+    private final boolean legacyData;
+    private byte[] pending = new byte[1024];
+    private int length = 0;
+
+    public JsonLineCodec() {
+        this(false);
+    }
+
+    public JsonLineCodec(boolean legacyData) {
+        this.legacyData = legacyData;
+    }
+
+    @Override
+    public byte[] encode(Packet packet) {
+        int format = legacyData ? Protocol.FORMAT_JSON_LEGACY : Protocol.FORMAT_JSON;
+        byte[] frame = packet.getEncoded(format);
+        if (frame == null) {
+            if (legacyData) {
+                frame = (Protocol.serializeLegacy(packet) + "\n").getBytes(StandardCharsets.UTF_8);
+            } else if (packet.getRawLength() >= 0 && packet.isRawDataSingleLine()) {
+                frame = Protocol.serializeRawLine(packet);
+            } else {
+                frame = serialize(packet);
+            }
+            packet.setEncoded(format, frame);
+        }
+        return frame;
+    }
+
+    private static byte[] serialize(Packet packet) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        try {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            Protocol.serialize(packet, writer);
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public void decode(ByteBuffer input, Consumer<Packet> sink) throws IOException {
+        byte[] array = input.array();
+        int start = input.arrayOffset() + input.position();
+        int end = input.arrayOffset() + input.limit();
+        int lineStart = start;
+
+        for (int i = start; i < end; i++) {
+            if (array[i] == '\n') {
+                append(array, lineStart, i - lineStart);
+                int lineEnd = length;
+                if (lineEnd > 0 && pending[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                String line = new String(pending, 0, lineEnd, StandardCharsets.UTF_8);
+                length = 0;
+                lineStart = i + 1;
+                sink.accept(Protocol.deserialize(line));
+            }
+        }
+
+        append(array, lineStart, end - lineStart);
+        input.position(input.limit());
+    }
+
+    private void append(byte[] source, int offset, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (length + count > MAX_LINE_BYTES) {
+            throw new IOException("Linea demasiado larga: " + (length + count) + " bytes");
+        }
+        if (length + count > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, length + count));
+        }
+        System.arraycopy(source, offset, pending, length, count);
+        length += count;
+    }
+}
@@ -1,21 +1,33 @@
 package chat.protocol;
 
-import com.google.gson.*;
-import java.lang.reflect.Type;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
-public class LocalDateTimeAdapter implements JsonSerializer<LocalDateTime>, JsonDeserializer<LocalDateTime> {
+// TypeAdapter en streaming: no crea un JsonElement intermedio por cada fecha
+public class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
     private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-    
+
     @Override
-    public JsonElement serialize(LocalDateTime dateTime, Type type, JsonSerializationContext context) {
-        return new JsonPrimitive(dateTime.format(formatter));
+    public void write(JsonWriter out, LocalDateTime dateTime) throws IOException {
+        if (dateTime == null) {
+            out.nullValue();
+            return;
+        }
+        out.value(dateTime.format(formatter));
     }
-    
+
     @Override
-    public LocalDateTime deserialize(JsonElement json, Type type, JsonDeserializationContext context) 
-            throws JsonParseException {
-        return LocalDateTime.parse(json.getAsString(), formatter);
+    public LocalDateTime read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return LocalDateTime.parse(in.nextString(), formatter);
     }
 }
@@ -1,46 +1,119 @@
 package chat.protocol;
 
-import chat.model.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
 
 public class Protocol {
     private static final Gson gson = new GsonBuilder()
             .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
+            .registerTypeAdapter(Packet.class, new PacketAdapter())
             .create();
 
     public enum Command {
         // Autenticación
-        LOGIN, REGISTER, LOGOUT,
+        LOGIN(1), REGISTER(2), LOGOUT(3),
 
         // Mensajes
-        SEND_MESSAGE, RECEIVE_MESSAGE, GET_HISTORY,
+        SEND_MESSAGE(10), RECEIVE_MESSAGE(11), GET_HISTORY(12),
 
-        VOICE_NOTE_DATA,
+        VOICE_NOTE_DATA(13),
+        // Fragmento de una nota de voz que se envia mientras se graba
+        VOICE_NOTE_CHUNK(14),
 
         // Grupos
-        CREATE_GROUP, ADD_TO_GROUP, SEND_GROUP_MESSAGE, GET_GROUP_MESSAGES, GET_USER_GROUPS,
+        CREATE_GROUP(20), ADD_TO_GROUP(21), SEND_GROUP_MESSAGE(22), GET_GROUP_MESSAGES(23), GET_USER_GROUPS(24),
 
         // Llamadas
-        CALL_REQUEST, CALL_ACCEPT, CALL_REJECT, CALL_END,
+        CALL_REQUEST(30), CALL_ACCEPT(31), CALL_REJECT(32), CALL_END(33),
 
         // Usuarios
-        GET_USERS, GET_USER_STATUS, UPDATE_STATUS,
+        GET_USERS(40), GET_USER_STATUS(41), UPDATE_STATUS(42),
 
         // Respuestas
-        SUCCESS, ERROR, NOTIFICATION
+        SUCCESS(50), ERROR(51), NOTIFICATION(52),
+
+        // Lote de paquetes en una sola trama; se responde con la lista de respuestas
+        BATCH(60);
+
+        private static final Command[] BY_ID = new Command[256];
+
+        static {
+            for (Command command : values()) {
+                BY_ID[command.id] = command;
+            }
+        }
+
+        // Identificador de un byte usado en el formato binario; no debe cambiar
+        private final int id;
+
+        Command(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public static Command fromId(int id) {
+            Command command = id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+            if (command == null) {
+                throw new IllegalArgumentException("Comando desconocido: " + id);
+            }
+            return command;
+        }
     }
 
+    // Formatos de trama cuya codificacion se guarda en el propio paquete
+    static final int FORMAT_JSON_LEGACY = 0;
+    static final int FORMAT_JSON = 1;
+    static final int FORMAT_BINARY = 2;
+    private static final int FORMAT_COUNT = 3;
+
+    // Sobre de cada trama. Los datos van como un subarbol JSON real: al enviar,
+    // el objeto se escribe directamente en el sobre; al recibir, se conserva el
+    // arbol y se convierte al tipo pedido sin volver a parsear texto.
     public static class Packet {
         private Command command;
-        private String data;
+        private int requestId;
+        private int receiverId;
+        private int groupId;
+        private Object payload;
+        private JsonElement data;
+        private byte[] rawData;
+        private int rawOffset;
+        private int rawLength;
+        // Resultado de checkRawData sobre los datos sin parsear; se calcula
+        // una sola vez por paquete y forward() lo conserva
+        private volatile int rawCheck = RAW_UNCHECKED;
         private String error;
+        // Bytes opacos que acompanan a los datos (audio): en binario van tal
+        // cual tras la cabecera, en JSON como Base64 en "bin"
+        private byte[] binary;
+        private int binaryOffset;
+        private int binaryLength;
+        // Trama ya codificada por formato. Un mismo paquete enviado a varios
+        // destinatarios se codifica una vez y todos comparten el mismo arreglo,
+        // que nadie debe modificar.
+        private volatile byte[][] encoded;
 
-        public Packet(Command command, String data) {
+        public Packet(Command command, Object payload) {
             this.command = command;
-            this.data = data;
+            this.payload = payload;
         }
 
         public Packet(Command command) {
@@ -51,12 +124,177 @@ public class Protocol {
             return command;
         }
 
+        // Id de correlacion: la respuesta lleva el mismo id que la peticion.
+        // 0 para notificaciones y para clientes que no lo usan.
+        public int getRequestId() {
+            return requestId;
+        }
+
+        public void setRequestId(int requestId) {
+            this.requestId = requestId;
+            this.encoded = null;
+        }
+
+        // Destino en el sobre para reenviar el paquete sin leer sus datos
+        // (notas de voz). 0 si no aplica.
+        public int getReceiverId() {
+            return receiverId;
+        }
+
+        public int getGroupId() {
+            return groupId;
+        }
+
+        public boolean hasRoute() {
+            return receiverId != 0 || groupId != 0;
+        }
+
+        public void setRoute(int receiverId, int groupId) {
+            this.receiverId = receiverId;
+            this.groupId = groupId;
+            this.encoded = null;
+        }
+
+        // Paquete nuevo con el mismo comando y los mismos datos, sin copiarlos
+        // ni convertirlos: los bytes recibidos se reenvian tal cual
+        public Packet forward() {
+            Packet copy = new Packet(command, payload);
+            copy.data = data;
+            copy.rawData = rawData;
+            copy.rawOffset = rawOffset;
+            copy.rawLength = rawLength;
+            copy.rawCheck = rawCheck;
+            copy.binary = binary;
+            copy.binaryOffset = binaryOffset;
+            copy.binaryLength = binaryLength;
+            return copy;
+        }
+
+        // Datos como texto, para comandos cuyo dato es un nombre o un id
         public String getData() {
+            if (payload instanceof String) {
+                return (String) payload;
+            }
+            JsonElement element = getDataElement();
+            if (element == null || element.isJsonNull()) {
+                return null;
+            }
+            return element.isJsonPrimitive() ? element.getAsString() : element.toString();
+        }
+
+        public <T> T getData(Class<T> type) {
+            if (type.isInstance(payload)) {
+                return type.cast(payload);
+            }
+            return getData((Type) type);
+        }
+
+        public <T> T getData(Type type) {
+            if (data == null && rawData != null) {
+                // Trama binaria: se convierte directamente desde los bytes recibidos
+                return gson.fromJson(rawReader(), type);
+            }
+            JsonElement element = getDataElement();
+            if (element == null) {
+                return null;
+            }
+            // Los clientes antiguos envian el objeto como texto JSON dentro de "data"
+            if (type != String.class && element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+                return gson.fromJson(element.getAsString(), type);
+            }
+            return gson.fromJson(element, type);
+        }
+
+        public JsonElement getDataElement() {
+            if (data == null && payload != null) {
+                data = gson.toJsonTree(payload);
+            } else if (data == null && rawData != null) {
+                data = JsonParser.parseReader(rawReader());
+            }
             return data;
         }
 
-        public void setData(String data) {
+        public boolean hasData() {
+            return payload != null || rawData != null || (data != null && !data.isJsonNull());
+        }
+
+        public void setData(JsonElement data) {
             this.data = data;
+            this.payload = null;
+            this.rawData = null;
+            this.encoded = null;
+        }
+
+        // Datos como JSON UTF-8 sin parsear; se leen al pedirlos
+        void setRawData(byte[] bytes, int offset, int length) {
+            this.rawData = bytes;
+            this.rawOffset = offset;
+            this.rawLength = length;
+            this.data = null;
+            this.payload = null;
+            this.encoded = null;
+        }
+
+        // Longitud de los datos recibidos sin parsear, o -1 si no los hay
+        int getRawLength() {
+            return payload == null && data == null && rawData != null ? rawLength : -1;
+        }
+
+        // Los datos recibidos sin parsear son un unico valor JSON valido. Quien
+        // los reenvia tal cual debe comprobarlo antes: nadie mas los lee.
+        public boolean hasValidRawData() {
+            return rawCheck() != RAW_INVALID;
+        }
+
+        // Ademas no tienen bytes de control (saltos de linea), asi que pueden
+        // copiarse dentro de una linea JSON sin cortarla
+        boolean isRawDataSingleLine() {
+            return rawCheck() == RAW_VALID_LINE;
+        }
+
+        private int rawCheck() {
+            if (getRawLength() < 0) {
+                return RAW_VALID_LINE;
+            }
+            int check = rawCheck;
+            if (check == RAW_UNCHECKED) {
+                check = checkRawData(rawData, rawOffset, rawLength);
+                rawCheck = check;
+            }
+            return check;
+        }
+
+        void copyRawData(byte[] target, int offset) {
+            System.arraycopy(rawData, rawOffset, target, offset, rawLength);
+        }
+
+        private Reader rawReader() {
+            return new InputStreamReader(new ByteArrayInputStream(rawData, rawOffset, rawLength), StandardCharsets.UTF_8);
+        }
+
+        // Los bytes no se copian: quien los pasa no debe modificarlos despues
+        public void setBinary(byte[] bytes, int offset, int length) {
+            this.binary = bytes;
+            this.binaryOffset = offset;
+            this.binaryLength = length;
+            this.encoded = null;
+        }
+
+        public boolean hasBinary() {
+            return binary != null;
+        }
+
+        // Vista de solo lectura de los bytes adjuntos, o null si no hay
+        public ByteBuffer getBinary() {
+            return binary != null ? ByteBuffer.wrap(binary, binaryOffset, binaryLength).slice().asReadOnlyBuffer() : null;
+        }
+
+        int getBinaryLength() {
+            return binary != null ? binaryLength : 0;
+        }
+
+        void copyBinary(byte[] target, int offset) {
+            System.arraycopy(binary, binaryOffset, target, offset, binaryLength);
         }
 
         public String getError() {
@@ -65,17 +303,224 @@ public class Protocol {
 
         public void setError(String error) {
             this.error = error;
+            this.encoded = null;
+        }
+
+        byte[] getEncoded(int format) {
+            byte[][] frames = encoded;
+            return frames != null ? frames[format] : null;
+        }
+
+        // Si dos hilos codifican a la vez ambos obtienen tramas identicas
+        void setEncoded(int format, byte[] frame) {
+            byte[][] frames = encoded;
+            if (frames == null) {
+                frames = new byte[FORMAT_COUNT][];
+                encoded = frames;
+            }
+            frames[format] = frame;
+        }
+    }
+
+    // Escribe y lee el sobre en una sola pasada con JsonWriter/JsonReader
+    private static class PacketAdapter extends TypeAdapter<Packet> {
+        @Override
+        public void write(JsonWriter out, Packet packet) throws IOException {
+            out.beginObject();
+            out.name("command").value(packet.command.name());
+            if (packet.requestId != 0) {
+                out.name("id").value(packet.requestId);
+            }
+            if (packet.receiverId != 0) {
+                out.name("to").value(packet.receiverId);
+            }
+            if (packet.groupId != 0) {
+                out.name("group").value(packet.groupId);
+            }
+            if (packet.hasData()) {
+                out.name("data");
+                writeData(packet, out);
+            }
+            if (packet.error != null) {
+                out.name("error").value(packet.error);
+            }
+            writeBinary(packet, out);
+            out.endObject();
+        }
+
+        @Override
+        public Packet read(JsonReader in) throws IOException {
+            Packet packet = new Packet(null);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "command":
+                        packet.command = Command.valueOf(in.nextString());
+                        break;
+                    case "id":
+                        packet.requestId = in.nextInt();
+                        break;
+                    case "to":
+                        packet.receiverId = in.nextInt();
+                        break;
+                    case "group":
+                        packet.groupId = in.nextInt();
+                        break;
+                    case "data":
+                        packet.data = JsonParser.parseReader(in);
+                        break;
+                    case "error":
+                        packet.error = in.nextString();
+                        break;
+                    case "bin":
+                        byte[] bytes = Base64.getDecoder().decode(in.nextString());
+                        packet.setBinary(bytes, 0, bytes.length);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return packet;
+        }
+    }
+
+    private static void writeBinary(Packet packet, JsonWriter out) throws IOException {
+        if (packet.binary != null) {
+            out.name("bin").value(Base64.getEncoder().encodeToString(
+                    Arrays.copyOfRange(packet.binary, packet.binaryOffset, packet.binaryOffset + packet.binaryLength)));
+        }
+    }
+
+    private static void writeData(Packet packet, JsonWriter out) throws IOException {
+        if (packet.payload != null) {
+            gson.toJson(packet.payload, packet.payload.getClass(), out);
+        } else if (packet.getRawLength() >= 0 && packet.isRawDataSingleLine()) {
+            // Datos recibidos en binario y ya comprobados: se escriben sin parsear
+            out.jsonValue(new String(packet.rawData, packet.rawOffset, packet.rawLength, StandardCharsets.UTF_8));
+        } else {
+            gson.toJson(packet.getDataElement(), out);
         }
     }
 
     public static String serialize(Packet packet) {
-        return gson.toJson(packet);
+        return gson.toJson(packet, Packet.class);
     }
 
     public static Packet deserialize(String json) {
         return gson.fromJson(json, Packet.class);
     }
 
+    public static void serialize(Packet packet, Writer writer) throws IOException {
+        JsonWriter out = gson.newJsonWriter(writer);
+        gson.toJson(packet, Packet.class, out);
+        out.flush();
+    }
+
+    // Linea JSON de un paquete con datos recibidos sin parsear (reenvio): el
+    // sobre se serializa sin datos y los bytes recibidos se copian detras tal
+    // cual, en una trama del tamano exacto
+    static byte[] serializeRawLine(Packet packet) {
+        Packet envelope = new Packet(packet.command);
+        envelope.requestId = packet.requestId;
+        envelope.receiverId = packet.receiverId;
+        envelope.groupId = packet.groupId;
+        envelope.error = packet.error;
+        envelope.binary = packet.binary;
+        envelope.binaryOffset = packet.binaryOffset;
+        envelope.binaryLength = packet.binaryLength;
+        byte[] head = serialize(envelope).getBytes(StandardCharsets.UTF_8);
+
+        // head termina en '}': se sustituye por ,"data":<datos>}\n
+        byte[] frame = new byte[head.length - 1 + RAW_DATA_FIELD.length + packet.rawLength + 2];
+        System.arraycopy(head, 0, frame, 0, head.length - 1);
+        int position = head.length - 1;
+        System.arraycopy(RAW_DATA_FIELD, 0, frame, position, RAW_DATA_FIELD.length);
+        position += RAW_DATA_FIELD.length;
+        packet.copyRawData(frame, position);
+        frame[frame.length - 2] = '}';
+        frame[frame.length - 1] = '\n';
+        return frame;
+    }
+
+    private static final int RAW_UNCHECKED = 0;
+    private static final int RAW_INVALID = 1;
+    private static final int RAW_VALID = 2;
+    private static final int RAW_VALID_LINE = 3;
+
+    // Un unico valor JSON estricto y nada detras; si ademas no hay bytes de
+    // control, una linea. Lo que no lo cumpla no se copia tal cual en una
+    // trama JSON: un salto de linea o un objeto sin cerrar dejarian al emisor
+    // escribir paquetes o campos del sobre en la conexion del destinatario.
+    static int checkRawData(byte[] bytes, int offset, int length) {
+        try {
+            JsonReader reader = new JsonReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes, offset, length), StandardCharsets.UTF_8));
+            reader.setStrictness(Strictness.STRICT);
+            reader.skipValue();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return RAW_INVALID;
+            }
+        } catch (IOException | RuntimeException e) {
+            return RAW_INVALID;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            if ((bytes[i] & 0xFF) < 0x20) {
+                return RAW_VALID;
+            }
+        }
+        return RAW_VALID_LINE;
+    }
+
+    private static final byte[] RAW_DATA_FIELD = ",\"data\":".getBytes(StandardCharsets.UTF_8);
+
+    // Formato anterior, con los datos como texto JSON escapado dentro del sobre.
+    // Solo se usa para clientes que no negocian el protocolo.
+    public static String serializeLegacy(Packet packet) {
+        StringWriter writer = new StringWriter();
+        try {
+            JsonWriter out = gson.newJsonWriter(writer);
+            out.beginObject();
+            out.name("command").value(packet.command.name());
+            if (packet.requestId != 0) {
+                out.name("id").value(packet.requestId);
+            }
+            if (packet.hasData()) {
+                out.name("data").value(packet.payload instanceof String
+                        ? (String) packet.payload
+                        : packet.getDataElement().isJsonPrimitive()
+                                ? packet.getDataElement().getAsString()
+                                : gson.toJson(packet.getDataElement()));
+            }
+            if (packet.error != null) {
+                out.name("error").value(packet.error);
+            }
+            writeBinary(packet, out);
+            out.endObject();
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    // Solo los datos del paquete como JSON UTF-8, para el formato binario
+    public static void writeData(Packet packet, OutputStream output) throws IOException {
+        if (packet.getRawLength() >= 0) {
+            output.write(packet.rawData, packet.rawOffset, packet.rawLength);
+            return;
+        }
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        JsonWriter out = gson.newJsonWriter(writer);
+        writeData(packet, out);
+        out.flush();
+    }
+
     public static <T> String toJson(T object) {
         return gson.toJson(object);
     }
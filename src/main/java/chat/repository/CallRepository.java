@@ -1,6 +1,7 @@
 package chat.repository;
 
 import chat.model.Call;
+import chat.model.CallQuality;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,5 +11,6 @@ public interface CallRepository {
     List<Call> findByUserId(int userId);
     List<Call> findByGroupId(int groupId);
     void updateCallStatus(int callId, String status);
-    void endCall(int callId, int durationSeconds);
+    // quality puede ser null si no se midio
+    void endCall(int callId, int durationSeconds, CallQuality quality);
 }
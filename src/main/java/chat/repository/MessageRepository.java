@@ -5,6 +5,7 @@ import java.util.List;
 
 public interface MessageRepository {
     Message save(Message message);
+    List<Message> saveAll(List<Message> messages);
     List<Message> findByUsers(int userId1, int userId2);
     List<Message> findByGroupId(int groupId);
 }
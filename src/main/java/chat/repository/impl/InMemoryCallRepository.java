@@ -0,0 +1,60 @@
+package chat.repository.impl;
+
+import chat.model.Call;
+import chat.model.CallQuality;
+import chat.repository.CallRepository;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class InMemoryCallRepository implements CallRepository {
+    private final Map<Integer, Call> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger idCounter = new AtomicInteger(1);
+    
+    @Override
+    public Call save(Call call) {
+        if (call.getId() == 0) {
+            call.setId(idCounter.getAndIncrement());
+        }
+        calls.put(call.getId(), call);
+        return call;
+    }
+    
+    @Override
+    public Optional<Call> findById(int id) {
+        return Optional.ofNullable(calls.get(id));
+    }
+    
+    @Override
+    public List<Call> findByUserId(int userId) {
+        return calls.values().stream()
+            .filter(call -> !call.isGroupCall())
+            .filter(call -> call.getCallerId() == userId || call.getReceiverId() == userId)
+            .collect(Collectors.toList());
+    }
+    
+    @Override
+    public List<Call> findByGroupId(int groupId) {
+        return calls.values().stream()
+            .filter(call -> call.isGroupCall() && call.getReceiverId() == groupId)
+            .collect(Collectors.toList());
+    }
+    
+    @Override
+    public void updateCallStatus(int callId, String status) {
+        findById(callId).ifPresent(call -> call.setStatus(Call.CallStatus.valueOf(status)));
+    }
+    
+    @Override
+    public void endCall(int callId, int durationSeconds, CallQuality quality) {
+        findById(callId).ifPresent(call -> {
+            call.setEndTime(LocalDateTime.now());
+            call.setDurationSeconds(durationSeconds);
+            call.setQuality(quality);
+            call.setStatus(Call.CallStatus.ENDED);
+        });
+    }
+}
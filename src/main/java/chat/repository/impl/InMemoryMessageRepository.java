@@ -30,6 +30,14 @@ public class InMemoryMessageRepository implements MessageRepository {
         return message;
     }
     
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        for (Message message : messages) {
+            save(message);
+        }
+        return messages;
+    }
+    
     @Override
     public List<Message> findByUsers(int userId1, int userId2) {
         int key = generateHistoryKey(userId1, userId2);
@@ -2,6 +2,7 @@ package chat.repository.impl;
 
 import chat.config.DatabaseConfig;
 import chat.model.Call;
+import chat.model.CallQuality;
 import chat.repository.CallRepository;
 
 import java.sql.*;
@@ -158,15 +159,32 @@ public class PostgresCallRepository implements CallRepository {
     }
     
     @Override
-    public void endCall(int callId, int durationSeconds) {
+    public void endCall(int callId, int durationSeconds, CallQuality quality) {
         String sql = "UPDATE calls SET ended_at = CURRENT_TIMESTAMP, duration_seconds = ?, " +
-                     "status = 'ENDED' WHERE id = ?";
+                     "status = 'ENDED', packets_received = ?, packets_lost = ?, packets_reordered = ?, " +
+                     "jitter_ms = ?, rtt_ms = ? WHERE id = ?";
         
         try (Connection conn = dbConfig.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setInt(1, durationSeconds);
-            stmt.setInt(2, callId);
+            if (quality != null) {
+                stmt.setLong(2, quality.getPacketsReceived());
+                stmt.setLong(3, quality.getPacketsLost());
+                stmt.setLong(4, quality.getPacketsReordered());
+                stmt.setDouble(5, quality.getJitterMillis());
+            } else {
+                stmt.setNull(2, Types.BIGINT);
+                stmt.setNull(3, Types.BIGINT);
+                stmt.setNull(4, Types.BIGINT);
+                stmt.setNull(5, Types.DOUBLE);
+            }
+            if (quality != null && quality.getRttMillis() >= 0) {
+                stmt.setDouble(6, quality.getRttMillis());
+            } else {
+                stmt.setNull(6, Types.DOUBLE);
+            }
+            stmt.setInt(7, callId);
             stmt.executeUpdate();
             
         } catch (SQLException e) {
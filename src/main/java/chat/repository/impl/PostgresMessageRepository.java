@@ -9,6 +9,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class PostgresMessageRepository implements MessageRepository {
+    // 6 parametros por fila; muy por debajo del limite de 65535 de PostgreSQL
+    private static final int SAVE_ALL_CHUNK = 1000;
+    
     private final DatabaseConfig dbConfig;
     
     public PostgresMessageRepository() {
@@ -54,6 +57,76 @@ public class PostgresMessageRepository implements MessageRepository {
         }
     }
     
+    // Un INSERT de varias filas por cada bloque de hasta SAVE_ALL_CHUNK mensajes,
+    // todo en una transaccion. RETURNING devuelve las filas en el orden de VALUES.
+    @Override
+    public List<Message> saveAll(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return messages;
+        }
+        
+        try (Connection conn = dbConfig.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (int start = 0; start < messages.size(); start += SAVE_ALL_CHUNK) {
+                    insertChunk(conn, messages.subList(start, Math.min(start + SAVE_ALL_CHUNK, messages.size())));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return messages;
+            
+        } catch (SQLException e) {
+            throw new RuntimeException("Error saving messages", e);
+        }
+    }
+    
+    private void insertChunk(Connection conn, List<Message> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO messages (sender_id, sender_username, receiver_id, group_id, content, message_type) VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(" RETURNING id, timestamp");
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (Message message : chunk) {
+                stmt.setInt(index++, message.getSenderId());
+                stmt.setString(index++, message.getSenderUsername());
+                
+                if (message.getReceiverId() != null && message.getReceiverId() > 0) {
+                    stmt.setInt(index++, message.getReceiverId());
+                } else {
+                    stmt.setNull(index++, Types.INTEGER);
+                }
+                
+                if (message.getGroupId() != null && message.getGroupId() > 0) {
+                    stmt.setInt(index++, message.getGroupId());
+                } else {
+                    stmt.setNull(index++, Types.INTEGER);
+                }
+                
+                stmt.setString(index++, message.getContent());
+                stmt.setString(index++, message.getType().name());
+            }
+            
+            ResultSet rs = stmt.executeQuery();
+            for (Message message : chunk) {
+                if (!rs.next()) {
+                    break;
+                }
+                message.setId(rs.getInt("id"));
+                message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+            }
+        }
+    }
+    
     @Override
     public List<Message> findByUsers(int userId1, int userId2) {
         String sql = "SELECT * FROM messages " +
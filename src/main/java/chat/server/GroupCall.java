@@ -0,0 +1,406 @@
+package chat.server;
+
+import chat.audio.AudioCodec;
+import chat.audio.AudioCodecs;
+import chat.audio.ComfortNoise;
+import chat.config.ServerConfig.VoiceGroupMode;
+import chat.model.AudioPacketView;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// Audio de la llamada de un grupo en un shard del VoiceServer. Los
+// participantes admitidos se unen enviando cualquier paquete dirigido al grupo
+// y salen tras un rato sin enviar nada o al dejar de estar admitidos. Su
+// direccion queda fija desde el primer paquete hasta que salen, como en
+// MediaSession: lo que llegue con su id desde otra se descarta. Con MIX cada miembro sube un flujo y recibe uno solo: en cada
+// tick se suman las tramas PCM de 16 bits de todos y a cada uno se le envia la
+// suma sin su propia voz, con un limitador para no saturar. Con FORWARD los
+// paquetes se reenvian tal cual al resto, pero solo los de los K miembros que
+// mas suenan: el nivel de cada flujo es la amplitud media de sus paquetes,
+// suavizada, y para cambiar de orador hace falta sonar claramente mas que el
+// mas flojo durante switchMillis, asi que no se alterna con cada ruido. Un
+// orador que calla ese mismo tiempo deja de reenviarse. Cada miembro puede usar
+// un codec distinto: lo que llega se decodifica segun su cabecera y la mezcla
+// de cada uno se codifica con el codec que el usa. Los miembros con deteccion
+// de voz no envian sus silencios, solo algun paquete de ruido de confort: con
+// MIX no aportan nada a la mezcla y a quien deja de oir a todos se le envia
+// uno con el nivel de fondo del resto; con FORWARD se reenvian como su audio.
+// Solo lo usa el hilo del shard, sin sincronizacion.
+final class GroupCall {
+    static final int TICK_MILLIS = 10;
+    // Formato de AudioCapture: 44,1 kHz, 16 bits, mono, big endian
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE * TICK_MILLIS / 1000;
+    // Audio por miembro a la espera de mezclarse; lo que exceda se descarta
+    private static final int INPUT_SAMPLES = SAMPLE_RATE / 5;
+    // Se empieza a mezclar un miembro cuando tiene tres tramas acumuladas: los
+    // clientes envian tramas de 20 ms y asi se aguanta el jitter de una
+    private static final int PREBUFFER_SAMPLES = 3 * FRAME_SAMPLES;
+    private static final long PARTICIPANT_TIMEOUT_MILLIS = 2000;
+    // Cuanto recupera el limitador por tick tras reducir la ganancia
+    private static final float GAIN_RELEASE_PER_TICK = 0.02f;
+    // Nivel: amplitud media de una de cada LEVEL_STRIDE muestras, con media movil
+    private static final int LEVEL_STRIDE = 4;
+    private static final float LEVEL_SMOOTHING = 0.3f;
+    // Sin paquetes en este tiempo el nivel cae un poco en cada tick
+    private static final long LEVEL_DECAY_AFTER_MILLIS = 60;
+    private static final float LEVEL_DECAY_PER_TICK = 0.9f;
+    // Por debajo de este nivel (unos -40 dBFS) se considera silencio
+    private static final float SILENCE_LEVEL = 300f;
+    // Un aspirante debe sonar al menos esto mas que el orador mas flojo (~3,5 dB)
+    private static final float SWITCH_MARGIN = 1.5f;
+    private static final int MAX_PAYLOAD_BYTES = 4096;
+
+    private final int groupId;
+    private final VoiceGroupMode mode;
+    private final int maxSpeakers;
+    private final long switchMillis;
+    private final DatagramChannel channel;
+    private final ByteBuffer sendBuffer;
+    private final IntPredicate admitted;
+    private final List<Participant> participants = new ArrayList<>();
+    private final int[] sum = new int[FRAME_SAMPLES];
+    // Audio codificado y PCM del paquete o de la mezcla en curso
+    private final byte[] encoded = new byte[MAX_PAYLOAD_BYTES];
+    private final byte[] pcm = new byte[MAX_PAYLOAD_BYTES];
+    private int forwardedCount;
+    // Quien aspira a reemplazar al orador mas flojo y desde cuando suena mas
+    private Participant challenger;
+    private long challengerSince;
+
+    GroupCall(int groupId, VoiceGroupMode mode, int maxSpeakers, long switchMillis,
+              DatagramChannel channel, ByteBuffer sendBuffer, IntPredicate admitted) {
+        this.groupId = groupId;
+        this.mode = mode;
+        this.maxSpeakers = maxSpeakers;
+        this.switchMillis = switchMillis;
+        this.channel = channel;
+        this.sendBuffer = sendBuffer;
+        this.admitted = admitted;
+    }
+
+    private static final class Participant {
+        final int userId;
+        InetSocketAddress address;
+        AudioCodec codec = AudioCodecs.PCM;
+        long lastSeen;
+        int sequenceNumber;
+        // Ring de muestras pendientes de mezclar
+        final short[] input = new short[INPUT_SAMPLES];
+        int readIndex;
+        int available;
+        boolean primed;
+        // Trama tomada en el tick actual y si aporto audio
+        final short[] frame = new short[FRAME_SAMPLES];
+        boolean speaking;
+        float gain = 1f;
+        // Si su ultimo paquete fue ruido de confort y con que nivel en -dBov
+        boolean silent;
+        int noiseLevel = ComfortNoise.MIN_LEVEL;
+        // Si la ultima mezcla que recibio tenia audio
+        boolean hearing;
+        // Seleccion de oradores (FORWARD)
+        float level;
+        long lastAudio;
+        boolean forwarded;
+        long quietSince = -1;
+
+        Participant(int userId) {
+            this.userId = userId;
+        }
+
+        void append(byte[] pcm, int length) {
+            int samples = length / 2;
+            for (int i = 0; i < samples; i++) {
+                if (available == INPUT_SAMPLES) {
+                    // Lleno: se pierde lo mas antiguo para no acumular retardo
+                    readIndex = (readIndex + 1) % INPUT_SAMPLES;
+                    available--;
+                }
+                input[(readIndex + available) % INPUT_SAMPLES] =
+                        (short) ((pcm[2 * i] << 8) | (pcm[2 * i + 1] & 0xFF));
+                available++;
+            }
+            if (available >= PREBUFFER_SAMPLES) {
+                primed = true;
+            }
+        }
+
+        // Toma una trama; si falta audio completa con silencio y vuelve a esperar el prebuffer
+        void pullFrame() {
+            speaking = primed && available > 0;
+            if (!speaking) {
+                return;
+            }
+            int taken = Math.min(available, FRAME_SAMPLES);
+            for (int i = 0; i < taken; i++) {
+                frame[i] = input[readIndex];
+                readIndex = (readIndex + 1) % INPUT_SAMPLES;
+            }
+            for (int i = taken; i < FRAME_SAMPLES; i++) {
+                frame[i] = 0;
+            }
+            available -= taken;
+            if (available == 0) {
+                primed = false;
+            }
+        }
+    }
+
+    void receive(ByteBuffer datagram, AudioPacketView view, InetSocketAddress sender, long now) throws IOException {
+        Participant participant = join(view.getSenderId(), sender);
+        if (participant == null) {
+            return;
+        }
+        participant.lastSeen = now;
+        if (view.getDataLength() == 0) {
+            return;
+        }
+        boolean selective = mode == VoiceGroupMode.FORWARD && maxSpeakers > 0;
+        boolean comfortNoise = view.getCodecId() == ComfortNoise.CODEC_ID;
+        AudioCodec codec = AudioCodecs.byId(view.getCodecId());
+        participant.silent = comfortNoise;
+        if (comfortNoise) {
+            // El miembro calla; con FORWARD su nivel deja de actualizarse y decae solo
+            if (view.getDataLength() >= ComfortNoise.PAYLOAD_BYTES) {
+                participant.noiseLevel = datagram.get(view.getDataOffset() + 2) & 0xFF;
+            }
+            if (mode == VoiceGroupMode.MIX) {
+                return;
+            }
+        } else if (codec == null) {
+            return;
+        } else {
+            participant.codec = codec;
+        }
+
+        // Para mezclar o medir el nivel hace falta el PCM; reenviando a todos no
+        if (!comfortNoise && (mode == VoiceGroupMode.MIX || selective)) {
+            datagram.get(view.getDataOffset(), encoded, 0, view.getDataLength());
+            int pcmLength = codec.decode(encoded, 0, view.getDataLength(), pcm, 0);
+            if (pcmLength <= 0) {
+                return;
+            }
+            if (mode == VoiceGroupMode.MIX) {
+                participant.append(pcm, pcmLength);
+                return;
+            }
+            participant.level += LEVEL_SMOOTHING * (packetLevel(pcm, pcmLength) - participant.level);
+            participant.lastAudio = now;
+        }
+        if (selective && !participant.forwarded) {
+            return;
+        }
+        int start = datagram.position();
+        for (Participant other : participants) {
+            if (other != participant) {
+                datagram.position(start);
+                channel.send(datagram, other.address);
+            }
+        }
+    }
+
+    // null si el participante ya esta en la llamada desde otra direccion
+    private Participant join(int userId, InetSocketAddress sender) {
+        for (Participant participant : participants) {
+            if (participant.userId == userId) {
+                return sender.equals(participant.address) ? participant : null;
+            }
+        }
+        Participant participant = new Participant(userId);
+        participant.address = sender;
+        participants.add(participant);
+        System.out.println("[VoiceServer] Cliente " + userId + " se unio a la llamada del grupo " +
+                groupId + " (" + participants.size() + " participantes)");
+        return participant;
+    }
+
+    // Saca a los miembros inactivos y, con MIX, envia la trama mezclada a cada
+    // uno; con FORWARD revisa quienes son los oradores
+    void tick(long now) throws IOException {
+        Iterator<Participant> it = participants.iterator();
+        while (it.hasNext()) {
+            Participant participant = it.next();
+            if (now - participant.lastSeen > PARTICIPANT_TIMEOUT_MILLIS || !admitted.test(participant.userId)) {
+                it.remove();
+                if (participant.forwarded) {
+                    forwardedCount--;
+                }
+                if (participant == challenger) {
+                    challenger = null;
+                }
+                System.out.println("[VoiceServer] Cliente " + participant.userId +
+                        " salio de la llamada del grupo " + groupId);
+            }
+        }
+        if (mode == VoiceGroupMode.MIX) {
+            mix(now);
+        } else if (maxSpeakers > 0) {
+            selectSpeakers(now);
+        }
+    }
+
+    boolean isEmpty() {
+        return participants.isEmpty();
+    }
+
+    // Como mucho un alta o un cambio de orador por tick
+    private void selectSpeakers(long now) {
+        Participant quietest = null;
+        Participant loudest = null;
+        for (Participant participant : participants) {
+            if (now - participant.lastAudio > LEVEL_DECAY_AFTER_MILLIS) {
+                participant.level *= LEVEL_DECAY_PER_TICK;
+            }
+            if (participant.forwarded) {
+                if (participant.level >= SILENCE_LEVEL) {
+                    participant.quietSince = -1;
+                } else if (participant.quietSince < 0) {
+                    participant.quietSince = now;
+                } else if (now - participant.quietSince >= switchMillis) {
+                    setForwarded(participant, false);
+                    continue;
+                }
+                if (quietest == null || participant.level < quietest.level) {
+                    quietest = participant;
+                }
+            } else if (participant.level >= SILENCE_LEVEL
+                    && (loudest == null || participant.level > loudest.level)) {
+                loudest = participant;
+            }
+        }
+
+        if (loudest == null) {
+            challenger = null;
+            return;
+        }
+        if (forwardedCount < maxSpeakers) {
+            setForwarded(loudest, true);
+            challenger = null;
+            return;
+        }
+        if (loudest.level < quietest.level * SWITCH_MARGIN) {
+            challenger = null;
+            return;
+        }
+        if (challenger != loudest) {
+            challenger = loudest;
+            challengerSince = now;
+        } else if (now - challengerSince >= switchMillis) {
+            setForwarded(quietest, false);
+            setForwarded(loudest, true);
+            challenger = null;
+        }
+    }
+
+    private void setForwarded(Participant participant, boolean forwarded) {
+        participant.forwarded = forwarded;
+        participant.quietSince = -1;
+        forwardedCount += forwarded ? 1 : -1;
+        if (forwarded) {
+            System.out.println("[VoiceServer] Grupo " + groupId + ": se reenvia al cliente " +
+                    participant.userId + " (" + forwardedCount + " oradores)");
+        }
+    }
+
+    private static float packetLevel(byte[] pcm, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return 0f;
+        }
+        long total = 0;
+        int counted = 0;
+        for (int i = 0; i < samples; i += LEVEL_STRIDE) {
+            total += Math.abs((short) ((pcm[2 * i] << 8) | (pcm[2 * i + 1] & 0xFF)));
+            counted++;
+        }
+        return (float) total / counted;
+    }
+
+    private void mix(long now) throws IOException {
+        int speakers = 0;
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            sum[i] = 0;
+        }
+        for (Participant participant : participants) {
+            participant.pullFrame();
+            if (participant.speaking) {
+                speakers++;
+                for (int i = 0; i < FRAME_SAMPLES; i++) {
+                    sum[i] += participant.frame[i];
+                }
+            }
+        }
+
+        for (Participant participant : participants) {
+            // Nada que oir si el unico que habla es el propio participante. Si
+            // es porque los demas callan (no por un hueco en su audio) recibe un
+            // ruido de confort y luego nada.
+            if (speakers == (participant.speaking ? 1 : 0)) {
+                int level = participant.hearing ? backgroundLevel(participant) : -1;
+                if (level >= 0) {
+                    participant.hearing = false;
+                    int length = ComfortNoise.encode(FRAME_SAMPLES, level, encoded, 0);
+                    send(participant, now, ComfortNoise.CODEC_ID, length);
+                }
+                continue;
+            }
+            participant.hearing = true;
+            writeMixMinus(participant);
+            int length = participant.codec.encode(pcm, 0, FRAME_SAMPLES * 2, encoded, 0);
+            send(participant, now, participant.codec.getId(), length);
+        }
+    }
+
+    // Envia los primeros length bytes de encoded como el siguiente paquete del participante
+    private void send(Participant participant, long now, int codecId, int length) throws IOException {
+        sendBuffer.clear();
+        AudioPacketView.encodeHeader(sendBuffer, 0, participant.userId, participant.sequenceNumber++,
+                now, codecId, length);
+        sendBuffer.put(encoded, 0, length);
+        sendBuffer.flip();
+        channel.send(sendBuffer, participant.address);
+    }
+
+    // El ruido de fondo mas alto entre el resto de miembros, o -1 si alguno no esta en silencio
+    private int backgroundLevel(Participant participant) {
+        int level = ComfortNoise.MIN_LEVEL;
+        for (Participant other : participants) {
+            if (other != participant) {
+                if (!other.silent) {
+                    return -1;
+                }
+                level = Math.min(level, other.noiseLevel);
+            }
+        }
+        return level;
+    }
+
+    // Deja en pcm la suma de todos menos el propio participante. Si la suma supera el rango de
+    // 16 bits la ganancia baja de golpe lo justo y se recupera poco a poco; el
+    // recorte final solo actua mientras se recupera.
+    private void writeMixMinus(Participant participant) {
+        int peak = 0;
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            int sample = sum[i] - (participant.speaking ? participant.frame[i] : 0);
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        float target = peak > Short.MAX_VALUE ? (float) Short.MAX_VALUE / peak : 1f;
+        participant.gain = target < participant.gain ? target
+                : Math.min(1f, participant.gain + GAIN_RELEASE_PER_TICK);
+
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            int sample = sum[i] - (participant.speaking ? participant.frame[i] : 0);
+            int scaled = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * participant.gain)));
+            pcm[2 * i] = (byte) (scaled >> 8);
+            pcm[2 * i + 1] = (byte) scaled;
+        }
+    }
+}
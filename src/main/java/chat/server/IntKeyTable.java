@@ -0,0 +1,141 @@
+package chat.server;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Tabla con clave int para no crear un Integer por datagrama (sesiones de
+// medios y registros de clientes del VoiceServer). Direccionamiento abierto:
+// las lecturas no bloquean ni crean objetos; las escrituras (altas y bajas,
+// poco frecuentes) se serializan. Al insertar se publica primero el valor y
+// luego la clave, asi que quien ve la clave ve tambien su valor. Las bajas
+// dejan una marca que se limpia al reconstruir la tabla, y al reconstruir se
+// ajusta la capacidad a lo que queda, de modo que no crece con las altas y
+// bajas sino con las entradas vivas.
+final class IntKeyTable<V> {
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_CAPACITY = 1024;
+
+    private volatile Slots<V> slots = new Slots<>(MIN_CAPACITY);
+    private int size;
+    private int tombstones;
+
+    private static final class Slots<V> {
+        final AtomicIntegerArray keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+
+        Slots(int capacity) {
+            keys = new AtomicIntegerArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    // 0 y -1 no son claves validas
+    V get(int key) {
+        if (key == EMPTY || key == TOMBSTONE) {
+            return null;
+        }
+        Slots<V> current = slots;
+        for (int i = index(key, current.mask); ; i = (i + 1) & current.mask) {
+            int found = current.keys.get(i);
+            if (found == key) {
+                return current.values.get(i);
+            }
+            if (found == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    synchronized void put(int key, V value) {
+        if (key == EMPTY || key == TOMBSTONE) {
+            return;
+        }
+        if ((size + tombstones + 1) * 2 > slots.keys.length()) {
+            rebuild();
+        }
+        Slots<V> current = slots;
+        int free = -1;
+        for (int i = index(key, current.mask); ; i = (i + 1) & current.mask) {
+            int found = current.keys.get(i);
+            if (found == key) {
+                current.values.set(i, value);
+                return;
+            }
+            if (found == TOMBSTONE && free < 0) {
+                free = i;
+            }
+            if (found == EMPTY) {
+                if (free >= 0) {
+                    tombstones--;
+                } else {
+                    free = i;
+                }
+                current.values.set(free, value);
+                current.keys.set(free, key);
+                size++;
+                return;
+            }
+        }
+    }
+
+    synchronized V remove(int key) {
+        if (key == EMPTY || key == TOMBSTONE) {
+            return null;
+        }
+        Slots<V> current = slots;
+        for (int i = index(key, current.mask); ; i = (i + 1) & current.mask) {
+            int found = current.keys.get(i);
+            if (found == key) {
+                V value = current.values.get(i);
+                current.keys.set(i, TOMBSTONE);
+                current.values.set(i, null);
+                size--;
+                tombstones++;
+                return value;
+            }
+            if (found == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized int capacity() {
+        return slots.keys.length();
+    }
+
+    // Copia las entradas vivas a una tabla nueva con al menos el doble de
+    // huecos que entradas, sin las marcas de baja
+    private void rebuild() {
+        Slots<V> old = slots;
+        int capacity = MIN_CAPACITY;
+        while (capacity < (size + 1) * 4) {
+            capacity *= 2;
+        }
+        Slots<V> rebuilt = new Slots<>(capacity);
+        for (int i = 0; i < old.keys.length(); i++) {
+            int key = old.keys.get(i);
+            if (key != EMPTY && key != TOMBSTONE) {
+                int j = index(key, rebuilt.mask);
+                while (rebuilt.keys.get(j) != EMPTY) {
+                    j = (j + 1) & rebuilt.mask;
+                }
+                rebuilt.values.set(j, old.values.get(i));
+                rebuilt.keys.set(j, key);
+            }
+        }
+        slots = rebuilt;
+        tombstones = 0;
+    }
+
+    private static int index(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
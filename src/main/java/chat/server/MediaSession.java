@@ -0,0 +1,129 @@
+package chat.server;
+
+import chat.audio.StreamStats;
+import chat.model.CallQuality;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Sesion de medios de una llamada 1:1: los usuarios que pueden enviar audio
+// por ella y la direccion UDP de cada uno. La direccion se aprende del primer
+// datagrama del miembro y queda fija mientras siga llegando audio desde ella;
+// si calla durante el tiempo maximo de inactividad se olvida y el siguiente
+// datagrama la vuelve a fijar. La sesion entera caduca cuando ninguno de los
+// dos envia nada en ese tiempo (un cliente que se cayo sin colgar). Por
+// cada miembro se mide el flujo que envia (ver StreamStats).
+final class MediaSession extends TimingWheel.Entry {
+    private final int sessionId;
+    private final int[] userIds;
+    private final AtomicReferenceArray<InetSocketAddress> endpoints;
+    private final AtomicLongArray lastSeen;
+    private final StreamStats[] stats;
+    private final long openedMillis;
+    private final long idleMillis;
+    private final IntKeyTable<MediaSession> table;
+    private volatile boolean closed;
+
+    MediaSession(int sessionId, int callerId, int receiverId, long now, long idleMillis,
+                 IntKeyTable<MediaSession> table) {
+        this.sessionId = sessionId;
+        this.userIds = new int[]{callerId, receiverId};
+        this.endpoints = new AtomicReferenceArray<>(userIds.length);
+        this.lastSeen = new AtomicLongArray(userIds.length);
+        this.stats = new StreamStats[userIds.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new StreamStats();
+        }
+        this.openedMillis = now;
+        this.idleMillis = idleMillis;
+        this.table = table;
+    }
+
+    int getSessionId() {
+        return sessionId;
+    }
+
+    int memberCount() {
+        return userIds.length;
+    }
+
+    // Posicion del usuario en la sesion, o -1 si no es miembro
+    int memberIndex(int userId) {
+        for (int i = 0; i < userIds.length; i++) {
+            if (userIds[i] == userId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Apunta un datagrama del miembro. Devuelve false si llega desde otra
+    // direccion mientras la aprendida sigue viva: se descarta, asi nadie que
+    // conozca los ids puede desviar el audio de una llamada en curso.
+    boolean touch(int member, InetSocketAddress address, long now) {
+        InetSocketAddress known = endpoints.get(member);
+        if (known == null) {
+            endpoints.set(member, address);
+            System.out.println("[VoiceServer] Usuario " + userIds[member] + " en la sesion " + sessionId +
+                    " desde " + address.getAddress().getHostAddress() + ":" + address.getPort());
+        } else if (!known.equals(address)) {
+            return false;
+        }
+        lastSeen.set(member, now);
+        return true;
+    }
+
+    InetSocketAddress endpoint(int member) {
+        return endpoints.get(member);
+    }
+
+    // Flujo que envia el miembro; solo lo anota el hilo que reenvia sus datagramas
+    StreamStats stats(int member) {
+        return stats[member];
+    }
+
+    // Calidad de los dos flujos hasta ahora
+    CallQuality getQuality() {
+        CallQuality quality = new CallQuality();
+        for (StreamStats stream : stats) {
+            quality.add(stream.toQuality());
+        }
+        return quality;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    @Override
+    long expire(long now) {
+        if (closed) {
+            return -1;
+        }
+        long latest = openedMillis;
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < userIds.length; i++) {
+            long seen = lastSeen.get(i);
+            latest = Math.max(latest, seen);
+            if (endpoints.get(i) == null) {
+                continue;
+            }
+            if (seen + idleMillis <= now) {
+                endpoints.set(i, null);
+                System.out.println("[VoiceServer] Usuario " + userIds[i] + " inactivo en la sesion " + sessionId);
+            } else {
+                next = Math.min(next, seen + idleMillis);
+            }
+        }
+        if (latest + idleMillis <= now) {
+            closed = true;
+            if (table.get(sessionId) == this) {
+                table.remove(sessionId);
+            }
+            System.out.println("[VoiceServer] Sesion " + sessionId + " caducada por inactividad");
+            return -1;
+        }
+        return Math.min(next, latest + idleMillis);
+    }
+}
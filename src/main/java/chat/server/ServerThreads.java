@@ -0,0 +1,58 @@
+package chat.server;
+
+import chat.config.ServerConfig;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Crea los hilos del servidor segun el ExecutionMode. Los hilos virtuales se
+// obtienen por reflexion para que el codigo siga compilando con Java 17.
+public final class ServerThreads {
+
+    private ServerThreads() {
+    }
+
+    public static ExecutorService newExecutor(ServerConfig.ExecutionMode mode, int poolSize) {
+        if (mode == ServerConfig.ExecutionMode.VIRTUAL_THREADS) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                warnUnavailable();
+            }
+        }
+        return Executors.newFixedThreadPool(poolSize);
+    }
+
+    public static ThreadFactory newThreadFactory(ServerConfig.ExecutionMode mode, String prefix) {
+        if (mode == ServerConfig.ExecutionMode.VIRTUAL_THREADS) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                warnUnavailable();
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static boolean isVirtualAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    private static void warnUnavailable() {
+        System.err.println("Hilos virtuales no disponibles en Java " +
+                Runtime.version().feature() + " (requiere 21), usando hilos de plataforma");
+    }
+}
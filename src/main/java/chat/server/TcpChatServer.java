@@ -9,36 +9,65 @@ import chat.repository.*;
 import chat.repository.impl.*;
 import chat.service.*;
 import chat.service.impl.*;
+import chat.transport.NioTransport;
+import chat.transport.SocketConnection;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class TcpChatServer {
     private final ServerConfig config;
+    private final ServerConfig.ExecutionMode executionMode;
     private final ExecutorService threadPool;
+    private final ExecutorService requestPool;
+    private final ThreadFactory writerThreads;
     private final ChatController controller;
     private final ClientRegistry clientRegistry;
     private final DatabaseConfig dbConfig;
+    private ServerSocket serverSocket;
+    private NioTransport nioTransport;
+    // VoiceServer en el mismo proceso, o null si se ejecuta aparte
+    private final VoiceServer voiceServer;
+    private volatile boolean running = true;
     
     public TcpChatServer() {
+        this(DatabaseConfig.getInstance(),
+                new PostgresUserRepository(),
+                new PostgresMessageRepository(),
+                new PostgresGroupRepository(),
+                new PostgresCallRepository(),
+                ServerConfig.getInstance().getExecutionMode(),
+                embeddedVoiceServer());
+    }
+
+    // Permite levantar el servidor con otros repositorios (p. ej. en memoria para benchmarks)
+    public TcpChatServer(DatabaseConfig dbConfig, UserRepository userRepository,
+                         MessageRepository messageRepository, GroupRepository groupRepository,
+                         CallRepository callRepository, ServerConfig.ExecutionMode executionMode) {
+        this(dbConfig, userRepository, messageRepository, groupRepository, callRepository, executionMode, null);
+    }
+
+    // Con voiceServer las llamadas aceptadas le abren una sesion de medios
+    public TcpChatServer(DatabaseConfig dbConfig, UserRepository userRepository,
+                         MessageRepository messageRepository, GroupRepository groupRepository,
+                         CallRepository callRepository, ServerConfig.ExecutionMode executionMode,
+                         VoiceServer voiceServer) {
         this.config = ServerConfig.getInstance();
-        this.threadPool = Executors.newFixedThreadPool(config.getThreadPoolSize());
-        
-        this.dbConfig = DatabaseConfig.getInstance();
-        
-        UserRepository userRepository = new PostgresUserRepository();
-        MessageRepository messageRepository = new PostgresMessageRepository();
-        GroupRepository groupRepository = new PostgresGroupRepository();
-        CallRepository callRepository = new PostgresCallRepository();
+        this.voiceServer = voiceServer;
+        this.executionMode = executionMode;
+        this.threadPool = ServerThreads.newExecutor(executionMode, config.getThreadPoolSize());
+        this.requestPool = ServerThreads.newExecutor(executionMode, config.getRequestThreads());
+        this.writerThreads = ServerThreads.newThreadFactory(executionMode, "client-writer-");
+        this.dbConfig = dbConfig;
         
         // Inicializar servicios
         UserService userService = new UserServiceImpl(userRepository);
         MessageService messageService = new MessageServiceImpl(messageRepository);
         GroupService groupService = new GroupServiceImpl(groupRepository);
-        CallService callService = new CallServiceImpl(callRepository);
+        CallService callService = new CallServiceImpl(callRepository, voiceServer);
         
         // Inicializar controlador
         this.controller = new ChatController(userService, messageService, groupService, callService);
@@ -48,32 +77,105 @@ public class TcpChatServer {
     }
     
     public void start() {
+        start(config.getTcpPort());
+    }
+
+    public void start(int port) {
         System.out.println("========================================");
         System.out.println("     SERVIDOR DE CHAT - WhatsApp CLI    ");
         System.out.println("========================================");
         System.out.println();
+
+        if (voiceServer != null) {
+            Thread voiceThread = new Thread(voiceServer, "voice-server");
+            voiceThread.setDaemon(true);
+            voiceThread.start();
+        }
         
         try {
-            int port = config.getTcpPort();
-            ServerSocket serverSocket = new ServerSocket(port);
-            System.out.println("Servidor TCP iniciado en puerto " + port);
-            System.out.println("Almacenamiento PostgreSQL inicializado");
-            System.out.println("Thread pool configurado con " + config.getThreadPoolSize() + " threads");
-            System.out.println("Esperando conexiones...\n");
-            
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                ClientHandler handler = new ClientHandler(clientSocket, controller, clientRegistry);
-                threadPool.execute(handler);
+            if (config.getTransport() == ServerConfig.Transport.NIO) {
+                startNio(port);
+            } else {
+                startBlocking(port);
             }
         } catch (IOException e) {
-            System.err.println("Error en el servidor: " + e.getMessage());
+            if (running) {
+                System.err.println("Error en el servidor: " + e.getMessage());
+            }
         } finally {
             threadPool.shutdown();
-            dbConfig.close();
+            requestPool.shutdown();
+            if (dbConfig != null) {
+                dbConfig.close();
+            }
+        }
+    }
+
+    private void startBlocking(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        System.out.println("Servidor TCP iniciado en puerto " + port);
+        System.out.println("Almacenamiento PostgreSQL inicializado");
+        if (executionMode == ServerConfig.ExecutionMode.VIRTUAL_THREADS && ServerThreads.isVirtualAvailable()) {
+            System.out.println("Un hilo virtual por conexion");
+        } else {
+            System.out.println("Thread pool configurado con " + config.getThreadPoolSize() + " threads");
+        }
+        System.out.println("Esperando conexiones...\n");
+
+        while (running) {
+            Socket clientSocket = serverSocket.accept();
+            SocketConnection connection = new SocketConnection(clientSocket, writerThreads);
+            ClientHandler handler = new ClientHandler(connection, controller, clientRegistry, requestPool);
+            threadPool.execute(() -> connection.serve(handler));
+        }
+    }
+
+    private void startNio(int port) throws IOException {
+        nioTransport = new NioTransport(controller, clientRegistry, threadPool, requestPool,
+                config.getEventLoopCount());
+        System.out.println("Servidor TCP (NIO) iniciado en puerto " + port);
+        System.out.println("Almacenamiento PostgreSQL inicializado");
+        System.out.println(config.getEventLoopCount() + " event loops, " +
+                config.getThreadPoolSize() + " threads para procesar comandos");
+        System.out.println("Esperando conexiones...\n");
+
+        nioTransport.start(port);
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (nioTransport != null) {
+            nioTransport.stop();
+        }
+        if (voiceServer != null) {
+            voiceServer.stop();
         }
+        threadPool.shutdownNow();
+        requestPool.shutdownNow();
     }
     
+    // Si el puerto de voz esta ocupado (p. ej. por un runVoiceServer aparte) el
+    // chat arranca igual, sin sesiones de medios
+    private static VoiceServer embeddedVoiceServer() {
+        ServerConfig config = ServerConfig.getInstance();
+        if (!config.isVoiceEmbedded()) {
+            return null;
+        }
+        try {
+            return new VoiceServer(config.getUdpPort(), config.getVoiceShards(), true);
+        } catch (IOException e) {
+            System.err.println("No se pudo iniciar el servidor de voz integrado: " + e.getMessage());
+            return null;
+        }
+    }
+
     public static void main(String[] args) {
         TcpChatServer server = new TcpChatServer();
         server.start();
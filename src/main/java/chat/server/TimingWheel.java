@@ -0,0 +1,93 @@
+package chat.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rueda de temporizadores para olvidar lo que deja de recibir datagramas
+// (registros y sesiones del VoiceServer). Cada entrada cae en la ranura de su
+// plazo; avanzar un tick solo mira esa ranura, asi que el coste no depende del
+// numero de entradas vigiladas. El camino de cada datagrama no toca la rueda:
+// solo apunta en la entrada cuando la vio por ultima vez, y al vencer el plazo
+// la entrada decide si caduca o vuelve a la rueda con un plazo nuevo.
+final class TimingWheel {
+    private final long tickMillis;
+    private final List<Entry>[] slots;
+    private final int mask;
+    private final List<Entry> due = new ArrayList<>();
+    // Ultimo tick procesado, en ticks desde la epoca
+    private long currentTick;
+    private int size;
+
+    abstract static class Entry {
+        private long deadline;
+
+        // Plazo vencido: devuelve el siguiente (mayor que now) o -1 si la entrada caduca
+        abstract long expire(long now);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long tickMillis, int slotCount, long now) {
+        int capacity = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.slots = new List[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = capacity - 1;
+        this.currentTick = now / tickMillis;
+    }
+
+    synchronized void schedule(Entry entry, long deadline) {
+        insert(entry, deadline);
+        size++;
+    }
+
+    private void insert(Entry entry, long deadline) {
+        entry.deadline = deadline;
+        // Primer tick en o despues del plazo: al procesarlo la entrada ya vencio
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        slots[(int) (tick & mask)].add(entry);
+    }
+
+    // Procesa los ticks hasta now. Tras un retraso de mas de una vuelta cada
+    // ranura se mira una sola vez: lo vencido se reconoce por su plazo.
+    synchronized void advance(long now) {
+        long target = now / tickMillis;
+        long ticks = Math.min(target - currentTick, slots.length);
+        for (long i = 1; i <= ticks; i++) {
+            List<Entry> slot = slots[(int) ((currentTick + i) & mask)];
+            for (int j = slot.size() - 1; j >= 0; j--) {
+                Entry entry = slot.get(j);
+                if (entry.deadline <= now) {
+                    slot.set(j, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                    due.add(entry);
+                }
+            }
+        }
+        currentTick = Math.max(currentTick, target);
+
+        for (Entry entry : due) {
+            long next = entry.expire(now);
+            if (next > now) {
+                insert(entry, next);
+            } else {
+                size--;
+            }
+        }
+        due.clear();
+    }
+
+    // Momento del siguiente tick, para saber cuanto puede dormir quien avanza la rueda
+    synchronized long nextTickMillis() {
+        return (currentTick + 1) * tickMillis;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
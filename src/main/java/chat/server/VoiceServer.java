@@ -1,25 +1,43 @@
 package chat.server;
 
 import chat.config.ServerConfig;
-import chat.model.AudioPacket;
+import chat.model.CallQuality;
+import chat.service.MediaSessionListener;
 
 import java.io.IOException;
-import java.net.*;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-public class VoiceServer implements Runnable {
-    private final ServerConfig config;
-    private DatagramSocket socket;
-    private boolean running = true;
-
-    private static final int BUFFER_SIZE = 4096;
-    private static final Map<Integer, InetSocketAddress> activeVoiceClients = new ConcurrentHashMap<>();
-
-    public VoiceServer() throws SocketException {
-        this.config = ServerConfig.getInstance();
-        this.socket = new DatagramSocket(config.getUdpPort());
-        this.socket.setSoTimeout(20);
+
+// Servidor de voz UDP. Con server.voice.shards > 1 escucha en un rango de
+// puertos consecutivos desde server.udp.port, cada uno con su propio hilo y su
+// propia tabla de clientes. El servidor de chat anuncia en cada Call el puerto
+// que le corresponde (ServerConfig.getVoicePort), de modo que las dos partes de
+// una llamada siempre caen en el mismo shard. El primer puerto atiende ademas
+// el registro inicial y las notas de voz por UDP, como antes.
+// Integrado en el servidor de chat (server.voice.embedded) recibe las sesiones
+// de medios de las llamadas aceptadas y el audio 1:1 solo se reenvia por
+// ellas; el de grupo, solo entre los participantes que admitio el servidor de
+// chat. Ejecutado aparte no hay sesiones y se enruta por id de usuario.
+public class VoiceServer implements Runnable, MediaSessionListener {
+    private final VoiceShard[] shards;
+
+    public VoiceServer() throws IOException {
+        this(ServerConfig.getInstance().getUdpPort(), ServerConfig.getInstance().getVoiceShards(), false);
+    }
+
+    public VoiceServer(int basePort, int shardCount) throws IOException {
+        this(basePort, shardCount, false);
+    }
+
+    public VoiceServer(int basePort, int shardCount, boolean sessionRouting) throws IOException {
+        int workers = ServerConfig.getInstance().getVoiceWorkers();
+        this.shards = new VoiceShard[shardCount];
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new VoiceShard(basePort + i, workers, sessionRouting);
+            }
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
     }
 
     public static void main(String[] args) {
@@ -33,89 +51,90 @@ public class VoiceServer implements Runnable {
 
             server.run();
 
-        } catch (SocketException e) {
+        } catch (IOException e) {
             System.err.println("Error al iniciar servidor de voz: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    // El primer shard corre en el hilo que llama; el resto en hilos propios
     @Override
     public void run() {
-        System.out.println("=== Servidor de voz UDP iniciado en puerto " + config.getUdpPort() + " ===");
-
-        byte[] buffer = new byte[BUFFER_SIZE];
+        int workers = ServerConfig.getInstance().getVoiceWorkers();
+        System.out.println("=== Servidor de voz UDP iniciado en puerto " + shards[0].getPort() +
+                (shards.length > 1 ? "-" + shards[shards.length - 1].getPort() : "") +
+                (workers > 0 ? " con " + workers + " workers por puerto" : "") + " ===");
+
+        Thread[] threads = new Thread[shards.length];
+        for (int i = 1; i < shards.length; i++) {
+            threads[i] = new Thread(shards[i], "voice-shard-" + i);
+            threads[i].start();
+        }
+        shards[0].run();
 
-        while (running) {
+        stop();
+        for (int i = 1; i < threads.length; i++) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-
-                byte[] packetData = new byte[packet.getLength()];
-                System.arraycopy(packet.getData(), 0, packetData, 0, packet.getLength());
-
-                InetAddress senderAddress = packet.getAddress();
-                int senderPort = packet.getPort();
-
-                new Thread(() -> handleAudioPacket(packetData, senderAddress, senderPort)).start();
-
-            } catch (SocketTimeoutException e) {
-                // Timeout normal
-            } catch (IOException e) {
-                if (running) {
-                    System.err.println("Error en servidor de voz: " + e.getMessage());
-                }
+                threads[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-
-        socket.close();
         System.out.println("Servidor de voz UDP detenido");
     }
 
-    private void handleAudioPacket(byte[] packetData, InetAddress senderAddress, int senderPort) {
-        try {
-            AudioPacket audioPacket = AudioPacket.fromBytes(packetData);
+    // La sesion va al shard del puerto que el servidor de chat anuncia en la Call
+    @Override
+    public void openSession(int sessionId, int callerId, int receiverId) {
+        shardFor(callerId, receiverId).openSession(sessionId, callerId, receiverId);
+    }
 
-            int senderId = audioPacket.getSenderId();
-            int receiverId = audioPacket.getReceiverId();
+    @Override
+    public void closeSession(int sessionId) {
+        for (VoiceShard shard : shards) {
+            shard.closeSession(sessionId);
+        }
+    }
 
-            // Registrar o actualizar la dirección del remitente
-            InetSocketAddress senderSocketAddress = new InetSocketAddress(senderAddress, senderPort);
-            activeVoiceClients.put(senderId, senderSocketAddress);
+    @Override
+    public CallQuality getSessionQuality(int sessionId) {
+        for (VoiceShard shard : shards) {
+            CallQuality quality = shard.getSessionQuality(sessionId);
+            if (quality != null) {
+                return quality;
+            }
+        }
+        return null;
+    }
 
-            System.out.println("[VoiceServer] Paquete de " + senderId + " -> " + receiverId +
-                    ", seq: " + audioPacket.getSequenceNumber() +
-                    ", datos: " + audioPacket.getDataLength() + " bytes");
+    @Override
+    public void joinGroupCall(int groupId, int userId) {
+        groupShard(groupId).joinGroupCall(groupId, userId);
+    }
 
-            // Si receiverId es 0, es solo un registro, no reenviar
-            if (receiverId == 0) {
-                System.out.println("[VoiceServer] Cliente " + senderId + " registrado desde " +
-                        senderAddress.getHostAddress() + ":" + senderPort);
-                return;
-            }
+    @Override
+    public void leaveGroupCall(int groupId, int userId) {
+        groupShard(groupId).leaveGroupCall(groupId, userId);
+    }
 
-            // Reenviar al destinatario
-            InetSocketAddress receiverAddress = activeVoiceClients.get(receiverId);
-            if (receiverAddress != null) {
-                DatagramPacket forwardPacket = new DatagramPacket(
-                        packetData,
-                        packetData.length,
-                        receiverAddress.getAddress(),
-                        receiverAddress.getPort()
-                );
-                socket.send(forwardPacket);
-                System.out.println("[VoiceServer] Reenviado a " + receiverId + " en " +
-                        receiverAddress.getAddress().getHostAddress() + ":" + receiverAddress.getPort());
-            } else {
-                System.out.println("[VoiceServer] Destinatario " + receiverId + " no encontrado");
-            }
+    private VoiceShard groupShard(int groupId) {
+        ServerConfig config = ServerConfig.getInstance();
+        int index = config.getGroupVoicePort(groupId) - config.getUdpPort();
+        return shards[Math.floorMod(index, shards.length)];
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error procesando paquete de audio: " + e.getMessage());
-            e.printStackTrace();
-        }
+    private VoiceShard shardFor(int callerId, int receiverId) {
+        ServerConfig config = ServerConfig.getInstance();
+        int index = config.getVoicePort(callerId, receiverId) - config.getUdpPort();
+        return shards[Math.floorMod(index, shards.length)];
     }
 
     public void stop() {
-        running = false;
+        for (VoiceShard shard : shards) {
+            if (shard != null) {
+                shard.stop();
+            }
+        }
     }
 }
@@ -0,0 +1,435 @@
+package chat.server;
+
+import chat.config.ServerConfig;
+import chat.audio.QualityReport;
+import chat.config.ServerConfig.VoiceGroupMode;
+import chat.model.AudioPacket;
+import chat.model.AudioPacketView;
+import chat.model.CallQuality;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Un puerto del servidor de voz: relay sobre un DatagramChannel no bloqueante.
+// Un solo hilo espera en el Selector y en cada despertar lee varios datagramas
+// seguidos en un buffer directo reutilizado. Los reenvia en el mismo hilo o,
+// con server.voice.workers, en un numero fijo de workers repartidos por
+// remitente; en ambos casos los paquetes de un mismo remitente salen en el
+// orden en que llegaron. Cada shard tiene sus propias tablas: las dos partes
+// de una llamada usan el mismo puerto, asi que no se consulta la de otro.
+// El audio de una llamada 1:1 va dirigido a su sesion de medios, que solo
+// existe mientras la llamada esta aceptada (ver MediaSession). Los registros
+// por id de usuario sirven para las notas de voz y, con el VoiceServer aparte
+// del servidor de chat (sin sesiones), tambien para el audio de llamada. Lo
+// que deja de enviar datagramas se olvida con una TimingWheel.
+// El audio de llamadas grupales lo atiende siempre el hilo del shard (ver
+// GroupCall); mientras haya alguna, el Selector despierta cada tick de mezcla.
+// Con sesiones solo se acepta de los participantes que el servidor de chat
+// admitio en la llamada del grupo; el resto se descarta.
+class VoiceShard implements Runnable {
+    private final int port;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final AudioPacketView receiveView = new AudioPacketView();
+    private final RelayWorker[] workers;
+    private volatile boolean running = true;
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+    // Datagramas leidos por despertar antes de volver al Selector
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+    // Datagramas en espera por worker; si se llena se descartan, el audio atrasado no sirve
+    private static final int WORKER_QUEUE_SIZE = 1024;
+    // Ticks de la rueda de caducidad; vuelta completa algo mayor que el tiempo de inactividad por defecto
+    private static final long WHEEL_TICK_MILLIS = 1000;
+    private static final int WHEEL_SLOTS = 64;
+    private final IntKeyTable<Registration> registrations = new IntKeyTable<>();
+    private final IntKeyTable<MediaSession> sessions = new IntKeyTable<>();
+    private final TimingWheel idleTimeouts = new TimingWheel(WHEEL_TICK_MILLIS, WHEEL_SLOTS,
+            System.currentTimeMillis());
+    private final long idleMillis = ServerConfig.getInstance().getVoiceIdleTimeoutMillis();
+    // Con sesiones el audio de llamada 1:1 solo se reenvia por ellas
+    private final boolean sessionRouting;
+    // Reloj de grano grueso: se lee una vez por despertar del Selector
+    private volatile long clockMillis = System.currentTimeMillis();
+    private final VoiceGroupMode groupMode = ServerConfig.getInstance().getVoiceGroupMode();
+    private final int groupSpeakers = ServerConfig.getInstance().getVoiceGroupSpeakers();
+    private final int groupSwitchMillis = ServerConfig.getInstance().getVoiceGroupSwitchMillis();
+    private final Map<Integer, GroupCall> groupCalls = new HashMap<>();
+    // Participantes admitidos por grupo; los cambia el hilo del servidor de chat
+    private final Map<Integer, Set<Integer>> groupMembers = new ConcurrentHashMap<>();
+    private final ByteBuffer groupSendBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long nextTickMillis;
+
+    VoiceShard(int port, int workerCount, boolean sessionRouting) throws IOException {
+        this.port = port;
+        this.sessionRouting = sessionRouting;
+        this.channel = DatagramChannel.open();
+        this.channel.configureBlocking(false);
+        // Margen para rafagas: con miles de llamadas llegan cientos de datagramas cada 20 ms
+        this.channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_BYTES);
+        this.channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_BYTES);
+        this.channel.bind(new InetSocketAddress(port));
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_READ);
+
+        this.workers = new RelayWorker[workerCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new RelayWorker();
+            Thread thread = new Thread(workers[i], "voice-relay-" + port + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(selectTimeout());
+                selector.selectedKeys().clear();
+                clockMillis = System.currentTimeMillis();
+                receiveAvailable();
+                tickGroupCalls();
+                idleTimeouts.advance(clockMillis);
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error en servidor de voz: " + e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                // Fallo al mezclar o en la rueda: el shard sigue atendiendo
+                System.err.println("Error en servidor de voz: " + e);
+            }
+        }
+
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error cerrando servidor de voz: " + e.getMessage());
+        }
+    }
+
+    // Hasta el siguiente tick de mezcla o de la rueda; sin nada pendiente, sin limite
+    private long selectTimeout() {
+        long wakeup = Long.MAX_VALUE;
+        if (!groupCalls.isEmpty()) {
+            wakeup = nextTickMillis;
+        }
+        if (!idleTimeouts.isEmpty()) {
+            wakeup = Math.min(wakeup, idleTimeouts.nextTickMillis());
+        }
+        return wakeup == Long.MAX_VALUE ? 0 : Math.max(1, wakeup - System.currentTimeMillis());
+    }
+
+    // Lee hasta MAX_DATAGRAMS_PER_WAKEUP datagramas; si quedan mas, el Selector
+    // vuelve a despertar de inmediato
+    private void receiveAvailable() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            receiveBuffer.clear();
+            InetSocketAddress sender = (InetSocketAddress) channel.receive(receiveBuffer);
+            if (sender == null) {
+                return;
+            }
+            receiveBuffer.flip();
+            if (!receiveView.wrap(receiveBuffer).isValid()) {
+                continue;
+            }
+
+            try {
+                if (receiveView.isGroupPacket()) {
+                    receiveGroupPacket(sender);
+                } else if (workers.length == 0) {
+                    relay(receiveBuffer, receiveView, sender);
+                } else {
+                    workers[Math.floorMod(receiveView.getSenderId(), workers.length)].offer(receiveBuffer, sender);
+                }
+            } catch (RuntimeException e) {
+                // Un datagrama que no se pudo procesar no para el resto
+                System.err.println("Error procesando audio de " + sender + ": " + e);
+            }
+        }
+    }
+
+    // Solo lee la cabecera y reenvia el mismo buffer: en el camino habitual no
+    // se crea ningun objeto
+    private void relay(ByteBuffer datagram, AudioPacketView view, InetSocketAddress sender) throws IOException {
+        if (view.isSessionPacket()) {
+            relaySession(datagram, view, sender);
+            return;
+        }
+
+        int senderId = view.getSenderId();
+        int receiverId = view.getReceiverId();
+        if (senderId <= 0) {
+            return;
+        }
+
+        // Registrar o actualizar la dirección del remitente
+        Registration registration = registrations.get(senderId);
+        if (registration == null) {
+            registration = new Registration(senderId, sender, clockMillis);
+            registrations.put(senderId, registration);
+            idleTimeouts.schedule(registration, clockMillis + idleMillis);
+            System.out.println("[VoiceServer] Cliente " + senderId + " registrado desde " +
+                    sender.getAddress().getHostAddress() + ":" + sender.getPort());
+        } else {
+            if (!sender.equals(registration.address)) {
+                registration.address = sender;
+                System.out.println("[VoiceServer] Cliente " + senderId + " registrado desde " +
+                        sender.getAddress().getHostAddress() + ":" + sender.getPort());
+            }
+            registration.lastSeen = clockMillis;
+        }
+
+        // Si receiverId es 0, es solo un registro, no reenviar
+        if (receiverId == 0) {
+            return;
+        }
+        // Con sesiones, por id de usuario solo viajan las notas de voz
+        int codecId = view.getCodecId();
+        if (sessionRouting && codecId != AudioPacket.VOICE_NOTE_DATA && codecId != AudioPacket.VOICE_NOTE_ACK) {
+            return;
+        }
+
+        // Con el buffer de envio lleno el datagrama se pierde, igual que en la red
+        Registration receiver = registrations.get(receiverId);
+        if (receiver != null) {
+            channel.send(datagram, receiver.address);
+        }
+    }
+
+    // Solo los miembros de la sesion envian por ella, y cada uno desde la
+    // direccion que la sesion aprendio. Un datagrama sin audio solo da a
+    // conocer la direccion, para recibir antes de hablar. Los paquetes de
+    // audio se anotan en las estadisticas del flujo del miembro y de sus
+    // informes de calidad se toma el RTT que mide.
+    private void relaySession(ByteBuffer datagram, AudioPacketView view, InetSocketAddress sender)
+            throws IOException {
+        MediaSession session = sessions.get(view.getSessionId());
+        int member = session == null ? -1 : session.memberIndex(view.getSenderId());
+        if (member < 0 || !session.touch(member, sender, clockMillis) || view.getDataLength() == 0) {
+            return;
+        }
+        int codecId = view.getCodecId();
+        if (codecId == QualityReport.CODEC_ID) {
+            if (QualityReport.isValid(view.getDataLength())) {
+                int rtt = QualityReport.senderRtt(datagram, view.getDataOffset());
+                if (rtt >= 0) {
+                    session.stats(member).setRttMillis(rtt);
+                }
+            }
+        } else if (codecId != AudioPacket.FEC_PARITY) {
+            session.stats(member).onPacket(view.getSequenceNumber(), view.getTimestamp(), clockMillis);
+        }
+        int start = datagram.position();
+        for (int i = 0; i < session.memberCount(); i++) {
+            InetSocketAddress endpoint = i == member ? null : session.endpoint(i);
+            if (endpoint != null) {
+                datagram.position(start);
+                channel.send(datagram, endpoint);
+            }
+        }
+    }
+
+    // Llamado desde el hilo del servidor de chat al aceptar una llamada
+    void openSession(int sessionId, int callerId, int receiverId) {
+        long now = System.currentTimeMillis();
+        MediaSession session = new MediaSession(sessionId, callerId, receiverId, now, idleMillis, sessions);
+        MediaSession previous = sessions.get(sessionId);
+        if (previous != null) {
+            previous.close();
+        }
+        sessions.put(sessionId, session);
+        idleTimeouts.schedule(session, now + idleMillis);
+        // El Selector puede estar esperando sin limite: que recalcule cuando despertar
+        selector.wakeup();
+        System.out.println("[VoiceServer] Sesion " + sessionId + " abierta en puerto " + port +
+                " para " + callerId + " y " + receiverId);
+    }
+
+    // null si la sesion no esta en este shard
+    CallQuality getSessionQuality(int sessionId) {
+        MediaSession session = sessions.get(sessionId);
+        return session != null ? session.getQuality() : null;
+    }
+
+    void closeSession(int sessionId) {
+        MediaSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.close();
+            System.out.println("[VoiceServer] Sesion " + sessionId + " cerrada: " + session.getQuality());
+        }
+    }
+
+    // Llamados desde el hilo del servidor de chat al iniciar, aceptar o colgar
+    void joinGroupCall(int groupId, int userId) {
+        groupMembers.compute(groupId, (id, members) -> {
+            Set<Integer> updated = members != null ? members : ConcurrentHashMap.newKeySet();
+            updated.add(userId);
+            return updated;
+        });
+        System.out.println("[VoiceServer] Usuario " + userId + " admitido en la llamada del grupo " + groupId +
+                " en puerto " + port);
+    }
+
+    void leaveGroupCall(int groupId, int userId) {
+        groupMembers.computeIfPresent(groupId, (id, members) -> {
+            members.remove(userId);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private boolean isGroupParticipant(int groupId, int userId) {
+        if (!sessionRouting) {
+            return true;
+        }
+        Set<Integer> members = groupMembers.get(groupId);
+        return members != null && members.contains(userId);
+    }
+
+    private void receiveGroupPacket(InetSocketAddress sender) throws IOException {
+        int groupId = receiveView.getGroupId();
+        if (!isGroupParticipant(groupId, receiveView.getSenderId())) {
+            return;
+        }
+        GroupCall call = groupCalls.get(groupId);
+        if (call == null) {
+            if (groupCalls.isEmpty()) {
+                nextTickMillis = System.currentTimeMillis() + GroupCall.TICK_MILLIS;
+            }
+            call = new GroupCall(groupId, groupMode, groupSpeakers, groupSwitchMillis, channel, groupSendBuffer,
+                    userId -> isGroupParticipant(groupId, userId));
+            groupCalls.put(groupId, call);
+        }
+        call.receive(receiveBuffer, receiveView, sender, System.currentTimeMillis());
+    }
+
+    // Si el hilo se retrasa mas de unos ticks no intenta recuperarlos: el audio
+    // atrasado ya no sirve
+    private void tickGroupCalls() throws IOException {
+        long now = System.currentTimeMillis();
+        if (groupCalls.isEmpty() || now < nextTickMillis) {
+            return;
+        }
+        Iterator<GroupCall> it = groupCalls.values().iterator();
+        while (it.hasNext()) {
+            GroupCall call = it.next();
+            call.tick(now);
+            if (call.isEmpty()) {
+                it.remove();
+            }
+        }
+        nextTickMillis += GroupCall.TICK_MILLIS;
+        if (now - nextTickMillis > 5 * GroupCall.TICK_MILLIS) {
+            nextTickMillis = now + GroupCall.TICK_MILLIS;
+        }
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // Direccion UDP de un usuario por id, para notas de voz y llamadas sin sesion
+    private final class Registration extends TimingWheel.Entry {
+        final int userId;
+        volatile InetSocketAddress address;
+        volatile long lastSeen;
+
+        Registration(int userId, InetSocketAddress address, long now) {
+            this.userId = userId;
+            this.address = address;
+            this.lastSeen = now;
+        }
+
+        @Override
+        long expire(long now) {
+            if (lastSeen + idleMillis > now) {
+                return lastSeen + idleMillis;
+            }
+            if (registrations.get(userId) == this) {
+                registrations.remove(userId);
+            }
+            return -1;
+        }
+    }
+
+    private static final class Datagram {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        InetSocketAddress sender;
+    }
+
+    // Reenvia los datagramas de un subconjunto fijo de remitentes. Los buffers
+    // se reciclan entre la cola de libres y la de pendientes.
+    private final class RelayWorker implements Runnable {
+        private final BlockingQueue<Datagram> pending = new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE);
+        private final BlockingQueue<Datagram> free = new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE);
+        private final AudioPacketView view = new AudioPacketView();
+
+        RelayWorker() {
+            for (int i = 0; i < WORKER_QUEUE_SIZE; i++) {
+                free.add(new Datagram());
+            }
+        }
+
+        void offer(ByteBuffer data, InetSocketAddress sender) {
+            Datagram datagram = free.poll();
+            if (datagram == null) {
+                return;
+            }
+            datagram.buffer.clear();
+            datagram.buffer.put(data);
+            datagram.buffer.flip();
+            datagram.sender = sender;
+            pending.add(datagram);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    Datagram datagram = pending.poll(100, TimeUnit.MILLISECONDS);
+                    if (datagram == null) {
+                        continue;
+                    }
+                    try {
+                        relay(datagram.buffer, view.wrap(datagram.buffer), datagram.sender);
+                    } finally {
+                        datagram.sender = null;
+                        free.add(datagram);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Error reenviando audio: " + e.getMessage());
+                    }
+                } catch (RuntimeException e) {
+                    // Solo se pierde este datagrama
+                    System.err.println("Error reenviando audio: " + e);
+                }
+            }
+        }
+    }
+}
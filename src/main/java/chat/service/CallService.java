@@ -1,10 +1,16 @@
 package chat.service;
 
 import chat.model.Call;
+import chat.model.CallQuality;
 
 public interface CallService {
     void initiateCall(Call call);
-    void acceptCall(int callerId, int receiverId);
+    // Devuelve la sesion de medios de la llamada, o 0 si no hay sesiones
+    int acceptCall(int callerId, int receiverId);
+    // Une al usuario a la llamada en curso del grupo; false si no hay ninguna
+    boolean joinGroupCall(int groupId, int userId);
     void rejectCall(int callerId, int receiverId);
     void endCall(int userId);
+    // Calidad medida hasta ahora en la llamada en curso del usuario; null si no hay
+    CallQuality getCallQuality(int userId);
 }
@@ -0,0 +1,17 @@
+package chat.service;
+
+import chat.model.CallQuality;
+
+// Quien enruta el audio de las llamadas (el VoiceServer integrado). CallService
+// le abre una sesion al aceptar una llamada 1:1 y la cierra al colgar; solo los
+// dos usuarios de la sesion pueden enviar audio por ella. En una llamada
+// grupal solo participan quien la inicio y los miembros que la aceptaron,
+// hasta que cuelgan.
+public interface MediaSessionListener {
+    void openSession(int sessionId, int callerId, int receiverId);
+    void closeSession(int sessionId);
+    void joinGroupCall(int groupId, int userId);
+    void leaveGroupCall(int groupId, int userId);
+    // Calidad medida hasta ahora en los flujos de la sesion; null si no existe
+    CallQuality getSessionQuality(int sessionId);
+}
@@ -1,40 +1,135 @@
 package chat.service.impl;
 
 import chat.model.Call;
+import chat.model.CallQuality;
 import chat.repository.CallRepository;
 import chat.service.CallService;
+import chat.service.MediaSessionListener;
 
+import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+// Con un MediaSessionListener cada llamada 1:1 recibe al iniciarse un id de
+// sesion de medios (llega al receptor con la Call); al aceptarla se abre la
+// sesion en el servidor de voz y al colgar se cierra, asi que solo existen
+// sesiones para las llamadas en curso. Al colgar se guarda con la llamada la
+// calidad que midio la sesion. En una llamada grupal participan quien la
+// inicio y quien la acepta mientras sigue en curso; cada uno sale al colgar y
+// la llamada termina cuando no queda nadie. El listener los admite en el
+// servidor de voz.
 public class CallServiceImpl implements CallService {
+    // Los ids de sesion van en receiverId junto a GROUP_FLAG y SESSION_FLAG
+    private static final int SESSION_ID_MASK = 0x3FFFFFFF;
+
     private final Map<Integer, Call> activeCalls = new ConcurrentHashMap<>();
+    // Llamada 1:1 sonando por quien llama; la siguiente que inicie la sustituye
+    private final Map<Integer, Call> ringingCalls = new ConcurrentHashMap<>();
+    // Participantes de cada llamada grupal y grupo de cada participante; se
+    // cambian juntos con groupCalls como cerrojo
+    private final Map<Integer, Set<Integer>> groupCalls = new HashMap<>();
+    private final Map<Integer, Integer> groupCallOf = new HashMap<>();
     private final CallRepository callRepository;
+    private final MediaSessionListener mediaSessions;
+    private final SecureRandom random = new SecureRandom();
 
     public CallServiceImpl(CallRepository callRepository) {
+        this(callRepository, null);
+    }
+
+    public CallServiceImpl(CallRepository callRepository, MediaSessionListener mediaSessions) {
         this.callRepository = callRepository;
+        this.mediaSessions = mediaSessions;
     }
 
     @Override
     public void initiateCall(Call call) {
         call.setStatus(Call.CallStatus.RINGING);
+        // Nunca el que venga del cliente
+        call.setMediaSession(!call.isGroupCall() && mediaSessions != null ? newSessionId() : 0);
+        if (call.isGroupCall()) {
+            synchronized (groupCalls) {
+                addGroupParticipant(call.getReceiverId(), call.getCallerId());
+            }
+        } else {
+            ringingCalls.put(call.getCallerId(), call);
+        }
         callRepository.save(call);
     }
 
     @Override
-    public void acceptCall(int callerId, int receiverId) {
+    public boolean joinGroupCall(int groupId, int userId) {
+        synchronized (groupCalls) {
+            if (!groupCalls.containsKey(groupId)) {
+                return false;
+            }
+            addGroupParticipant(groupId, userId);
+            return true;
+        }
+    }
+
+    // Con groupCalls tomado. Un usuario esta como mucho en una llamada grupal
+    private void addGroupParticipant(int groupId, int userId) {
+        Integer previous = groupCallOf.get(userId);
+        if (previous != null && previous != groupId) {
+            removeGroupParticipant(userId);
+        }
+        groupCalls.computeIfAbsent(groupId, id -> new HashSet<>()).add(userId);
+        groupCallOf.put(userId, groupId);
+        if (mediaSessions != null) {
+            mediaSessions.joinGroupCall(groupId, userId);
+        }
+    }
+
+    // Con groupCalls tomado
+    private void removeGroupParticipant(int userId) {
+        Integer groupId = groupCallOf.remove(userId);
+        if (groupId == null) {
+            return;
+        }
+        Set<Integer> participants = groupCalls.get(groupId);
+        participants.remove(userId);
+        if (participants.isEmpty()) {
+            groupCalls.remove(groupId);
+        }
+        if (mediaSessions != null) {
+            mediaSessions.leaveGroupCall(groupId, userId);
+        }
+    }
+
+    @Override
+    public int acceptCall(int callerId, int receiverId) {
         Call call = new Call(callerId, "", receiverId, "");
         call.setStatus(Call.CallStatus.ACTIVE);
         call.setStartTime(LocalDateTime.now());
+
+        Call ringing = ringingCalls.get(callerId);
+        if (ringing != null && ringing.getReceiverId() == receiverId
+                && ringingCalls.remove(callerId, ringing)) {
+            // El mismo registro que se guardo al sonar, para cerrarlo al colgar
+            call.setId(ringing.getId());
+            call.setMediaSession(ringing.getMediaSession());
+            if (call.getMediaSession() != 0 && mediaSessions != null) {
+                mediaSessions.openSession(call.getMediaSession(), callerId, receiverId);
+            }
+        }
         activeCalls.put(callerId, call);
         activeCalls.put(receiverId, call);
+        return call.getMediaSession();
     }
 
     @Override
     public void rejectCall(int callerId, int receiverId) {
+        Call ringing = ringingCalls.get(callerId);
+        if (ringing != null && ringing.getReceiverId() == receiverId) {
+            ringingCalls.remove(callerId, ringing);
+        }
         callRepository.findByUserId(callerId).stream()
             .filter(c -> c.getReceiverId() == receiverId && c.getStatus() == Call.CallStatus.RINGING)
             .findFirst()
@@ -43,6 +138,11 @@ public class CallServiceImpl implements CallService {
 
     @Override
     public void endCall(int userId) {
+        // Quien llama puede colgar antes de que contesten
+        ringingCalls.remove(userId);
+        synchronized (groupCalls) {
+            removeGroupParticipant(userId);
+        }
         Call call = activeCalls.remove(userId);
 
         if (call != null) {
@@ -51,6 +151,10 @@ public class CallServiceImpl implements CallService {
                     : call.getCallerId();
 
             activeCalls.remove(otherUserId);
+            if (call.getMediaSession() != 0 && mediaSessions != null) {
+                call.setQuality(mediaSessions.getSessionQuality(call.getMediaSession()));
+                mediaSessions.closeSession(call.getMediaSession());
+            }
             call.setEndTime(LocalDateTime.now());
 
             if (call.getStartTime() != null) {
@@ -60,9 +164,26 @@ public class CallServiceImpl implements CallService {
 
                 // Guarda en el objeto y en base de datos
                 call.setDurationSeconds((int) durationSeconds);
-                callRepository.endCall(call.getId(), call.getDurationSeconds());
+                callRepository.endCall(call.getId(), call.getDurationSeconds(), call.getQuality());
             }
         }
     }
 
+    @Override
+    public CallQuality getCallQuality(int userId) {
+        Call call = activeCalls.get(userId);
+        if (call == null || call.getMediaSession() == 0 || mediaSessions == null) {
+            return null;
+        }
+        return mediaSessions.getSessionQuality(call.getMediaSession());
+    }
+
+    // Aleatorio para que no se pueda adivinar el de otra llamada; nunca 0
+    private int newSessionId() {
+        int id;
+        do {
+            id = random.nextInt() & SESSION_ID_MASK;
+        } while (id == 0);
+        return id;
+    }
 }
@@ -29,6 +29,15 @@ public class MessageServiceImpl implements MessageService {
         return messageRepository.save(message);
     }
     
+    // Mensajes privados o de grupo ya completos; se guardan en una sola operacion
+    @Override
+    public List<Message> sendMessages(List<Message> messages) {
+        for (Message message : messages) {
+            message.setType(Message.MessageType.TEXT);
+        }
+        return messageRepository.saveAll(messages);
+    }
+    
     @Override
     public Message sendVoiceNote(int senderId, String senderUsername, int receiverId, int groupId, int duration) {
         String content = "Nota de voz (" + duration + " segundos)";
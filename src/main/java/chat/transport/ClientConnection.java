@@ -0,0 +1,11 @@
+package chat.transport;
+
+import chat.protocol.Protocol.Packet;
+
+// Conexion de un cliente, independiente de como se lee y escribe el socket.
+// La usan ClientHandler para responder y ClientRegistry para notificar.
+public interface ClientConnection {
+    void send(Packet packet);
+    void close();
+    String getRemoteAddress();
+}
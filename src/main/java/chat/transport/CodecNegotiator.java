@@ -0,0 +1,59 @@
+package chat.transport;
+
+import chat.config.ServerConfig;
+import chat.protocol.BlockCompressor;
+import chat.protocol.FrameCodec;
+import chat.protocol.Handshake;
+import chat.protocol.JsonLineCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Lee el saludo del cliente (si lo hay) y elige el FrameCodec de la conexion
+final class CodecNegotiator {
+    private final byte[] hello = new byte[Handshake.LENGTH];
+    private int received = 0;
+    private final int supportedFlags;
+    private final int compressionLevel;
+    private final int compressionMinBytes;
+    private byte[] reply;
+    private int flags;
+
+    CodecNegotiator(ServerConfig config) {
+        this.supportedFlags = config.isCompressionEnabled() ? Handshake.FLAG_DEFLATE : 0;
+        this.compressionLevel = config.getCompressionLevel();
+        this.compressionMinBytes = config.getCompressionMinBytes();
+    }
+
+    // Devuelve null mientras falten bytes del saludo
+    FrameCodec negotiate(ByteBuffer input) throws IOException {
+        if (received == 0 && input.hasRemaining() && !Handshake.isHandshakeStart(input.get(input.position()))) {
+            return new JsonLineCodec(true);
+        }
+
+        while (received < hello.length && input.hasRemaining()) {
+            hello[received++] = input.get();
+        }
+        if (received < hello.length) {
+            return null;
+        }
+
+        Handshake.WireFormat format = Handshake.parse(hello);
+        flags = Handshake.flags(hello) & supportedFlags;
+        reply = Handshake.hello(format, flags);
+        return Handshake.newCodec(format);
+    }
+
+    // Respuesta al saludo; null para clientes JSON antiguos
+    byte[] getReply() {
+        return reply;
+    }
+
+    boolean isCompressed() {
+        return (flags & Handshake.FLAG_DEFLATE) != 0;
+    }
+
+    BlockCompressor newCompressor() {
+        return new BlockCompressor(compressionLevel, compressionMinBytes);
+    }
+}
@@ -0,0 +1,244 @@
+package chat.transport;
+
+import chat.config.ServerConfig;
+import chat.handler.ClientHandler;
+import chat.protocol.BlockCompressor;
+import chat.protocol.BlockDecompressor;
+import chat.protocol.FrameCodec;
+import chat.protocol.Protocol.Packet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Conexion no bloqueante atendida por un EventLoop. Los paquetes decodificados
+// se ejecutan en el pool de trabajo, uno a la vez y en orden por conexion. Las
+// respuestas pasan por una OutboundQueue y se escriben por lotes con una sola
+// escritura gather.
+public class NioConnection implements ClientConnection {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_BATCH_FRAMES = 64;
+
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final Executor workers;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final CodecNegotiator negotiator;
+    private volatile FrameCodec codec;
+    private final OutboundQueue outbound;
+    private final List<byte[]> batch = new ArrayList<>(MAX_BATCH_FRAMES);
+    private final Queue<Runnable> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final String remoteAddress;
+
+    private SelectionKey key;
+    private ClientHandler handler;
+    private ByteBuffer[] pending = new ByteBuffer[0];
+    private int pendingIndex = 0;
+    // Solo se usan desde el EventLoop
+    private BlockCompressor compressor;
+    private BlockDecompressor decompressor;
+    private byte[] handshakeReply;
+
+    public NioConnection(SocketChannel channel, EventLoop eventLoop, Executor workers) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.workers = workers;
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        ServerConfig config = ServerConfig.getInstance();
+        this.outbound = OutboundQueue.fromConfig(config, this::scheduleFlush);
+        this.negotiator = new CodecNegotiator(config);
+    }
+
+    public void setHandler(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+        flush();
+    }
+
+    // Llamado desde el EventLoop
+    void onReadable() {
+        try {
+            int read;
+            while ((read = channel.read(readBuffer)) > 0) {
+                readBuffer.flip();
+                if (codec != null || negotiate()) {
+                    if (decompressor != null) {
+                        decompressor.decode(readBuffer, codec, this::enqueue);
+                    } else {
+                        codec.decode(readBuffer, this::enqueue);
+                    }
+                }
+                readBuffer.clear();
+            }
+            scheduleDispatch();
+
+            if (read < 0) {
+                close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Error de red o trama invalida: se cierra solo esta conexion
+            close();
+        }
+    }
+
+    private void enqueue(Packet packet) {
+        inbound.add(() -> handler.handlePacket(packet));
+    }
+
+    private boolean negotiate() throws IOException {
+        FrameCodec negotiated = negotiator.negotiate(readBuffer);
+        if (negotiated == null) {
+            return false;
+        }
+        if (negotiator.isCompressed()) {
+            compressor = negotiator.newCompressor();
+            decompressor = new BlockDecompressor();
+        }
+        if (negotiator.getReply() != null) {
+            handshakeReply = negotiator.getReply();
+            outbound.offer(handshakeReply);
+            flush();
+        }
+        codec = negotiated;
+        return true;
+    }
+
+    // Llamado desde el EventLoop
+    void onWritable() {
+        flush();
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+
+        try {
+            while (true) {
+                if (pendingIndex == pending.length) {
+                    batch.clear();
+                    outbound.poll(batch, MAX_BATCH_FRAMES);
+                    if (batch.isEmpty()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                    pending = new ByteBuffer[batch.size()];
+                    for (int i = 0; i < pending.length; i++) {
+                        pending[i] = ByteBuffer.wrap(toWire(batch.get(i)));
+                    }
+                    pendingIndex = 0;
+                }
+
+                channel.write(pending, pendingIndex, pending.length - pendingIndex);
+                while (pendingIndex < pending.length && !pending[pendingIndex].hasRemaining()) {
+                    pendingIndex++;
+                }
+                if (pendingIndex < pending.length) {
+                    // El socket esta lleno; esperar a OP_WRITE
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // El saludo de respuesta sale sin comprimir; todo lo posterior va en bloques.
+    // Se comprime al sacar de la cola para respetar el orden de escritura.
+    private byte[] toWire(byte[] frame) {
+        return compressor != null && frame != handshakeReply ? compressor.compress(frame) : frame;
+    }
+
+    private void releaseCompression() {
+        if (compressor != null) {
+            System.out.println("Compresion " + remoteAddress + ": " + compressor.getStats());
+            compressor.close();
+            decompressor.close();
+            compressor = null;
+            decompressor = null;
+        }
+    }
+
+    private void logOverflow() {
+        long dropped = outbound.getDroppedFrames();
+        long spilled = outbound.getSpilledFrames();
+        if (dropped > 0 || spilled > 0) {
+            System.out.println("Cola de salida " + remoteAddress + ": " + dropped + " tramas descartadas, "
+                    + spilled + " desbordadas");
+        }
+    }
+
+    private void scheduleDispatch() {
+        if (!inbound.isEmpty() && dispatching.compareAndSet(false, true)) {
+            workers.execute(this::drainInbound);
+        }
+    }
+
+    private void drainInbound() {
+        Runnable task;
+        while ((task = inbound.poll()) != null) {
+            task.run();
+        }
+        dispatching.set(false);
+        scheduleDispatch();
+    }
+
+    @Override
+    public void send(Packet packet) {
+        if (closed.get()) {
+            return;
+        }
+        byte[] frame = codec.encode(packet);
+        if (!outbound.offer(frame)) {
+            System.out.println("Cliente " + remoteAddress + " no lee a tiempo, desconectando");
+            close();
+            return;
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flush);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        outbound.close();
+        logOverflow();
+        eventLoop.execute(this::releaseCompression);
+
+        // La desconexion se procesa despues de los paquetes pendientes
+        inbound.add(handler::onDisconnect);
+        scheduleDispatch();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,73 @@
+package chat.transport;
+
+import chat.controller.ChatController;
+import chat.handler.ClientHandler;
+import chat.handler.ClientRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+
+// Transporte multiplexado: pocos EventLoop atienden miles de conexiones y el
+// pool de trabajo solo se ocupa mientras se procesa un paquete.
+public class NioTransport {
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final ChatController controller;
+    private final ClientRegistry clientRegistry;
+    private final ExecutorService workers;
+    private final ExecutorService requestPool;
+    private final EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    public NioTransport(ChatController controller, ClientRegistry clientRegistry,
+                        ExecutorService workers, ExecutorService requestPool, int eventLoopCount) throws IOException {
+        this.controller = controller;
+        this.clientRegistry = clientRegistry;
+        this.workers = workers;
+        this.requestPool = requestPool;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop("nio-eventloop-" + i);
+        }
+    }
+
+    public void start(int port) throws IOException {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+
+        int next = 0;
+        while (running) {
+            SocketChannel channel = serverChannel.accept();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            EventLoop eventLoop = eventLoops[next++ % eventLoops.length];
+            NioConnection connection = new NioConnection(channel, eventLoop, workers);
+            connection.setHandler(new ClientHandler(connection, controller, clientRegistry, requestPool));
+            eventLoop.register(channel, connection);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
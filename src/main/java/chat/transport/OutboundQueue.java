@@ -0,0 +1,391 @@
+package chat.transport;
+
+import chat.config.ServerConfig;
+import chat.config.ServerConfig.OverflowPolicy;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cola de salida acotada por conexion. Quien envia nunca se bloquea: si el
+// cliente no lee, se aplica la OverflowPolicy configurada. El escritor de la
+// conexion vacia la cola por lotes para hacer un solo flush por lote.
+//
+// Con SPILL el disco nunca se toca con el cerrojo tomado ni en el hilo de
+// quien envia o escribe: las tramas desbordadas esperan en overflow y una
+// tarea de desborde (una como mucho por cola, en hilos compartidos) las pasa
+// al archivo y las devuelve a memoria cuando el escritor deja sitio. El orden
+// es siempre memoria, disco y overflow.
+public class OutboundQueue {
+    private static final long MAX_SPILL_BYTES = 256L * 1024 * 1024;
+    // Desbordado en memoria a la espera del disco
+    private static final long MAX_UNWRITTEN_BYTES = 4L * 1024 * 1024;
+    private static final int SPILL_THREADS = 2;
+
+    private final int capacityBytes;
+    private final OverflowPolicy policy;
+    // Avisa al escritor de que hay tramas nuevas sin pasar por offer()
+    private final Runnable onRefill;
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> overflow = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // Solo lo usa la tarea de desborde, o close() si no hay ninguna en curso
+    private SpillFile spill;
+    private boolean spilling = false;
+    private IOException spillError;
+    private long queuedBytes = 0;
+    // Incluye las que se estan escribiendo en disco
+    private long overflowBytes = 0;
+    private long diskBytes = 0;
+    private int diskFrames = 0;
+    private long droppedFrames = 0;
+    private long spilledFrames = 0;
+    private boolean closed = false;
+
+    public OutboundQueue(int capacityBytes, OverflowPolicy policy) {
+        this(capacityBytes, policy, () -> { });
+    }
+
+    public OutboundQueue(int capacityBytes, OverflowPolicy policy, Runnable onRefill) {
+        this.capacityBytes = capacityBytes;
+        this.policy = policy;
+        this.onRefill = onRefill;
+    }
+
+    public static OutboundQueue fromConfig(ServerConfig config) {
+        return fromConfig(config, () -> { });
+    }
+
+    public static OutboundQueue fromConfig(ServerConfig config, Runnable onRefill) {
+        return new OutboundQueue(config.getOutboundQueueBytes(), config.getOutboundOverflowPolicy(), onRefill);
+    }
+
+    // Devuelve false si la conexion debe cerrarse por no leer a tiempo
+    public boolean offer(byte[] frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true;
+            }
+            if (spillError != null) {
+                return false;
+            }
+
+            // Mientras haya tramas desbordadas todo se desborda para conservar el orden
+            if (overflowBytes > 0 || diskFrames > 0) {
+                return overflowFrame(frame);
+            }
+
+            if (fits(frame)) {
+                frames.add(frame);
+                queuedBytes += frame.length;
+                notEmpty.signal();
+                return true;
+            }
+
+            switch (policy) {
+                case DROP:
+                    droppedFrames++;
+                    return true;
+                case SPILL:
+                    return overflowFrame(frame);
+                case DISCONNECT:
+                default:
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Espera a que haya tramas y mueve hasta maxFrames al lote. False si la cola se cerro.
+    public boolean take(List<byte[]> batch, int maxFrames) throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            while (!closed && spillError == null && frames.isEmpty()) {
+                notEmpty.await();
+            }
+            if (closed) {
+                return false;
+            }
+            drain(batch, maxFrames);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Version no bloqueante para el EventLoop
+    public void poll(List<byte[]> batch, int maxFrames) throws IOException {
+        lock.lock();
+        try {
+            if (!closed) {
+                drain(batch, maxFrames);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain(List<byte[]> batch, int maxFrames) throws IOException {
+        if (spillError != null) {
+            throw spillError;
+        }
+        while (batch.size() < maxFrames && !frames.isEmpty()) {
+            byte[] frame = frames.poll();
+            queuedBytes -= frame.length;
+            batch.add(frame);
+        }
+        if (diskFrames > 0) {
+            // Queda sitio para traer mas del disco
+            scheduleSpill();
+        }
+    }
+
+    // Una trama mas grande que la cola se acepta si la cola esta vacia
+    private boolean fits(byte[] frame) {
+        return frames.isEmpty() || queuedBytes + frame.length <= capacityBytes;
+    }
+
+    private boolean overflowFrame(byte[] frame) {
+        // Si el disco no da abasto tampoco se acumula en memoria sin limite
+        if ((overflowBytes > 0 && overflowBytes + frame.length > MAX_UNWRITTEN_BYTES)
+                || diskBytes + overflowBytes + frame.length > MAX_SPILL_BYTES) {
+            return false;
+        }
+        overflow.add(frame);
+        overflowBytes += frame.length;
+        spilledFrames++;
+        scheduleSpill();
+        return true;
+    }
+
+    private void scheduleSpill() {
+        if (!spilling) {
+            spilling = true;
+            SpillThreads.EXECUTOR.execute(this::runSpill);
+        }
+    }
+
+    // Cada vuelta decide con el cerrojo que leer y que escribir, hace las E/S
+    // sin el y aplica el resultado en la vuelta siguiente. Termina cuando no
+    // queda nada por escribir y no cabe nada mas en memoria.
+    private void runSpill() {
+        List<byte[]> writing = new ArrayList<>();
+        List<byte[]> reading = new ArrayList<>();
+        while (true) {
+            long readBudget = 0;
+            int readLimit = 0;
+            boolean refilled = false;
+            lock.lock();
+            try {
+                for (byte[] frame : writing) {
+                    overflowBytes -= frame.length;
+                    diskBytes += frame.length;
+                    diskFrames++;
+                }
+                for (byte[] frame : reading) {
+                    diskBytes -= frame.length;
+                    diskFrames--;
+                    frames.add(frame);
+                    queuedBytes += frame.length;
+                }
+                writing.clear();
+                refilled = !reading.isEmpty();
+                reading.clear();
+
+                if (closed) {
+                    spilling = false;
+                    deleteSpill();
+                    return;
+                }
+                // Sin nada en disco lo desbordado vuelve directamente a memoria
+                while (diskFrames == 0 && !overflow.isEmpty() && fits(overflow.peek())) {
+                    byte[] frame = overflow.poll();
+                    overflowBytes -= frame.length;
+                    frames.add(frame);
+                    queuedBytes += frame.length;
+                    refilled = true;
+                }
+                if (diskFrames > 0 && (frames.isEmpty() || queuedBytes < capacityBytes)) {
+                    readLimit = diskFrames;
+                    readBudget = Math.max(1, capacityBytes - queuedBytes);
+                }
+                writing.addAll(overflow);
+                overflow.clear();
+                if (refilled) {
+                    notEmpty.signal();
+                }
+                if (writing.isEmpty() && readLimit == 0) {
+                    spilling = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (refilled) {
+                onRefill.run();
+            }
+            if (writing.isEmpty() && readLimit == 0) {
+                return;
+            }
+
+            try {
+                if (spill == null) {
+                    spill = new SpillFile();
+                }
+                long read = 0;
+                while (reading.size() < readLimit && read < readBudget) {
+                    byte[] frame = spill.next();
+                    reading.add(frame);
+                    read += frame.length;
+                }
+                if (!writing.isEmpty()) {
+                    spill.append(writing);
+                }
+            } catch (IOException e) {
+                System.err.println("Error en la cola de salida en disco: " + e.getMessage());
+                failSpill(e);
+                return;
+            }
+        }
+    }
+
+    // Las tramas en disco se pierden; el escritor lo ve en take()/poll() y cierra
+    private void failSpill(IOException e) {
+        lock.lock();
+        try {
+            spillError = e;
+            spilling = false;
+            overflow.clear();
+            overflowBytes = 0;
+            diskBytes = 0;
+            diskFrames = 0;
+            deleteSpill();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onRefill.run();
+    }
+
+    private void deleteSpill() {
+        if (spill != null) {
+            spill.delete();
+            spill = null;
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            frames.clear();
+            overflow.clear();
+            queuedBytes = 0;
+            overflowBytes = 0;
+            // Si hay una tarea de desborde en curso, ella borra el archivo
+            if (!spilling) {
+                deleteSpill();
+            }
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedFrames() {
+        lock.lock();
+        try {
+            return droppedFrames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSpilledFrames() {
+        lock.lock();
+        try {
+            return spilledFrames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hilos compartidos por todas las colas; se crean al desbordar la primera vez
+    private static final class SpillThreads {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(SPILL_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "outbound-spill-" + COUNTER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Tramas desbordadas a un archivo temporal, cada una precedida por su longitud
+    private static final class SpillFile {
+        private final Path path;
+        private final RandomAccessFile file;
+        private final byte[] lengthBytes = new byte[4];
+        private long readPosition = 0;
+        private long writePosition = 0;
+        private int pendingFrames = 0;
+
+        SpillFile() throws IOException {
+            this.path = Files.createTempFile("chat-outbound-", ".spill");
+            this.file = new RandomAccessFile(path.toFile(), "rw");
+        }
+
+        // Todas en una sola escritura
+        void append(List<byte[]> frames) throws IOException {
+            int total = 0;
+            for (byte[] frame : frames) {
+                total += 4 + frame.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            for (byte[] frame : frames) {
+                buffer.putInt(frame.length).put(frame);
+            }
+            file.seek(writePosition);
+            file.write(buffer.array());
+            writePosition += total;
+            pendingFrames += frames.size();
+        }
+
+        byte[] next() throws IOException {
+            file.seek(readPosition);
+            file.readFully(lengthBytes);
+            byte[] frame = new byte[ByteBuffer.wrap(lengthBytes).getInt()];
+            file.readFully(frame);
+            readPosition += 4 + frame.length;
+            pendingFrames--;
+
+            if (pendingFrames == 0) {
+                readPosition = 0;
+                writePosition = 0;
+                file.setLength(0);
+            }
+            return frame;
+        }
+
+        void delete() {
+            try {
+                file.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("Error borrando " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
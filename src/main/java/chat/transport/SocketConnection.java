@@ -0,0 +1,152 @@
+package chat.transport;
+
+import chat.config.ServerConfig;
+import chat.handler.ClientHandler;
+import chat.protocol.BlockCompressor;
+import chat.protocol.BlockDecompressor;
+import chat.protocol.FrameCodec;
+import chat.protocol.Protocol.Packet;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+// Transporte bloqueante: un hilo por conexion leyendo tramas con el FrameCodec
+// negociado y un hilo escritor que vacia la cola de salida.
+public class SocketConnection implements ClientConnection {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_FRAMES = 64;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final OutboundQueue outbound;
+    private final ThreadFactory writerThreads;
+    private final CodecNegotiator negotiator;
+    private volatile FrameCodec codec;
+    private volatile BlockCompressor compressor;
+    private volatile byte[] handshakeReply;
+    private BlockDecompressor decompressor;
+
+    public SocketConnection(Socket socket, ThreadFactory writerThreads) throws IOException {
+        ServerConfig config = ServerConfig.getInstance();
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        this.outbound = OutboundQueue.fromConfig(config);
+        this.negotiator = new CodecNegotiator(config);
+        this.writerThreads = writerThreads;
+    }
+
+    public void serve(ClientHandler handler) {
+        writerThreads.newThread(this::writeLoop).start();
+
+        try {
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                ByteBuffer input = ByteBuffer.wrap(buffer, 0, read);
+                if (codec == null && !negotiate(input)) {
+                    continue;
+                }
+                if (decompressor != null) {
+                    decompressor.decode(input, codec, handler::handlePacket);
+                } else {
+                    codec.decode(input, handler::handlePacket);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Conexion cerrada por el cliente o trama invalida
+        } finally {
+            if (decompressor != null) {
+                decompressor.close();
+            }
+            handler.onDisconnect();
+        }
+    }
+
+    private boolean negotiate(ByteBuffer input) throws IOException {
+        FrameCodec negotiated = negotiator.negotiate(input);
+        if (negotiated == null) {
+            return false;
+        }
+        if (negotiator.isCompressed()) {
+            compressor = negotiator.newCompressor();
+            decompressor = new BlockDecompressor();
+        }
+        if (negotiator.getReply() != null) {
+            handshakeReply = negotiator.getReply();
+            outbound.offer(handshakeReply);
+        }
+        codec = negotiated;
+        return true;
+    }
+
+    // Escribe todas las tramas disponibles y hace un solo flush por lote.
+    // Si se negocio compresion, se comprime aqui, en el orden de escritura.
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH_FRAMES);
+        try {
+            while (outbound.take(batch, MAX_BATCH_FRAMES)) {
+                for (byte[] frame : batch) {
+                    out.write(toWire(frame));
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        } finally {
+            logOverflow();
+            BlockCompressor current = compressor;
+            if (current != null) {
+                System.out.println("Compresion " + getRemoteAddress() + ": " + current.getStats());
+                current.close();
+            }
+        }
+    }
+
+    private void logOverflow() {
+        long dropped = outbound.getDroppedFrames();
+        long spilled = outbound.getSpilledFrames();
+        if (dropped > 0 || spilled > 0) {
+            System.out.println("Cola de salida " + getRemoteAddress() + ": " + dropped + " tramas descartadas, "
+                    + spilled + " desbordadas");
+        }
+    }
+
+    // El saludo de respuesta sale sin comprimir; todo lo posterior va en bloques
+    private byte[] toWire(byte[] frame) {
+        BlockCompressor current = compressor;
+        return current != null && frame != handshakeReply ? current.compress(frame) : frame;
+    }
+
+    @Override
+    public void send(Packet packet) {
+        byte[] frame = codec.encode(packet);
+        if (!outbound.offer(frame)) {
+            System.out.println("Cliente " + getRemoteAddress() + " no lee a tiempo, desconectando");
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        outbound.close();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+}
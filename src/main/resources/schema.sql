@@ -51,9 +51,21 @@ CREATE TABLE IF NOT EXISTS calls (
     started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     ended_at TIMESTAMP,
     duration_seconds INTEGER,
+    packets_received BIGINT,
+    packets_lost BIGINT,
+    packets_reordered BIGINT,
+    jitter_ms DOUBLE PRECISION,
+    rtt_ms DOUBLE PRECISION,
     CHECK (receiver_id IS NOT NULL OR group_id IS NOT NULL)
 );
 
+-- Calidad del audio medida en el servidor de voz, para bases ya creadas
+ALTER TABLE calls ADD COLUMN IF NOT EXISTS packets_received BIGINT;
+ALTER TABLE calls ADD COLUMN IF NOT EXISTS packets_lost BIGINT;
+ALTER TABLE calls ADD COLUMN IF NOT EXISTS packets_reordered BIGINT;
+ALTER TABLE calls ADD COLUMN IF NOT EXISTS jitter_ms DOUBLE PRECISION;
+ALTER TABLE calls ADD COLUMN IF NOT EXISTS rtt_ms DOUBLE PRECISION;
+
 -- Indexes for better query performance
 CREATE INDEX IF NOT EXISTS idx_messages_sender ON messages(sender_id);
 CREATE INDEX IF NOT EXISTS idx_messages_receiver ON messages(receiver_id);